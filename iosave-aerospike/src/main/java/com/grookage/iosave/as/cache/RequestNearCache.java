@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.grookage.iosave.as.config.NearCacheConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A node local cache of {@link RequestStatus#PROCESSED} entities, so that duplicates of a processed
+ * request are answered without a round trip to the store. Only processed entities are cached, they
+ * are terminal and never change in a way that matters to duplicate detection. An entry expires when
+ * its record would, counting from the entity's last update, so the cache never remembers an id the
+ * store has already forgotten.
+ */
+public class RequestNearCache {
+
+  private final Cache<String, RequestEntity> entities;
+  private final long ttlMillis;
+
+  public RequestNearCache(final NearCacheConfig config, final int storeTtl) {
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(storeTtl > 0 ? storeTtl : config.getTtl());
+    this.entities = Caffeine.newBuilder()
+        .maximumSize(config.getMaxEntries())
+        .expireAfter(new Expiry<String, RequestEntity>() {
+          @Override
+          public long expireAfterCreate(String key, RequestEntity value, long currentTime) {
+            return remainingNanos(value);
+          }
+
+          @Override
+          public long expireAfterUpdate(String key, RequestEntity value, long currentTime,
+              long currentDuration) {
+            return remainingNanos(value);
+          }
+
+          @Override
+          public long expireAfterRead(String key, RequestEntity value, long currentTime,
+              long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .recordStats()
+        .build();
+  }
+
+  private static RequestEntity copyOf(RequestEntity requestEntity) {
+    return requestEntity.toBuilder().build();
+  }
+
+  private long remainingNanos(RequestEntity requestEntity) {
+    final var now = System.currentTimeMillis();
+    final var updatedAt = null == requestEntity.getUpdatedAt()
+        ? now : requestEntity.getUpdatedAt().getTime();
+    return TimeUnit.MILLISECONDS.toNanos(Math.max(0, updatedAt + ttlMillis - now));
+  }
+
+  public Optional<RequestEntity> get(String messageId) {
+    return Optional.ofNullable(entities.getIfPresent(messageId))
+        .map(RequestNearCache::copyOf);
+  }
+
+  /**
+   * Caches the entity if it is processed, drops any cached copy otherwise
+   */
+  public void offer(RequestEntity requestEntity) {
+    if (requestEntity.getProcessed() == RequestStatus.PROCESSED) {
+      entities.put(requestEntity.getRequestId(), copyOf(requestEntity));
+    } else {
+      entities.invalidate(requestEntity.getRequestId());
+    }
+  }
+
+  public long size() {
+    return entities.estimatedSize();
+  }
+
+  public CacheStats stats() {
+    return entities.stats();
+  }
+}
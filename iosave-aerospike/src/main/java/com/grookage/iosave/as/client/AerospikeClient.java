@@ -15,15 +15,23 @@
  */
 package com.grookage.iosave.as.client;
 
+import com.aerospike.client.AerospikeException;
 import com.aerospike.client.Bin;
 import com.aerospike.client.IAerospikeClient;
 import com.aerospike.client.Key;
+import com.aerospike.client.Operation;
 import com.aerospike.client.Record;
+import com.aerospike.client.async.EventLoops;
+import com.aerospike.client.listener.RecordListener;
+import com.aerospike.client.listener.WriteListener;
+import com.aerospike.client.policy.GenerationPolicy;
 import com.aerospike.client.policy.RecordExistsAction;
 import com.aerospike.client.policy.WritePolicy;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.grookage.iosave.as.utils.CompressionUtils;
+import com.grookage.iosave.as.codec.PayloadEncoder;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.SneakyThrows;
@@ -41,19 +49,66 @@ public class AerospikeClient {
   private final int ttl;
   private final ObjectMapper mapper;
   private final IAerospikeClient client;
+  private final PayloadEncoder payloadEncoder;
+  private final EventLoops eventLoops;
 
   @Builder
   public AerospikeClient(String namespace,
       final String storeType,
       final int ttl,
       final IAerospikeClient client,
-      final ObjectMapper mapper
+      final ObjectMapper mapper,
+      final PayloadEncoder payloadEncoder,
+      final EventLoops eventLoops
   ) {
     this.namespace = namespace;
     this.storeType = storeType;
     this.ttl = ttl;
     this.mapper = mapper;
     this.client = client;
+    this.payloadEncoder = null == payloadEncoder ? PayloadEncoder.defaultEncoder() : payloadEncoder;
+    this.eventLoops = eventLoops;
+  }
+
+  private static RecordListener recordListener(CompletableFuture<Record> future) {
+    return new RecordListener() {
+      @Override
+      public void onSuccess(Key key, Record storedRecord) {
+        future.complete(storedRecord);
+      }
+
+      @Override
+      public void onFailure(AerospikeException exception) {
+        future.completeExceptionally(exception);
+      }
+    };
+  }
+
+  private static WriteListener writeListener(CompletableFuture<Void> future) {
+    return new WriteListener() {
+      @Override
+      public void onSuccess(Key key) {
+        future.complete(null);
+      }
+
+      @Override
+      public void onFailure(AerospikeException exception) {
+        future.completeExceptionally(exception);
+      }
+    };
+  }
+
+  /*
+    The client throws rather than calling the listener when a command can't even be queued
+   */
+  private static <T> CompletableFuture<T> submit(Consumer<CompletableFuture<T>> command) {
+    final var future = new CompletableFuture<T>();
+    try {
+      command.accept(future);
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+    }
+    return future;
   }
 
   private Key getKey(String cacheKey) {
@@ -64,22 +119,122 @@ public class AerospikeClient {
     return new Bin(DEFAULT_BIN, value);
   }
 
-  @SneakyThrows
   private <T> void put(String cacheKey, T value,
       RecordExistsAction recordExistsAction) {
     final var key = getKey(cacheKey);
-    final var bin = getBin(CompressionUtils.compressAndEncode(mapper.writeValueAsBytes(value)));
-    putIntoStore(key, bin, recordExistsAction);
+    putIntoStore(key, encodeValue(value), recordExistsAction);
   }
 
-  private void putIntoStore(Key key, Bin bin,
-      RecordExistsAction recordExistsAction) {
+  private WritePolicy getWritePolicy(RecordExistsAction recordExistsAction) {
     var writePolicy = new WritePolicy(client.getWritePolicyDefault());
     writePolicy.recordExistsAction = recordExistsAction;
     if (ttl > 0) {
       writePolicy.expiration = ttl;
     }
-    client.put(writePolicy, key, bin);
+    return writePolicy;
+  }
+
+  /*
+    Fails with GENERATION_ERROR unless the record is still at the generation it was read at
+   */
+  private WritePolicy getWritePolicy(RecordExistsAction recordExistsAction, int generation) {
+    final var writePolicy = getWritePolicy(recordExistsAction);
+    writePolicy.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+    writePolicy.generation = generation;
+    return writePolicy;
+  }
+
+  private void putIntoStore(Key key, Bin bin,
+      RecordExistsAction recordExistsAction) {
+    client.put(getWritePolicy(recordExistsAction), key, bin);
+  }
+
+  /**
+   * Writes the bins as they are, for callers laying a record out over several bins
+   */
+  public void putBins(String cacheKey, RecordExistsAction recordExistsAction, Bin... bins) {
+    client.put(getWritePolicy(recordExistsAction), getKey(cacheKey), bins);
+  }
+
+  /**
+   * Replaces the record's bins, failing with GENERATION_ERROR if it was written since it was read
+   * at {@code generation}
+   */
+  public void putBinsIfGeneration(String cacheKey, int generation, Bin... bins) {
+    client.put(getWritePolicy(RecordExistsAction.REPLACE_ONLY, generation), getKey(cacheKey),
+        bins);
+  }
+
+  public CompletableFuture<Void> putBinsIfGenerationAsync(String cacheKey, int generation,
+      Bin... bins) {
+    return submit(future -> client.put(eventLoops.next(), writeListener(future),
+        getWritePolicy(RecordExistsAction.REPLACE_ONLY, generation), getKey(cacheKey), bins));
+  }
+
+  @SneakyThrows
+  private <T> Bin encodeValue(T value) {
+    return getBin(payloadEncoder.encode(mapper.writeValueAsBytes(value)));
+  }
+
+  /**
+   * {@link #save(String, Object)}, failing with GENERATION_ERROR if the record was written since it
+   * was read at {@code generation}
+   */
+  public <T> void saveIfGeneration(String cacheKey, T value, int generation) {
+    putBinsIfGeneration(cacheKey, generation, encodeValue(value));
+  }
+
+  public <T> CompletableFuture<Void> saveIfGenerationAsync(String cacheKey, T value,
+      int generation) {
+    final Bin bin;
+    try {
+      bin = encodeValue(value);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return putBinsIfGenerationAsync(cacheKey, generation, bin);
+  }
+
+  /**
+   * Applies the operations to the record in a single round trip, returning what they read
+   */
+  public Record operate(String cacheKey, RecordExistsAction recordExistsAction,
+      Operation... operations) {
+    return client.operate(getWritePolicy(recordExistsAction), getKey(cacheKey), operations);
+  }
+
+  /**
+   * The record with all its bins, null if there is none
+   */
+  public Record getRecord(String cacheKey) {
+    return client.get(null, getKey(cacheKey));
+  }
+
+  /**
+   * Whether the *Async methods are available, they need the event loops the client was built with
+   */
+  public boolean asyncEnabled() {
+    return null != eventLoops;
+  }
+
+  public CompletableFuture<Void> putBinsAsync(String cacheKey,
+      RecordExistsAction recordExistsAction, Bin... bins) {
+    return submit(future -> client.put(eventLoops.next(), writeListener(future),
+        getWritePolicy(recordExistsAction), getKey(cacheKey), bins));
+  }
+
+  public CompletableFuture<Record> operateAsync(String cacheKey,
+      RecordExistsAction recordExistsAction, Operation... operations) {
+    return submit(future -> client.operate(eventLoops.next(), recordListener(future),
+        getWritePolicy(recordExistsAction), getKey(cacheKey), operations));
+  }
+
+  /**
+   * The record with all its bins, completing with null if there is none
+   */
+  public CompletableFuture<Record> getRecordAsync(String cacheKey) {
+    return submit(future -> client.get(eventLoops.next(), recordListener(future), null,
+        getKey(cacheKey)));
   }
 
   public <T> void save(String cacheKey, T value) {
@@ -90,21 +245,67 @@ public class AerospikeClient {
     put(cacheKey, value, RecordExistsAction.CREATE_ONLY);
   }
 
+  /**
+   * The record {@link #save(String, Object)} wrote, null if there is none. Decode it with
+   * {@link #readValue(Record, Class)}, the record also carries the generation.
+   */
+  public Record getValueRecord(String cacheKey) {
+    return getFromStore(getKey(cacheKey));
+  }
+
+  public CompletableFuture<Record> getValueRecordAsync(String cacheKey) {
+    return submit(future -> client.get(eventLoops.next(), recordListener(future), null,
+        getKey(cacheKey), DEFAULT_BIN));
+  }
+
   private Record getFromStore(Key key) {
     return client.get(null, key, DEFAULT_BIN);
   }
 
-  @SneakyThrows
   public <T> Optional<T> get(String cacheKey, Class<T> tClass) {
     final var key = getKey(cacheKey);
-    final var storedRecord = getFromStore(key);
+    return readValue(getFromStore(key), tClass);
+  }
+
+  public <T> CompletableFuture<Void> saveAsync(String cacheKey, T value) {
+    return putAsync(cacheKey, value, RecordExistsAction.REPLACE);
+  }
 
+  public <T> CompletableFuture<Void> strictSaveAsync(String cacheKey, T value) {
+    return putAsync(cacheKey, value, RecordExistsAction.CREATE_ONLY);
+  }
+
+  private <T> CompletableFuture<Void> putAsync(String cacheKey, T value,
+      RecordExistsAction recordExistsAction) {
+    final Bin bin;
+    try {
+      bin = encodeValue(value);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return putBinsAsync(cacheKey, recordExistsAction, bin);
+  }
+
+  public <T> CompletableFuture<Optional<T>> getAsync(String cacheKey, Class<T> tClass) {
+    return getValueRecordAsync(cacheKey)
+        .thenApply(storedRecord -> readValue(storedRecord, tClass));
+  }
+
+  /**
+   * Whether the record holds a value {@link #save(String, Object)} wrote, whatever other bins it
+   * has
+   */
+  public boolean holdsValue(Record storedRecord) {
+    return null != storedRecord && null != storedRecord.getValue(DEFAULT_BIN);
+  }
+
+  @SneakyThrows
+  public <T> Optional<T> readValue(Record storedRecord, Class<T> tClass) {
     if (null == storedRecord) {
       return Optional.empty();
     }
     return Optional.of(
-        mapper.readValue(CompressionUtils.decodeAndDecompress(storedRecord.getString(DEFAULT_BIN)),
-            tClass));
+        mapper.readValue(payloadEncoder.decode(storedRecord.getValue(DEFAULT_BIN)), tClass));
   }
 
   public void delete(String cacheKey) {
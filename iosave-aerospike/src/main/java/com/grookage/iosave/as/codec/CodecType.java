@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+import java.util.Arrays;
+import java.util.Optional;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The codecs a payload can be stored with. The marker is the first byte of every stored payload,
+ * so markers are part of the record format and must never be reused or renumbered.
+ */
+@Getter
+@AllArgsConstructor
+public enum CodecType {
+
+  NONE((byte) 0),
+
+  GZIP((byte) 1),
+
+  /*
+    Needs org.lz4:lz4-java on the classpath
+   */
+  LZ4((byte) 2),
+
+  /*
+    Needs com.github.luben:zstd-jni on the classpath
+   */
+  ZSTD((byte) 3);
+
+  private final byte marker;
+
+  public static Optional<CodecType> forMarker(byte marker) {
+    return Arrays.stream(values())
+        .filter(codecType -> codecType.marker == marker)
+        .findFirst();
+  }
+}
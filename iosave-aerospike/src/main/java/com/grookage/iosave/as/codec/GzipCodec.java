@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.SneakyThrows;
+
+/**
+ * Gzip, refusing to decode a payload past {@link #MAX_DECODED_BYTES}
+ */
+public class GzipCodec implements PayloadCodec {
+
+  @Override
+  public CodecType type() {
+    return CodecType.GZIP;
+  }
+
+  @Override
+  @SneakyThrows
+  public byte[] encode(byte[] raw, int headroom) {
+    final var bos = new ByteArrayOutputStream(headroom + raw.length / 2 + 64);
+    bos.write(new byte[headroom]);
+    try (var gzip = new GZIPOutputStream(bos)) {
+      gzip.write(raw);
+    }
+    return bos.toByteArray();
+  }
+
+  @Override
+  @SneakyThrows
+  public byte[] decode(byte[] encoded, int offset, int length) {
+    try (var gis = new GZIPInputStream(new ByteArrayInputStream(encoded, offset, length))) {
+      final var decoded = gis.readNBytes(MAX_DECODED_BYTES + 1);
+      if (decoded.length > MAX_DECODED_BYTES) {
+        throw new IllegalStateException("Gzip payload decodes to more than " + MAX_DECODED_BYTES
+            + " bytes");
+      }
+      return decoded;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+import java.util.Arrays;
+import net.jpountz.lz4.LZ4CompressorWithLength;
+import net.jpountz.lz4.LZ4DecompressorWithLength;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * LZ4 block compression, prefixed with the decompressed length. Much faster than gzip on both
+ * ends, for a somewhat larger record. Decoding checks the input as it goes, and refuses a length
+ * past {@link #MAX_DECODED_BYTES} before allocating it.
+ */
+public class Lz4Codec implements PayloadCodec {
+
+  private final LZ4CompressorWithLength compressor;
+  private final LZ4DecompressorWithLength decompressor;
+
+  public Lz4Codec() {
+    final var factory = LZ4Factory.fastestInstance();
+    this.compressor = new LZ4CompressorWithLength(factory.fastCompressor());
+    this.decompressor = new LZ4DecompressorWithLength(factory.safeDecompressor());
+  }
+
+  @Override
+  public CodecType type() {
+    return CodecType.LZ4;
+  }
+
+  @Override
+  public byte[] encode(byte[] raw, int headroom) {
+    final var maxLength = compressor.maxCompressedLength(raw.length);
+    final var encoded = new byte[headroom + maxLength];
+    final var length = compressor.compress(raw, 0, raw.length, encoded, headroom, maxLength);
+    return Arrays.copyOf(encoded, headroom + length);
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded, int offset, int length) {
+    if (length < Integer.BYTES) {
+      throw new IllegalStateException("LZ4 payload is too short for its length prefix");
+    }
+    final var decodedLength = LZ4DecompressorWithLength.getDecompressedLength(encoded, offset);
+    if (decodedLength < 0 || decodedLength > MAX_DECODED_BYTES) {
+      throw new IllegalStateException("LZ4 payload declares " + decodedLength + " bytes, more "
+          + "than " + MAX_DECODED_BYTES);
+    }
+    return decompressor.decompress(encoded, offset, length);
+  }
+}
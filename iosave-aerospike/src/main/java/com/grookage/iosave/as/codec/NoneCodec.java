@@ -0,0 +1,38 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+import java.util.Arrays;
+
+public class NoneCodec implements PayloadCodec {
+
+  @Override
+  public CodecType type() {
+    return CodecType.NONE;
+  }
+
+  @Override
+  public byte[] encode(byte[] raw, int headroom) {
+    final var encoded = new byte[headroom + raw.length];
+    System.arraycopy(raw, 0, encoded, headroom, raw.length);
+    return encoded;
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded, int offset, int length) {
+    return Arrays.copyOfRange(encoded, offset, offset + length);
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+/**
+ * Turns a serialized payload into what is stored and back. Implementations are stateless and
+ * thread safe.
+ */
+public interface PayloadCodec {
+
+  /**
+   * The most bytes a payload is decoded into, a payload claiming more is refused rather than
+   * allocated
+   */
+  int MAX_DECODED_BYTES = 64 << 20;
+
+  CodecType type();
+
+  /**
+   * Encodes the payload into a fresh array, leaving its first {@code headroom} bytes free for the
+   * caller, so a header can be written without copying the encoded payload again.
+   */
+  byte[] encode(byte[] raw, int headroom);
+
+  byte[] decode(byte[] encoded, int offset, int length);
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+import com.grookage.iosave.as.config.CodecConfig;
+import com.grookage.iosave.as.utils.CompressionUtils;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+/**
+ * Encodes payloads into byte[] bins as a {@link CodecType} marker byte followed by the encoded
+ * payload. Payloads shorter than the threshold are stored as they are, compressing a few hundred
+ * bytes costs more than it saves. Any marker can be decoded whatever the configured codec, so the
+ * codec can be changed on a live set, and String bins written by earlier versions are read as
+ * base64 gzip.
+ */
+@Getter
+public class PayloadEncoder {
+
+  private static final Map<CodecType, PayloadCodec> CODECS = new ConcurrentHashMap<>();
+
+  private final PayloadCodec codec;
+  private final int threshold;
+  private final PayloadListener listener;
+
+  public PayloadEncoder(final CodecType codecType, final int threshold) {
+    this(codecType, threshold, PayloadListener.NOOP);
+  }
+
+  public PayloadEncoder(final CodecType codecType, final int threshold,
+      final PayloadListener listener) {
+    this.codec = codecFor(codecType);
+    this.threshold = threshold;
+    this.listener = null == listener ? PayloadListener.NOOP : listener;
+  }
+
+  public static PayloadEncoder defaultEncoder() {
+    return new PayloadEncoder(CodecType.GZIP, CodecConfig.DEFAULT_THRESHOLD);
+  }
+
+  /*
+    Codecs are created on first use, so LZ4 and Zstd are only needed on the classpath when used
+   */
+  public static PayloadCodec codecFor(CodecType codecType) {
+    return CODECS.computeIfAbsent(codecType, type -> {
+      try {
+        switch (type) {
+          case GZIP:
+            return new GzipCodec();
+          case LZ4:
+            return new Lz4Codec();
+          case ZSTD:
+            return new ZstdCodec();
+          case NONE:
+          default:
+            return new NoneCodec();
+        }
+      } catch (NoClassDefFoundError e) {
+        throw new IllegalStateException(
+            "The library backing the " + type + " codec is not on the classpath", e);
+      }
+    });
+  }
+
+  public byte[] encode(byte[] raw) {
+    final var selected = raw.length < threshold ? codecFor(CodecType.NONE) : codec;
+    final var encoded = selected.encode(raw, 1);
+    encoded[0] = selected.type().getMarker();
+    listener.onEncode(selected.type(), raw.length, encoded.length);
+    return encoded;
+  }
+
+  /**
+   * Decodes a bin value written by {@link #encode(byte[])}, or a legacy base64 gzip String
+   */
+  @SneakyThrows
+  public byte[] decode(Object binValue) {
+    if (binValue instanceof String) {
+      return CompressionUtils.decodeAndDecompress((String) binValue);
+    }
+    final var encoded = (byte[]) binValue;
+    final var codecType = CodecType.forMarker(encoded[0])
+        .orElseThrow(() -> new IllegalArgumentException("Unknown codec marker " + encoded[0]));
+    return codecFor(codecType).decode(encoded, 1, encoded.length - 1);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import lombok.SneakyThrows;
+
+/**
+ * Zstandard at its default level, gzip's ratio or better at several times its speed. A frame is
+ * decoded into an array of the size its header declares, or streamed when it declares none, and
+ * refused past {@link #MAX_DECODED_BYTES} either way.
+ */
+public class ZstdCodec implements PayloadCodec {
+
+  private static final int LEVEL = Zstd.defaultCompressionLevel();
+  /* ZSTD_CONTENTSIZE_UNKNOWN, the frame was written without its size */
+  private static final long UNKNOWN_SIZE = -1;
+
+  private static long checked(long result) {
+    if (Zstd.isError(result)) {
+      throw new IllegalStateException("Zstd failed: " + Zstd.getErrorName(result));
+    }
+    return result;
+  }
+
+  @Override
+  public CodecType type() {
+    return CodecType.ZSTD;
+  }
+
+  @Override
+  public byte[] encode(byte[] raw, int headroom) {
+    final var maxLength = (int) Zstd.compressBound(raw.length);
+    final var encoded = new byte[headroom + maxLength];
+    final var length = checked(Zstd.compressByteArray(encoded, headroom, maxLength,
+        raw, 0, raw.length, LEVEL));
+    return Arrays.copyOf(encoded, headroom + (int) length);
+  }
+
+  @SneakyThrows
+  private static byte[] stream(byte[] encoded, int offset, int length) {
+    try (var zis = new ZstdInputStream(new ByteArrayInputStream(encoded, offset, length))) {
+      final var decoded = zis.readNBytes(MAX_DECODED_BYTES);
+      if (zis.read() != -1) {
+        throw new IllegalStateException("Zstd frame decodes to more than " + MAX_DECODED_BYTES
+            + " bytes");
+      }
+      return decoded;
+    }
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded, int offset, int length) {
+    final var size = Zstd.getFrameContentSize(encoded, offset, length);
+    if (UNKNOWN_SIZE == size) {
+      return stream(encoded, offset, length);
+    }
+    if (size < 0) {
+      throw new IllegalStateException("Zstd frame header is corrupt");
+    }
+    if (size > MAX_DECODED_BYTES) {
+      throw new IllegalStateException("Zstd frame declares " + size + " bytes, more than "
+          + MAX_DECODED_BYTES);
+    }
+    final var decoded = new byte[(int) size];
+    final var decodedLength = checked(Zstd.decompressByteArray(decoded, 0, decoded.length,
+        encoded, offset, length));
+    if (decodedLength != size) {
+      throw new IllegalStateException("Zstd frame decoded to " + decodedLength + " bytes, its "
+          + "header declares " + size);
+    }
+    return decoded;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.config;
+
+import com.grookage.iosave.as.codec.CodecType;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CodecConfig {
+
+  public static final int DEFAULT_THRESHOLD = 1024;
+
+  @NotNull
+  @Builder.Default
+  private CodecType type = CodecType.GZIP;
+  /*
+    Payloads shorter than this many bytes are stored uncompressed
+   */
+  @Min(0)
+  @Builder.Default
+  private int threshold = DEFAULT_THRESHOLD;
+}
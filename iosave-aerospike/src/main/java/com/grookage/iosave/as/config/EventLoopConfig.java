@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.config;
+
+import javax.validation.constraints.Min;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The NIO event loops behind the async repository methods. Without them those methods fall back to
+ * the blocking client.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class EventLoopConfig {
+
+  private boolean enabled;
+  /*
+    Number of event loop threads, the number of cores when 0
+   */
+  @Min(0)
+  private int size;
+  /*
+    Commands in flight per event loop, the rest wait in the loop's queue. When 0, the connection
+    budget is split across loops, maxConnectionsPerNode / size, so that loops never run out of
+    connections. Unbounded if maxConnectionsPerNode isn't set either.
+   */
+  @Min(0)
+  private int maxCommandsInProcess;
+  /*
+    Commands waiting per event loop beyond which new ones are rejected, unbounded when 0
+   */
+  @Min(0)
+  private int maxCommandsInQueue;
+}
@@ -16,7 +16,10 @@
 package com.grookage.iosave.as.config;
 
 import java.util.List;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -38,10 +41,67 @@ public class IOSaveAerospikeConfig {
   @Builder.Default
   private String defaultBin = "default";
   private int maxConnectionsPerNode;
+  /*
+    Connections opened to each node as the bundle starts, so the first requests after a deploy
+    don't all open their own. None when 0, at most maxConnectionsPerNode.
+   */
+  @Min(0)
+  private int warmupConnectionsPerNode;
+  /*
+    Pools each node's connections are split across, to spread contention on them, 1 when 0
+   */
+  @Min(0)
+  private int connPoolsPerNode;
   private int timeout;
+  /*
+    Milliseconds a single attempt of a command may wait on its socket before it is retried, within
+    timeout. The client's default of 30000 when 0.
+   */
+  @Min(0)
+  private int socketTimeout;
+  /*
+    Milliseconds allowed to open a connection and log in, the client's default of 1000 when 0
+   */
+  @Min(0)
+  private int connectTimeout;
+  /*
+    Milliseconds between checks of the cluster's nodes, the client's default of 1000 when 0
+   */
+  @Min(0)
+  private int tendInterval;
   private int retries;
   private int sleepBetweenRetries;
+  /*
+    Threads of the client's executor, which runs the node commands of batches in parallel. The
+    client's own cached pool when 0.
+   */
+  @Min(0)
   private int threadPoolSize;
+  /*
+    A virtual thread per task for the client's executor, in place of threadPoolSize platform
+    threads. Needs Java 21, older runtimes fall back to the platform thread pool.
+   */
+  private boolean virtualThreads;
+  /*
+    Seconds a connection may sit idle in its pool before it is closed, the client's default of 55
+    when 0
+   */
+  @Min(0)
   private int maxSocketIdle;
   private int ttl;
+  @NotNull
+  @Builder.Default
+  private RecordLayout recordLayout = RecordLayout.SINGLE_BIN;
+  @Valid
+  @NotNull
+  @Builder.Default
+  private CodecConfig codec = new CodecConfig();
+  @Valid
+  @NotNull
+  @Builder.Default
+  private EventLoopConfig eventLoops = new EventLoopConfig();
+  @Valid
+  @NotNull
+  @Builder.Default
+  private NearCacheConfig nearCache = new NearCacheConfig();
 }
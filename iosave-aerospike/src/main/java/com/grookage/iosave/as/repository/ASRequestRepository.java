@@ -15,21 +15,142 @@
  */
 package com.grookage.iosave.as.repository;
 
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.grookage.iosave.as.cache.RequestNearCache;
 import com.grookage.iosave.as.client.AerospikeClient;
+import com.grookage.iosave.as.config.RecordLayout;
+import com.grookage.iosave.as.utils.RequestRecordUtils;
 import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.exception.IOSaveException;
 import com.grookage.iosave.core.repository.AbstractRequestRepository;
 import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import lombok.AllArgsConstructor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-@AllArgsConstructor
-@Builder
 public class ASRequestRepository extends AbstractRequestRepository {
 
   private final AerospikeClient aerospikeClient;
+  private final RequestNearCache nearCache;
+  private final RecordLayout recordLayout;
+
+  @Builder
+  public ASRequestRepository(final AerospikeClient aerospikeClient,
+      final RequestNearCache nearCache,
+      final RecordLayout recordLayout) {
+    this.aerospikeClient = aerospikeClient;
+    this.nearCache = nearCache;
+    this.recordLayout = null == recordLayout ? RecordLayout.SINGLE_BIN : recordLayout;
+  }
+
+  public ASRequestRepository(AerospikeClient aerospikeClient) {
+    this(aerospikeClient, null, RecordLayout.SINGLE_BIN);
+  }
+
+  private boolean multiBin() {
+    return recordLayout == RecordLayout.MULTI_BIN;
+  }
+
+  /*
+    Records written in the single bin layout, before a switch to this one, read as they were
+    written, with the bins changed since in this layout laid over them
+   */
+  private RequestEntity fromBins(String messageId, Record storedRecord) {
+    final var written = aerospikeClient.holdsValue(storedRecord)
+        ? aerospikeClient.readValue(storedRecord, RequestEntity.class).orElseThrow()
+        : new RequestEntity();
+    return RequestRecordUtils.toEntity(aerospikeClient.getPayloadEncoder(), messageId,
+        storedRecord, written);
+  }
+
+  private Optional<RequestEntity> getFromStore(String messageId) {
+    if (multiBin()) {
+      return Optional.ofNullable(aerospikeClient.getRecord(messageId))
+          .map(storedRecord -> fromBins(messageId, storedRecord));
+    }
+    final var storedRecord = aerospikeClient.getValueRecord(messageId);
+    return withGeneration(storedRecord,
+        aerospikeClient.readValue(storedRecord, RequestEntity.class));
+  }
+
+  private static Optional<RequestEntity> withGeneration(Record storedRecord,
+      Optional<RequestEntity> requestEntity) {
+    requestEntity.ifPresent(found -> found.setGeneration(storedRecord.generation));
+    return requestEntity;
+  }
+
+  private void putIntoStore(RequestEntity requestEntity, RecordExistsAction recordExistsAction) {
+    if (multiBin()) {
+      aerospikeClient.putBins(requestEntity.getRequestId(), recordExistsAction,
+          RequestRecordUtils.toBins(aerospikeClient.getPayloadEncoder(), requestEntity));
+    } else if (recordExistsAction == RecordExistsAction.CREATE_ONLY) {
+      aerospikeClient.strictSave(requestEntity.getRequestId(), requestEntity);
+    } else {
+      aerospikeClient.save(requestEntity.getRequestId(), requestEntity);
+    }
+  }
+
+  private static Throwable unwrap(Throwable throwable) {
+    return throwable instanceof CompletionException && null != throwable.getCause()
+        ? throwable.getCause() : throwable;
+  }
+
+  private static CompletionException rethrow(Throwable throwable) {
+    return throwable instanceof CompletionException
+        ? (CompletionException) throwable : new CompletionException(throwable);
+  }
+
+  /*
+    Store failures surface as STORE_ERROR, with the aerospike exception as the cause for its result
+    code
+   */
+  private static IOSaveException storeError(Throwable throwable) {
+    final var cause = unwrap(throwable);
+    return cause instanceof IOSaveException ? (IOSaveException) cause
+        : IOSaveException.propagate(IOSaveException.ErrorCode.STORE_ERROR, cause);
+  }
+
+  private static boolean hasResultCode(Throwable throwable, int resultCode) {
+    final var cause = unwrap(throwable);
+    return cause instanceof AerospikeException
+        && ((AerospikeException) cause).getResultCode() == resultCode;
+  }
+
+  private CompletableFuture<Optional<RequestEntity>> getFromStoreAsync(String messageId) {
+    if (multiBin()) {
+      return aerospikeClient.getRecordAsync(messageId)
+          .thenApply(storedRecord -> Optional.ofNullable(storedRecord)
+              .map(found -> fromBins(messageId, found)));
+    }
+    return aerospikeClient.getValueRecordAsync(messageId)
+        .thenApply(storedRecord -> withGeneration(storedRecord,
+            aerospikeClient.readValue(storedRecord, RequestEntity.class)));
+  }
+
+  private CompletableFuture<Void> putIntoStoreAsync(RequestEntity requestEntity,
+      RecordExistsAction recordExistsAction) {
+    try {
+      if (multiBin()) {
+        return aerospikeClient.putBinsAsync(requestEntity.getRequestId(), recordExistsAction,
+            RequestRecordUtils.toBins(aerospikeClient.getPayloadEncoder(), requestEntity));
+      }
+      return recordExistsAction == RecordExistsAction.CREATE_ONLY
+          ? aerospikeClient.strictSaveAsync(requestEntity.getRequestId(), requestEntity)
+          : aerospikeClient.saveAsync(requestEntity.getRequestId(), requestEntity);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
 
   @Override
   public boolean connected() {
@@ -40,30 +161,356 @@ public class ASRequestRepository extends AbstractRequestRepository {
 
   @Override
   public Optional<RequestEntity> findByMessageId(String messageId) {
+    if (null != nearCache) {
+      final var cached = nearCache.get(messageId);
+      if (cached.isPresent()) {
+        return cached;
+      }
+    }
     try {
-      return aerospikeClient.get(messageId, RequestEntity.class);
+      final var requestEntity = getFromStore(messageId);
+      if (null != nearCache) {
+        requestEntity.ifPresent(nearCache::offer);
+      }
+      return requestEntity;
     } catch (Exception e) {
       log.error("There is an exception while trying to get the messageId from the store {}",
-          messageId);
-      return Optional.empty();
+          messageId, e);
+      throw storeError(e);
     }
   }
 
   @Override
   public void strictSave(RequestEntity requestEntity) {
     requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
-    aerospikeClient.strictSave(requestEntity.getRequestId(), requestEntity);
+    try {
+      putIntoStore(requestEntity, RecordExistsAction.CREATE_ONLY);
+    } catch (AerospikeException e) {
+      if (e.getResultCode() == ResultCode.KEY_EXISTS_ERROR) {
+        throw IOSaveException.error(IOSaveException.ErrorCode.DUPLICATE_MESSAGE);
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public Optional<RequestEntity> claim(RequestEntity requestEntity) {
+    if (null != nearCache) {
+      final var cached = nearCache.get(requestEntity.getRequestId());
+      if (cached.isPresent()) {
+        return cached;
+      }
+    }
+    return super.claim(requestEntity);
   }
 
   @Override
   public void save(RequestEntity requestEntity) {
     try {
       requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
-      aerospikeClient
-          .save(requestEntity.getRequestId(), requestEntity);
+      putIntoStore(requestEntity, RecordExistsAction.REPLACE);
+      if (null != nearCache) {
+        nearCache.offer(requestEntity);
+      }
     } catch (Exception e) {
-      log.error(
-          "Can't persist the inbound entity into aerospike. Possible duplicates might creep in");
+      log.error("Can't persist the inbound entity with messageId {} into aerospike",
+          requestEntity.getRequestId(), e);
+      throw storeError(e);
+    }
+  }
+
+  /*
+    Straight to the store, the near cache may hold an older generation
+   */
+  @Override
+  protected Optional<RequestEntity> findForUpdate(String messageId) {
+    return getFromStore(messageId);
+  }
+
+  @Override
+  protected CompletableFuture<Optional<RequestEntity>> findForUpdateAsync(String messageId) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.findForUpdateAsync(messageId);
+    }
+    return getFromStoreAsync(messageId);
+  }
+
+  @Override
+  public boolean saveIfUnchanged(RequestEntity requestEntity) {
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    try {
+      if (multiBin()) {
+        aerospikeClient.putBinsIfGeneration(requestEntity.getRequestId(),
+            requestEntity.getGeneration(),
+            RequestRecordUtils.toBins(aerospikeClient.getPayloadEncoder(), requestEntity));
+      } else {
+        aerospikeClient.saveIfGeneration(requestEntity.getRequestId(), requestEntity,
+            requestEntity.getGeneration());
+      }
+    } catch (AerospikeException e) {
+      if (e.getResultCode() == ResultCode.GENERATION_ERROR
+          || e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR) {
+        return false;
+      }
+      throw e;
+    }
+    requestEntity.setGeneration(requestEntity.getGeneration() + 1);
+    if (null != nearCache) {
+      nearCache.offer(requestEntity);
+    }
+    return true;
+  }
+
+  @Override
+  public CompletableFuture<Boolean> saveIfUnchangedAsync(RequestEntity requestEntity) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.saveIfUnchangedAsync(requestEntity);
+    }
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    final CompletableFuture<Void> written;
+    try {
+      if (multiBin()) {
+        written = aerospikeClient.putBinsIfGenerationAsync(requestEntity.getRequestId(),
+            requestEntity.getGeneration(),
+            RequestRecordUtils.toBins(aerospikeClient.getPayloadEncoder(), requestEntity));
+      } else {
+        written = aerospikeClient.saveIfGenerationAsync(requestEntity.getRequestId(),
+            requestEntity, requestEntity.getGeneration());
+      }
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return written
+        .thenApply(ignored -> {
+          requestEntity.setGeneration(requestEntity.getGeneration() + 1);
+          if (null != nearCache) {
+            nearCache.offer(requestEntity);
+          }
+          return true;
+        })
+        .exceptionally(e -> {
+          if (hasResultCode(e, ResultCode.GENERATION_ERROR)
+              || hasResultCode(e, ResultCode.KEY_NOT_FOUND_ERROR)) {
+            return false;
+          }
+          throw rethrow(e);
+        });
+  }
+
+  @Override
+  public void incrementDuplicateRequestCount(String messageId, int count) {
+    if (!multiBin()) {
+      super.incrementDuplicateRequestCount(messageId, count);
+      return;
+    }
+    try {
+      aerospikeClient.operate(messageId, RecordExistsAction.UPDATE_ONLY,
+          RequestRecordUtils.toDuplicateIncrement(count));
+    } catch (AerospikeException e) {
+      if (e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR) {
+        log.error("Can't increment the duplicate request count of messageId {}", messageId, e);
+        throw storeError(e);
+      }
+    }
+  }
+
+  @Override
+  public void complete(RequestEntity requestEntity) {
+    if (!multiBin()) {
+      super.complete(requestEntity);
+      return;
+    }
+    try {
+      aerospikeClient.operate(requestEntity.getRequestId(), RecordExistsAction.UPDATE_ONLY,
+          RequestRecordUtils.toCompletion(aerospikeClient.getPayloadEncoder(), requestEntity));
+      if (null != nearCache) {
+        nearCache.offer(requestEntity);
+      }
+    } catch (AerospikeException e) {
+      if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR) {
+        throw entityNotFound(requestEntity.getRequestId());
+      }
+      throw e;
+    }
+  }
+
+  /*
+    With event loops, the whole batch is in flight at once rather than one round trip after another
+   */
+  @Override
+  public List<RequestEntity> completeAll(List<RequestEntity> requestEntities) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.completeAll(requestEntities);
+    }
+    final var inFlight = requestEntities.stream()
+        .map(this::completeAsync)
+        .collect(Collectors.toList());
+    final var failed = new ArrayList<RequestEntity>();
+    for (int i = 0; i < inFlight.size(); i++) {
+      try {
+        inFlight.get(i).join();
+      } catch (Exception e) {
+        log.error("Can't complete the inbound entity with messageId {}",
+            requestEntities.get(i).getRequestId(), unwrap(e));
+        failed.add(requestEntities.get(i));
+      }
+    }
+    return failed;
+  }
+
+  /*
+    The async methods below run the blocking ones inline unless the client has event loops
+   */
+  @Override
+  public CompletableFuture<Optional<RequestEntity>> findByMessageIdAsync(String messageId) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.findByMessageIdAsync(messageId);
+    }
+    if (null != nearCache) {
+      final var cached = nearCache.get(messageId);
+      if (cached.isPresent()) {
+        return CompletableFuture.completedFuture(cached);
+      }
+    }
+    return getFromStoreAsync(messageId)
+        .thenApply(requestEntity -> {
+          if (null != nearCache) {
+            requestEntity.ifPresent(nearCache::offer);
+          }
+          return requestEntity;
+        })
+        .exceptionally(e -> {
+          log.error("There is an exception while trying to get the messageId from the store {}",
+              messageId, unwrap(e));
+          throw new CompletionException(storeError(e));
+        });
+  }
+
+  @Override
+  public CompletableFuture<Void> strictSaveAsync(RequestEntity requestEntity) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.strictSaveAsync(requestEntity);
+    }
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    return putIntoStoreAsync(requestEntity, RecordExistsAction.CREATE_ONLY)
+        .exceptionally(e -> {
+          if (hasResultCode(e, ResultCode.KEY_EXISTS_ERROR)) {
+            throw IOSaveException.error(IOSaveException.ErrorCode.DUPLICATE_MESSAGE);
+          }
+          throw rethrow(e);
+        });
+  }
+
+  @Override
+  public CompletableFuture<Optional<RequestEntity>> claimAsync(RequestEntity requestEntity) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.claimAsync(requestEntity);
+    }
+    if (null != nearCache) {
+      final var cached = nearCache.get(requestEntity.getRequestId());
+      if (cached.isPresent()) {
+        return CompletableFuture.completedFuture(cached);
+      }
+    }
+    return strictSaveAsync(requestEntity)
+        .handle((ignored, e) -> null == e
+            ? CompletableFuture.completedFuture(Optional.<RequestEntity>empty())
+            : findClaimedAsync(requestEntity, unwrap(e)))
+        .thenCompose(Function.identity());
+  }
+
+  private CompletableFuture<Optional<RequestEntity>> findClaimedAsync(
+      RequestEntity requestEntity, Throwable cause) {
+    if (!(cause instanceof IOSaveException) || ((IOSaveException) cause).getErrorCode()
+        != IOSaveException.ErrorCode.DUPLICATE_MESSAGE) {
+      return CompletableFuture.failedFuture(cause);
+    }
+    return findByMessageIdAsync(requestEntity.getRequestId())
+        .thenApply(existing -> {
+          if (existing.isEmpty()) {
+            //Expired or deleted since, there is no telling whether it was processed
+            throw (IOSaveException) cause;
+          }
+          return existing;
+        });
+  }
+
+  @Override
+  public CompletableFuture<Void> saveAsync(RequestEntity requestEntity) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.saveAsync(requestEntity);
+    }
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    return putIntoStoreAsync(requestEntity, RecordExistsAction.REPLACE)
+        .thenRun(() -> {
+          if (null != nearCache) {
+            nearCache.offer(requestEntity);
+          }
+        })
+        .exceptionally(e -> {
+          log.error("Can't persist the inbound entity with messageId {} into aerospike",
+              requestEntity.getRequestId(), unwrap(e));
+          throw new CompletionException(storeError(e));
+        });
+  }
+
+  @Override
+  public CompletableFuture<Void> incrementDuplicateRequestCountAsync(String messageId,
+      int count) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.incrementDuplicateRequestCountAsync(messageId, count);
+    }
+    if (!multiBin()) {
+      return updateWithRetriesAsync(messageId, inboundEntity -> inboundEntity
+          .setDuplicateRequestCount(inboundEntity.getDuplicateRequestCount() + count))
+          .<Void>thenApply(ignored -> null)
+          .exceptionally(e -> {
+            log.error("Can't increment the duplicate request count of messageId {}", messageId,
+                unwrap(e));
+            throw new CompletionException(storeError(e));
+          });
+    }
+    return aerospikeClient.operateAsync(messageId, RecordExistsAction.UPDATE_ONLY,
+            RequestRecordUtils.toDuplicateIncrement(count))
+        .<Void>thenApply(ignored -> null)
+        .exceptionally(e -> {
+          if (hasResultCode(e, ResultCode.KEY_NOT_FOUND_ERROR)) {
+            return null;
+          }
+          log.error("Can't increment the duplicate request count of messageId {}", messageId,
+              unwrap(e));
+          throw new CompletionException(storeError(e));
+        });
+  }
+
+  @Override
+  public CompletableFuture<Void> completeAsync(RequestEntity requestEntity) {
+    if (!aerospikeClient.asyncEnabled()) {
+      return super.completeAsync(requestEntity);
+    }
+    if (!multiBin()) {
+      return updateWithRetriesAsync(requestEntity.getRequestId(),
+          inboundEntity -> inboundEntity.loadResponseFromMessage(requestEntity))
+          .thenAccept(updated -> {
+            if (!updated) {
+              throw entityNotFound(requestEntity.getRequestId());
+            }
+          });
     }
+    return aerospikeClient.operateAsync(requestEntity.getRequestId(),
+            RecordExistsAction.UPDATE_ONLY,
+            RequestRecordUtils.toCompletion(aerospikeClient.getPayloadEncoder(), requestEntity))
+        .<Void>thenApply(ignored -> {
+          if (null != nearCache) {
+            nearCache.offer(requestEntity);
+          }
+          return null;
+        })
+        .exceptionally(e -> {
+          if (hasResultCode(e, ResultCode.KEY_NOT_FOUND_ERROR)) {
+            throw entityNotFound(requestEntity.getRequestId());
+          }
+          throw rethrow(e);
+        });
   }
 }
@@ -18,6 +18,10 @@ package com.grookage.iosave.as.utils;
 import com.aerospike.client.AerospikeClient;
 import com.aerospike.client.Host;
 import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.async.EventLoops;
+import com.aerospike.client.cluster.Connection;
+import com.aerospike.client.async.EventPolicy;
+import com.aerospike.client.async.NioEventLoops;
 import com.aerospike.client.policy.ClientPolicy;
 import com.aerospike.client.policy.CommitLevel;
 import com.aerospike.client.policy.Policy;
@@ -26,7 +30,10 @@ import com.aerospike.client.policy.Replica;
 import com.aerospike.client.policy.TlsPolicy;
 import com.aerospike.client.policy.WritePolicy;
 import com.grookage.iosave.as.config.IOSaveAerospikeConfig;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
@@ -34,7 +41,97 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class AerospikeClientUtils {
 
+  private static final int DEFAULT_CONNECT_TIMEOUT = 1000;
+
+  /**
+   * The event loops async commands run on, null unless enabled. Pass them to
+   * {@link #provideIAerospikeClient(IOSaveAerospikeConfig, EventLoops)} and to the
+   * {@link com.grookage.iosave.as.client.AerospikeClient}, and close them after the client.
+   */
+  public static EventLoops provideEventLoops(IOSaveAerospikeConfig config) {
+    final var eventLoopConfig = config.getEventLoops();
+    if (!eventLoopConfig.isEnabled()) {
+      return null;
+    }
+    final var size = eventLoopConfig.getSize() > 0
+        ? eventLoopConfig.getSize() : Runtime.getRuntime().availableProcessors();
+    final var eventPolicy = new EventPolicy();
+    if (eventLoopConfig.getMaxCommandsInProcess() > 0) {
+      eventPolicy.maxCommandsInProcess = eventLoopConfig.getMaxCommandsInProcess();
+    } else if (config.getMaxConnectionsPerNode() > 0) {
+      eventPolicy.maxCommandsInProcess = Math.max(1, config.getMaxConnectionsPerNode() / size);
+    }
+    eventPolicy.maxCommandsInQueue = eventLoopConfig.getMaxCommandsInQueue();
+    log.info("Starting {} Aerospike event loops", size);
+    return new NioEventLoops(eventPolicy, size);
+  }
+
+  /*
+    Virtual threads are looked up reflectively, so that the module still builds and runs on the
+    Java 11 it targets. Null leaves the client to create its own pool.
+   */
+  private static ExecutorService provideThreadPool(IOSaveAerospikeConfig config) {
+    if (config.isVirtualThreads()) {
+      try {
+        final var executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+            .invoke(null);
+        log.info("Aerospike client commands run on virtual threads");
+        return (ExecutorService) executor;
+      } catch (ReflectiveOperationException e) {
+        log.warn("Virtual threads need Java 21, running {} on platform threads",
+            Runtime.version());
+      }
+    }
+    return config.getThreadPoolSize() > 0
+        ? Executors.newFixedThreadPool(config.getThreadPoolSize()) : null;
+  }
+
+  /**
+   * Opens {@code warmupConnectionsPerNode} connections to every node of the cluster and leaves
+   * them in their pools, so that traffic arriving right after a start finds them open instead of
+   * every request opening its own. Connections that can't be opened are left to be opened on
+   * demand, as they would have been. Connections idle past {@code maxSocketIdle} are closed
+   * again, so warm up as traffic is about to arrive.
+   *
+   * @return the number of connections opened
+   */
+  public static int warmup(IAerospikeClient client, IOSaveAerospikeConfig config) {
+    final var perNode = config.getMaxConnectionsPerNode() > 0
+        ? Math.min(config.getWarmupConnectionsPerNode(), config.getMaxConnectionsPerNode())
+        : config.getWarmupConnectionsPerNode();
+    if (perNode <= 0) {
+      return 0;
+    }
+    final var connectTimeout = config.getConnectTimeout() > 0
+        ? config.getConnectTimeout() : DEFAULT_CONNECT_TIMEOUT;
+    final var startedAt = System.nanoTime();
+    var opened = 0;
+    for (final var node : client.getNodes()) {
+      //Held until all are open, a connection put back would be handed out again
+      final var connections = new ArrayList<Connection>(perNode);
+      try {
+        while (connections.size() < perNode) {
+          connections.add(node.getConnection(connectTimeout));
+        }
+      } catch (Exception e) {
+        log.warn("Opened {} of {} connections to {}: {}", connections.size(), perNode, node,
+            e.getMessage());
+      } finally {
+        connections.forEach(node::putConnection);
+      }
+      opened += connections.size();
+    }
+    log.info("Opened {} aerospike connections in {}ms", opened,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    return opened;
+  }
+
   public static IAerospikeClient provideIAerospikeClient(IOSaveAerospikeConfig config) {
+    return provideIAerospikeClient(config, null);
+  }
+
+  public static IAerospikeClient provideIAerospikeClient(IOSaveAerospikeConfig config,
+      EventLoops eventLoops) {
     log.info("Starting Aerospike client");
 
     final var readPolicy = new Policy();
@@ -43,6 +140,9 @@ public class AerospikeClientUtils {
     readPolicy.replica = Replica.MASTER_PROLES;
     readPolicy.sleepBetweenRetries = config.getSleepBetweenRetries();
     readPolicy.totalTimeout = config.getTimeout();
+    if (config.getSocketTimeout() > 0) {
+      readPolicy.socketTimeout = config.getSocketTimeout();
+    }
     readPolicy.sendKey = true;
 
     final var writePolicy = new WritePolicy();
@@ -52,17 +152,34 @@ public class AerospikeClientUtils {
     writePolicy.sleepBetweenRetries = config.getSleepBetweenRetries();
     writePolicy.commitLevel = CommitLevel.COMMIT_ALL;
     writePolicy.totalTimeout = config.getTimeout();
+    if (config.getSocketTimeout() > 0) {
+      writePolicy.socketTimeout = config.getSocketTimeout();
+    }
     writePolicy.sendKey = true;
 
     final var clientPolicy = new ClientPolicy();
     clientPolicy.user = config.getUsername();
     clientPolicy.password = config.getPassword();
-    clientPolicy.maxConnsPerNode = config.getMaxConnectionsPerNode();
+    if (config.getMaxConnectionsPerNode() > 0) {
+      clientPolicy.maxConnsPerNode = config.getMaxConnectionsPerNode();
+    }
+    if (config.getConnPoolsPerNode() > 0) {
+      clientPolicy.connPoolsPerNode = config.getConnPoolsPerNode();
+    }
+    if (config.getMaxSocketIdle() > 0) {
+      clientPolicy.maxSocketIdle = config.getMaxSocketIdle();
+    }
+    if (config.getConnectTimeout() > 0) {
+      clientPolicy.timeout = config.getConnectTimeout();
+    }
+    if (config.getTendInterval() > 0) {
+      clientPolicy.tendInterval = config.getTendInterval();
+    }
     clientPolicy.readPolicyDefault = readPolicy;
     clientPolicy.writePolicyDefault = writePolicy;
     clientPolicy.failIfNotConnected = true;
-    clientPolicy.threadPool = Executors.newFixedThreadPool(
-        config.getThreadPoolSize());
+    clientPolicy.threadPool = provideThreadPool(config);
+    clientPolicy.eventLoops = eventLoops;
     final var localConfig = Boolean.parseBoolean(System.getProperty("localConfig", "false"));
 
     if (!localConfig) {
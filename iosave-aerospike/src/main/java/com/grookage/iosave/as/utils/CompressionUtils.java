@@ -15,16 +15,19 @@
  */
 package com.grookage.iosave.as.utils;
 
-import java.io.BufferedReader;
+import com.grookage.iosave.as.codec.PayloadCodec;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Base64;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import lombok.experimental.UtilityClass;
 
+/**
+ * The base64 gzip String encoding of earlier versions, kept so their records stay readable. New
+ * records are written through {@link com.grookage.iosave.as.codec.PayloadEncoder}.
+ */
 @UtilityClass
 public class CompressionUtils {
 
@@ -38,16 +41,14 @@ public class CompressionUtils {
   }
 
   public static byte[] decodeAndDecompress(String value) throws IOException {
-    final var gis = new GZIPInputStream(
-        new ByteArrayInputStream(
-            Base64.getDecoder().decode(value)
-        ));
-    final var bf = new BufferedReader(new InputStreamReader(gis));
-    final var stringBuilder = new StringBuilder();
-    String line;
-    while ((line = bf.readLine()) != null) {
-      stringBuilder.append(line);
+    try (var gis = new GZIPInputStream(
+        new ByteArrayInputStream(Base64.getDecoder().decode(value)))) {
+      final var decoded = gis.readNBytes(PayloadCodec.MAX_DECODED_BYTES + 1);
+      if (decoded.length > PayloadCodec.MAX_DECODED_BYTES) {
+        throw new IllegalStateException("Gzip payload decodes to more than "
+            + PayloadCodec.MAX_DECODED_BYTES + " bytes");
+      }
+      return decoded;
     }
-    return stringBuilder.toString().getBytes();
   }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.utils;
+
+import com.aerospike.client.Bin;
+import com.aerospike.client.Operation;
+import com.aerospike.client.Record;
+import com.grookage.iosave.as.codec.PayloadEncoder;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.utils.ResponseHeadersDeserializer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Maps a {@link RequestEntity} onto a bin per field, the
+ * {@link com.grookage.iosave.as.config.RecordLayout#MULTI_BIN} layout. Bodies go through the
+ * {@link PayloadEncoder}, everything else is stored as is, so counters and statuses can be changed
+ * on the server without reading the record.
+ */
+@UtilityClass
+public class RequestRecordUtils {
+
+  public static final String TRACE_ID = "traceId";
+  public static final String REQUEST_BODY = "reqBody";
+  public static final String REQUEST_FINGERPRINT = "reqHash";
+  public static final String CREATED_AT = "createdAt";
+  public static final String PROCESSED_AT = "processedAt";
+  public static final String UPDATED_AT = "updatedAt";
+  public static final String STATUS = "status";
+  public static final String RETRY_COUNT = "retryCount";
+  public static final String RESPONSE_STATUS = "respStatus";
+  public static final String RESPONSE_HEADERS = "respHeaders";
+  public static final String RESPONSE_BODY = "respBody";
+  public static final String RESPONSE_BODY_ENCODING = "respBodyEnc";
+  public static final String DUPLICATE_COUNT = "dupCount";
+  public static final String LEASE_OWNER = "leaseOwner";
+  public static final String LEASE_EXPIRES_AT = "leaseExpiry";
+
+  private static byte[] encodeBody(PayloadEncoder payloadEncoder, String body) {
+    return null == body ? null : payloadEncoder.encode(body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decodeBody(PayloadEncoder payloadEncoder, Object encoded) {
+    return null == encoded ? null
+        : new String(payloadEncoder.decode(encoded), StandardCharsets.UTF_8);
+  }
+
+  private static Long toMillis(Date date) {
+    return null == date ? null : date.getTime();
+  }
+
+  private static Date toDate(Object millis) {
+    return null == millis ? null : new Date(((Number) millis).longValue());
+  }
+
+  private static int toInt(Object number) {
+    return ((Number) number).intValue();
+  }
+
+  /*
+    Headers are a map bin, records written before that hold the JSON string of the map
+   */
+  @SuppressWarnings("unchecked")
+  private static Map<String, String> toHeaders(Object headers) {
+    return headers instanceof String ? ResponseHeadersDeserializer.parse((String) headers)
+        : (Map<String, String>) headers;
+  }
+
+  private static RequestStatus statusOf(RequestEntity requestEntity) {
+    return null == requestEntity.getProcessed()
+        ? RequestStatus.PROCESSING : requestEntity.getProcessed();
+  }
+
+  /*
+    A null value would delete the bin, which is what partial updates want and full writes skip
+   */
+  private static Bin bin(String name, Object value) {
+    return null == value ? Bin.asNull(name) : new Bin(name, value);
+  }
+
+  private static void addIfPresent(List<Bin> bins, String name, Object value) {
+    if (null != value) {
+      bins.add(new Bin(name, value));
+    }
+  }
+
+  public static Bin[] toBins(PayloadEncoder payloadEncoder, RequestEntity requestEntity) {
+    final var bins = new ArrayList<Bin>();
+    addIfPresent(bins, TRACE_ID, requestEntity.getTraceId());
+    addIfPresent(bins, REQUEST_BODY, encodeBody(payloadEncoder, requestEntity.getRequestBody()));
+    addIfPresent(bins, REQUEST_FINGERPRINT, requestEntity.getRequestFingerprint());
+    addIfPresent(bins, CREATED_AT, toMillis(requestEntity.getCreatedAt()));
+    addIfPresent(bins, PROCESSED_AT, toMillis(requestEntity.getProcessedAt()));
+    addIfPresent(bins, UPDATED_AT, toMillis(requestEntity.getUpdatedAt()));
+    addIfPresent(bins, LEASE_OWNER, requestEntity.getLeaseOwner());
+    addIfPresent(bins, LEASE_EXPIRES_AT, toMillis(requestEntity.getLeaseExpiresAt()));
+    addIfPresent(bins, RESPONSE_HEADERS, requestEntity.getResponseHeaders());
+    addIfPresent(bins, RESPONSE_BODY, encodeBody(payloadEncoder, requestEntity.getResponseBody()));
+    addIfPresent(bins, RESPONSE_BODY_ENCODING, requestEntity.getResponseBodyEncoding());
+    bins.add(new Bin(STATUS, statusOf(requestEntity).name()));
+    bins.add(new Bin(RETRY_COUNT, requestEntity.getRetryCount()));
+    bins.add(new Bin(RESPONSE_STATUS, requestEntity.getResponseStatus()));
+    bins.add(new Bin(DUPLICATE_COUNT, requestEntity.getDuplicateRequestCount()));
+    return bins.toArray(Bin[]::new);
+  }
+
+  /**
+   * Writes the response and terminal status, as {@link RequestEntity#loadResponseFromMessage}
+   * would, touching nothing else
+   */
+  public static Operation[] toCompletion(PayloadEncoder payloadEncoder,
+      RequestEntity requestEntity) {
+    return new Operation[]{
+        Operation.put(new Bin(RESPONSE_STATUS, requestEntity.getResponseStatus())),
+        Operation.put(bin(RESPONSE_HEADERS, requestEntity.getResponseHeaders())),
+        Operation.put(
+            bin(RESPONSE_BODY, encodeBody(payloadEncoder, requestEntity.getResponseBody()))),
+        Operation.put(bin(RESPONSE_BODY_ENCODING, requestEntity.getResponseBodyEncoding())),
+        Operation.put(new Bin(STATUS, statusOf(requestEntity).name())),
+        Operation.put(bin(PROCESSED_AT, toMillis(requestEntity.getProcessedAt()))),
+        Operation.put(new Bin(UPDATED_AT, System.currentTimeMillis()))
+    };
+  }
+
+  public static Operation[] toDuplicateIncrement(int count) {
+    return new Operation[]{
+        Operation.add(new Bin(DUPLICATE_COUNT, count)),
+        Operation.put(new Bin(UPDATED_AT, System.currentTimeMillis()))
+    };
+  }
+
+  private static <T> void setIfPresent(Record storedRecord, String name,
+      Function<Object, T> decode, Consumer<T> setter) {
+    final var value = storedRecord.getValue(name);
+    if (null != value) {
+      setter.accept(decode.apply(value));
+    }
+  }
+
+  public static RequestEntity toEntity(PayloadEncoder payloadEncoder, String requestId,
+      Record storedRecord) {
+    return toEntity(payloadEncoder, requestId, storedRecord, new RequestEntity());
+  }
+
+  /**
+   * The record's bins laid over {@code written}, fields without a bin keep its values. Records
+   * written in the single bin layout pass what their value decodes to, so that they read as
+   * written, with the bins changed since in this layout on top.
+   */
+  public static RequestEntity toEntity(PayloadEncoder payloadEncoder, String requestId,
+      Record storedRecord, RequestEntity written) {
+    final var requestEntity = written.toBuilder()
+        .requestId(requestId)
+        .generation(storedRecord.generation)
+        .build();
+    setIfPresent(storedRecord, TRACE_ID, String.class::cast, requestEntity::setTraceId);
+    setIfPresent(storedRecord, REQUEST_BODY, encoded -> decodeBody(payloadEncoder, encoded),
+        requestEntity::setRequestBody);
+    setIfPresent(storedRecord, REQUEST_FINGERPRINT, String.class::cast,
+        requestEntity::setRequestFingerprint);
+    setIfPresent(storedRecord, CREATED_AT, RequestRecordUtils::toDate,
+        requestEntity::setCreatedAt);
+    setIfPresent(storedRecord, PROCESSED_AT, RequestRecordUtils::toDate,
+        requestEntity::setProcessedAt);
+    setIfPresent(storedRecord, UPDATED_AT, RequestRecordUtils::toDate,
+        requestEntity::setUpdatedAt);
+    setIfPresent(storedRecord, STATUS, status -> RequestStatus.valueOf((String) status),
+        requestEntity::setProcessed);
+    setIfPresent(storedRecord, RETRY_COUNT, RequestRecordUtils::toInt,
+        requestEntity::setRetryCount);
+    setIfPresent(storedRecord, RESPONSE_STATUS, RequestRecordUtils::toInt,
+        requestEntity::setResponseStatus);
+    setIfPresent(storedRecord, RESPONSE_HEADERS, RequestRecordUtils::toHeaders,
+        requestEntity::setResponseHeaders);
+    setIfPresent(storedRecord, RESPONSE_BODY, encoded -> decodeBody(payloadEncoder, encoded),
+        requestEntity::setResponseBody);
+    setIfPresent(storedRecord, RESPONSE_BODY_ENCODING, String.class::cast,
+        requestEntity::setResponseBodyEncoding);
+    setIfPresent(storedRecord, DUPLICATE_COUNT, RequestRecordUtils::toInt,
+        requestEntity::setDuplicateRequestCount);
+    setIfPresent(storedRecord, LEASE_OWNER, String.class::cast, requestEntity::setLeaseOwner);
+    setIfPresent(storedRecord, LEASE_EXPIRES_AT, RequestRecordUtils::toDate,
+        requestEntity::setLeaseExpiresAt);
+    return requestEntity;
+  }
+}
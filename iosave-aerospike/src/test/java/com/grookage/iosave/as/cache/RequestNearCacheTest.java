@@ -0,0 +1,111 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.cache;
+
+import com.grookage.iosave.as.config.NearCacheConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import java.util.Date;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestNearCacheTest {
+
+  private static final int TTL = 1;
+
+  private final RequestNearCache nearCache = new RequestNearCache(NearCacheConfig.builder()
+      .enabled(true)
+      .ttl(60)
+      .build(), TTL);
+
+  private static RequestEntity entity(String requestId, RequestStatus processed,
+      long updatedMillisAgo) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .processed(processed)
+        .responseStatus(200)
+        .updatedAt(new Date(System.currentTimeMillis() - updatedMillisAgo))
+        .build();
+  }
+
+  @Test
+  public void testOnlyProcessedEntitiesAreCached() {
+    nearCache.offer(entity("processed", RequestStatus.PROCESSED, 0));
+    nearCache.offer(entity("processing", RequestStatus.PROCESSING, 0));
+    nearCache.offer(entity("failed", RequestStatus.FAILED, 0));
+    Assert.assertTrue(nearCache.get("processed").isPresent());
+    Assert.assertTrue(nearCache.get("processing").isEmpty());
+    Assert.assertTrue(nearCache.get("failed").isEmpty());
+    Assert.assertEquals(1, nearCache.size());
+  }
+
+  /*
+    Cached for what is left of the record's ttl, counting from its last update, not a whole ttl
+    from the offer
+   */
+  @Test
+  public void testEntryExpiresWithItsRecord() throws InterruptedException {
+    nearCache.offer(entity("aged", RequestStatus.PROCESSED, 800));
+    nearCache.offer(entity("fresh", RequestStatus.PROCESSED, 0));
+    Assert.assertTrue(nearCache.get("aged").isPresent());
+    Thread.sleep(400);
+    Assert.assertTrue(nearCache.get("aged").isEmpty());
+    Assert.assertTrue(nearCache.get("fresh").isPresent());
+  }
+
+  @Test
+  public void testEntryOlderThanItsRecordIsNeverReturned() {
+    nearCache.offer(entity("expired", RequestStatus.PROCESSED, 2_000));
+    Assert.assertTrue(nearCache.get("expired").isEmpty());
+  }
+
+  /*
+    The store ttl, 1 second, wins over the configured 60 above. Without one the configured ttl
+    is used.
+   */
+  @Test
+  public void testConfiguredTtlIsUsedWithoutAStoreTtl() throws InterruptedException {
+    final var defaulted = new RequestNearCache(NearCacheConfig.builder()
+        .enabled(true)
+        .ttl(TTL)
+        .build(), 0);
+    defaulted.offer(entity("defaulted", RequestStatus.PROCESSED, 800));
+    Assert.assertTrue(defaulted.get("defaulted").isPresent());
+    Thread.sleep(400);
+    Assert.assertTrue(defaulted.get("defaulted").isEmpty());
+  }
+
+  @Test
+  public void testOfferOfANonProcessedEntityInvalidatesTheId() {
+    nearCache.offer(entity("reprocessed", RequestStatus.PROCESSED, 0));
+    nearCache.offer(entity("reprocessed", RequestStatus.PROCESSING, 0));
+    Assert.assertTrue(nearCache.get("reprocessed").isEmpty());
+    nearCache.offer(entity("refailed", RequestStatus.PROCESSED, 0));
+    nearCache.offer(entity("refailed", RequestStatus.FAILED, 0));
+    Assert.assertTrue(nearCache.get("refailed").isEmpty());
+  }
+
+  @Test
+  public void testCachedEntitiesAreCopies() {
+    final var offered = entity("copied", RequestStatus.PROCESSED, 0);
+    nearCache.offer(offered);
+    offered.setResponseStatus(500);
+    final var cached = nearCache.get("copied").orElseThrow();
+    Assert.assertEquals(200, cached.getResponseStatus());
+    cached.setResponseStatus(500);
+    Assert.assertEquals(200, nearCache.get("copied").orElseThrow().getResponseStatus());
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GzipCodecTest {
+
+  private final GzipCodec codec = new GzipCodec();
+
+  @Test
+  public void testRoundTripAfterHeadroom() {
+    final var raw = "{\"status\":200,\"body\":\"ok\"}".repeat(50).getBytes(StandardCharsets.UTF_8);
+    final var encoded = codec.encode(raw, 1);
+    Assert.assertArrayEquals(raw, codec.decode(encoded, 1, encoded.length - 1));
+  }
+
+  @Test
+  public void testPayloadAtTheCapIsDecoded() {
+    final var encoded = codec.encode(new byte[PayloadCodec.MAX_DECODED_BYTES], 0);
+    Assert.assertEquals(PayloadCodec.MAX_DECODED_BYTES,
+        codec.decode(encoded, 0, encoded.length).length);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testOversizedPayloadIsRefused() {
+    final var encoded = codec.encode(new byte[PayloadCodec.MAX_DECODED_BYTES + 1], 0);
+    codec.decode(encoded, 0, encoded.length);
+  }
+}
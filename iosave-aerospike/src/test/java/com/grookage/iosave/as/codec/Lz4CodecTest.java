@@ -0,0 +1,54 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Lz4CodecTest {
+
+  private final Lz4Codec codec = new Lz4Codec();
+
+  @Test
+  public void testRoundTripAfterHeadroom() {
+    final var raw = "{\"status\":200,\"body\":\"ok\"}".repeat(50).getBytes(StandardCharsets.UTF_8);
+    final var encoded = codec.encode(raw, 1);
+    Assert.assertArrayEquals(raw, codec.decode(encoded, 1, encoded.length - 1));
+  }
+
+  /*
+    A little endian prefix of 1GiB, refused before anything that large is allocated
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testOversizedLengthPrefixIsRefused() {
+    final var encoded = new byte[]{0, 0, 0, 0x40, 1, 2, 3, 4};
+    codec.decode(encoded, 0, encoded.length);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTruncatedLengthPrefixIsRefused() {
+    codec.decode(new byte[]{1, 2}, 0, 2);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testMalformedBlockIsRefused() {
+    final var encoded = codec.encode("payload".repeat(100).getBytes(StandardCharsets.UTF_8), 0);
+    final var corrupt = Arrays.copyOf(encoded, encoded.length / 2);
+    codec.decode(corrupt, 0, corrupt.length);
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.as.repository;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grookage.iosave.as.client.AerospikeClient;
+import com.grookage.iosave.as.codec.PayloadEncoder;
+import com.grookage.iosave.as.config.RecordLayout;
+import com.grookage.iosave.as.utils.RequestRecordUtils;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+public class ASRequestRepositoryTest {
+
+  private final AerospikeClient aerospikeClient = Mockito.mock(AerospikeClient.class);
+
+  private static void assertStoreError(Runnable call, int resultCode) {
+    try {
+      call.run();
+      Assert.fail("A store failure must not pass for success");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.STORE_ERROR, e.getErrorCode());
+      Assert.assertEquals(resultCode, ((AerospikeException) e.getCause()).getResultCode());
+    }
+  }
+
+  @Test
+  public void testReadFailureIsNotNotFound() {
+    Mockito.when(aerospikeClient.getValueRecord("read"))
+        .thenThrow(new AerospikeException(ResultCode.TIMEOUT));
+    final var repository = new ASRequestRepository(aerospikeClient);
+    assertStoreError(() -> repository.findByMessageId("read"), ResultCode.TIMEOUT);
+  }
+
+  @Test
+  public void testWriteFailureIsSurfaced() {
+    Mockito.doThrow(new AerospikeException(ResultCode.DEVICE_OVERLOAD))
+        .when(aerospikeClient).save(ArgumentMatchers.eq("write"), ArgumentMatchers.any());
+    final var repository = new ASRequestRepository(aerospikeClient);
+    assertStoreError(() -> repository.save(RequestEntity.builder().requestId("write").build()),
+        ResultCode.DEVICE_OVERLOAD);
+  }
+
+  @Test
+  public void testIncrementFailureIsSurfaced() {
+    Mockito.when(aerospikeClient.operate(ArgumentMatchers.eq("increment"),
+            ArgumentMatchers.eq(RecordExistsAction.UPDATE_ONLY), ArgumentMatchers.any()))
+        .thenThrow(new AerospikeException(ResultCode.TIMEOUT));
+    Mockito.when(aerospikeClient.operate(ArgumentMatchers.eq("expired"),
+            ArgumentMatchers.eq(RecordExistsAction.UPDATE_ONLY), ArgumentMatchers.any()))
+        .thenThrow(new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR));
+    final var repository = ASRequestRepository.builder()
+        .aerospikeClient(aerospikeClient)
+        .recordLayout(RecordLayout.MULTI_BIN)
+        .build();
+    assertStoreError(() -> repository.incrementDuplicateRequestCount("increment", 1),
+        ResultCode.TIMEOUT);
+    repository.incrementDuplicateRequestCount("expired", 1);
+  }
+
+  /*
+    A client over a mocked aerospike client, whose records are the bins given
+   */
+  private static AerospikeClient storing(IAerospikeClient client) {
+    Mockito.when(client.getWritePolicyDefault()).thenReturn(new WritePolicy());
+    return AerospikeClient.builder()
+        .namespace("test")
+        .storeType("requests")
+        .client(client)
+        .mapper(new ObjectMapper())
+        .build();
+  }
+
+  /*
+    The value bin the single bin layout writes for the entity
+   */
+  private static Object singleBinValue(RequestEntity requestEntity) {
+    final var client = Mockito.mock(IAerospikeClient.class);
+    storing(client).save(requestEntity.getRequestId(), requestEntity);
+    final var bin = ArgumentCaptor.forClass(Bin.class);
+    Mockito.verify(client).put(ArgumentMatchers.any(), ArgumentMatchers.any(), bin.capture());
+    return bin.getValue().value.getObject();
+  }
+
+  private static Optional<RequestEntity> readMultiBin(Map<String, Object> bins) {
+    final var client = Mockito.mock(IAerospikeClient.class);
+    final var aerospikeClient = storing(client);
+    Mockito.when(client.get(ArgumentMatchers.isNull(), ArgumentMatchers.any(Key.class)))
+        .thenReturn(new Record(bins, 3, 0));
+    return ASRequestRepository.builder()
+        .aerospikeClient(aerospikeClient)
+        .recordLayout(RecordLayout.MULTI_BIN)
+        .build()
+        .findByMessageId("legacy");
+  }
+
+  private static RequestEntity legacy() {
+    return RequestEntity.builder()
+        .requestId("legacy")
+        .traceId("trace")
+        .requestBody("{\"amount\":100}")
+        .requestFingerprint("fingerprint")
+        .processed(RequestStatus.PROCESSING)
+        .retryCount(1)
+        .createdAt(new Date(1_000L))
+        .build();
+  }
+
+  @Test
+  public void testMultiBinReadsSingleBinRecords() {
+    final var bins = new HashMap<String, Object>();
+    bins.put("default", singleBinValue(legacy()));
+    final var read = readMultiBin(bins).orElseThrow();
+    Assert.assertEquals(RequestStatus.PROCESSING, read.getProcessed());
+    Assert.assertEquals("{\"amount\":100}", read.getRequestBody());
+    Assert.assertEquals("fingerprint", read.getRequestFingerprint());
+    Assert.assertEquals(1, read.getRetryCount());
+    Assert.assertEquals(new Date(1_000L), read.getCreatedAt());
+    Assert.assertEquals(3, read.getGeneration());
+  }
+
+  @Test
+  public void testMultiBinLaysItsBinsOverSingleBinRecords() {
+    final var bins = new HashMap<String, Object>();
+    bins.put("default", singleBinValue(legacy()));
+    bins.put(RequestRecordUtils.STATUS, RequestStatus.PROCESSED.name());
+    bins.put(RequestRecordUtils.RESPONSE_STATUS, 201L);
+    bins.put(RequestRecordUtils.DUPLICATE_COUNT, 2L);
+    final var read = readMultiBin(bins).orElseThrow();
+    Assert.assertEquals(RequestStatus.PROCESSED, read.getProcessed());
+    Assert.assertEquals(201, read.getResponseStatus());
+    Assert.assertEquals(2, read.getDuplicateRequestCount());
+    Assert.assertEquals("{\"amount\":100}", read.getRequestBody());
+    Assert.assertEquals(1, read.getRetryCount());
+  }
+
+  @Test
+  public void testMultiBinRecordsReadAsWritten() {
+    final var written = legacy();
+    written.setProcessed(RequestStatus.FAILED);
+    written.setResponseStatus(500);
+    final var bins = new HashMap<String, Object>();
+    for (final var bin : RequestRecordUtils.toBins(PayloadEncoder.defaultEncoder(), written)) {
+      bins.put(bin.name, bin.value.getObject());
+    }
+    final var read = readMultiBin(bins).orElseThrow();
+    Assert.assertEquals(RequestStatus.FAILED, read.getProcessed());
+    Assert.assertEquals(500, read.getResponseStatus());
+    Assert.assertEquals("{\"amount\":100}", read.getRequestBody());
+    Assert.assertNull(read.getResponseBody());
+  }
+}
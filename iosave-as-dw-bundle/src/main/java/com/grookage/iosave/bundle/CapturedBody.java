@@ -0,0 +1,160 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.ws.rs.container.ContainerRequestContext;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.glassfish.jersey.server.ContainerException;
+
+/*
+  What the request filter kept of a request body
+ */
+@Slf4j
+@Getter
+@AllArgsConstructor
+class CapturedBody {
+
+  static final CapturedBody NONE = new CapturedBody(null, null, null);
+
+  private static final int MIN_CAPTURE_BUFFER = 8 * 1024;
+  /*
+    Content-Length is the client's to say, buffers are never presized past this from it
+   */
+  private static final int MAX_PRESIZED_BUFFER = 64 * 1024;
+  /*
+    Bytes of a body read whole for its fingerprint that are held in memory, beyond the ones kept,
+    before the rest is spooled to a file
+   */
+  private static final int MAX_HELD_BYTES = 64 * 1024;
+
+  private final String body;
+  private final String fingerprint;
+  /* The file the rest of a body read for its fingerprint was spooled to, null if there is none */
+  private final Closeable spool;
+
+  @SneakyThrows
+  private static MessageDigest digest(boolean fingerprint) {
+    return fingerprint ? MessageDigest.getInstance("SHA-256") : null;
+  }
+
+  private static String fingerprintOf(MessageDigest digest) {
+    return null == digest ? null : Base64.getEncoder().encodeToString(digest.digest());
+  }
+
+  /*
+    Copies the rest of the stream to a file, hashing it on the way, and reads it back from the
+    file, which is deleted once the stream is closed
+   */
+  private static InputStream spool(InputStream in, MessageDigest digest) throws IOException {
+    final var path = Files.createTempFile("iosave-body-", ".tmp");
+    try {
+      try (var out = Files.newOutputStream(path)) {
+        final var chunk = new byte[MIN_CAPTURE_BUFFER];
+        for (var read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+          digest.update(chunk, 0, read);
+          out.write(chunk, 0, read);
+        }
+      }
+      return Files.newInputStream(path, StandardOpenOption.DELETE_ON_CLOSE);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  /*
+    Reads the start of the body into a buffer, hashing it as it arrives, and hands the resource that
+    buffer followed by the rest of the body. Without a fingerprint nothing past maxCapturedBytes is
+    read ahead. With one the whole body has to be read before the resource sees it: what doesn't
+    fit in memory is hashed as it streams to a spool file, and the resource reads it from there.
+   */
+  static CapturedBody capture(ContainerRequestContext request, int maxCapturedBytes,
+      boolean fingerprint) {
+    final var in = request.getEntityStream();
+    final var declaredLength = request.getLength();
+    final var keptBytes = Math.max(0, maxCapturedBytes);
+    final var heldBytes = fingerprint ? Math.max(keptBytes, MAX_HELD_BYTES) : keptBytes;
+    final var digest = digest(fingerprint);
+    if (null == in || 0 == declaredLength || 0 == heldBytes) {
+      return new CapturedBody(null, fingerprintOf(digest), null);
+    }
+    var buffer = new byte[Math.min(heldBytes, declaredLength > 0
+        ? Math.min(declaredLength, MAX_PRESIZED_BUFFER) : MIN_CAPTURE_BUFFER)];
+    var length = 0;
+    var ended = false;
+    InputStream rest = in;
+    try {
+      while (length < heldBytes) {
+        if (length == buffer.length) {
+          //Content-Length was absent, understated or past the presized buffer, make sure there is
+          //more before growing
+          final var next = in.read();
+          if (next < 0) {
+            ended = true;
+            break;
+          }
+          buffer = Arrays.copyOf(buffer,
+              (int) Math.min(heldBytes, Math.max(2L * buffer.length, MIN_CAPTURE_BUFFER)));
+          buffer[length] = (byte) next;
+          if (null != digest) {
+            digest.update(buffer, length, 1);
+          }
+          length++;
+          continue;
+        }
+        final var read = in.read(buffer, length, buffer.length - length);
+        if (read < 0) {
+          ended = true;
+          break;
+        }
+        if (null != digest) {
+          digest.update(buffer, length, read);
+        }
+        length += read;
+      }
+      if (null != digest && !ended) {
+        rest = spool(in, digest);
+      }
+    } catch (IOException ex) {
+      throw new ContainerException(ex);
+    }
+    request.setEntityStream(
+        new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), rest));
+    final var bodyLength = Math.min(length, keptBytes);
+    if (bodyLength < length || !ended) {
+      log.debug("Request body captured up to the first {} bytes", maxCapturedBytes);
+    }
+    return new CapturedBody(
+        0 == bodyLength ? null : new String(buffer, 0, bodyLength, StandardCharsets.UTF_8),
+        fingerprintOf(digest),
+        rest == in ? null : rest);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/*
+  Writes through to the wire, keeping a copy of up to maxCapturedBytes of what was written. Past
+  that the copy is dropped, a partial response is of no use for replay.
+ */
+class CapturingOutputStream extends FilterOutputStream {
+
+  private static final int MIN_CAPTURE_BUFFER = 8 * 1024;
+
+  private final int maxCapturedBytes;
+  private byte[] buffer;
+  private int length;
+  private boolean overflowed;
+
+  CapturingOutputStream(OutputStream out, int maxCapturedBytes) {
+    super(out);
+    this.maxCapturedBytes = Math.max(0, maxCapturedBytes);
+    this.buffer = new byte[Math.min(MIN_CAPTURE_BUFFER, this.maxCapturedBytes)];
+  }
+
+  private void capture(byte[] bytes, int offset, int count) {
+    if (overflowed) {
+      return;
+    }
+    if (count > maxCapturedBytes - length) {
+      overflowed = true;
+      buffer = null;
+      return;
+    }
+    if (count > buffer.length - length) {
+      buffer = Arrays.copyOf(buffer, (int) Math.min(maxCapturedBytes,
+          Math.max(2L * buffer.length, (long) length + count)));
+    }
+    System.arraycopy(bytes, offset, buffer, length, count);
+    length += count;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+    capture(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int count) throws IOException {
+    out.write(bytes, offset, count);
+    capture(bytes, offset, count);
+  }
+
+  boolean isOverflowed() {
+    return overflowed;
+  }
+
+  /*
+    What was written, null if it was more than could be captured
+   */
+  byte[] captured() {
+    return overflowed ? null : Arrays.copyOf(buffer, length);
+  }
+}
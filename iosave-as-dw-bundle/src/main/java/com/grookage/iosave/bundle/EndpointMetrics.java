@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.grookage.iosave.core.exception.IOSaveException;
+import lombok.Getter;
+
+/*
+  The metrics of an @Inbound endpoint, under iosave.requests.<Resource>.<method>. Every request
+  ends up on one of the outcome meters: new requests, duplicates replayed, duplicates of requests
+  in flight or of failed ones turned away, duplicates with a different body, and errors.
+ */
+@Getter
+class EndpointMetrics {
+
+  private final Timer preHandle;
+  private final Timer postHandle;
+  private final Meter accepted;
+  private final Meter replayed;
+  private final Meter inFlight;
+  private final Meter rejected;
+  private final Meter mismatched;
+  private final Meter errors;
+
+  EndpointMetrics(MetricRegistry metrics, String endpoint) {
+    final var prefix = MetricRegistry.name("iosave.requests", endpoint);
+    this.preHandle = metrics.timer(MetricRegistry.name(prefix, "preHandle"));
+    this.postHandle = metrics.timer(MetricRegistry.name(prefix, "postHandle"));
+    this.accepted = metrics.meter(MetricRegistry.name(prefix, "new"));
+    this.replayed = metrics.meter(MetricRegistry.name(prefix, "replayed"));
+    this.inFlight = metrics.meter(MetricRegistry.name(prefix, "inFlight"));
+    this.rejected = metrics.meter(MetricRegistry.name(prefix, "rejected"));
+    this.mismatched = metrics.meter(MetricRegistry.name(prefix, "mismatched"));
+    this.errors = metrics.meter(MetricRegistry.name(prefix, "errors"));
+  }
+
+  void markTurnedAway(IOSaveException.ErrorCode errorCode) {
+    switch (errorCode) {
+      case MESSAGE_UNPROCESSED:
+        inFlight.mark();
+        break;
+      case DUPLICATE_MESSAGE:
+        rejected.mark();
+        break;
+      case REQUEST_FINGERPRINT_MISMATCH:
+        mismatched.mark();
+        break;
+      default:
+        errors.mark();
+    }
+  }
+}
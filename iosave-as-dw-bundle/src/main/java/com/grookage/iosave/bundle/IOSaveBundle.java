@@ -15,38 +15,250 @@
  */
 package com.grookage.iosave.bundle;
 
+import com.aerospike.client.IAerospikeClient;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.health.HealthCheck;
+import com.grookage.iosave.as.cache.RequestNearCache;
 import com.grookage.iosave.as.client.AerospikeClient;
+import com.grookage.iosave.as.codec.CodecType;
+import com.grookage.iosave.as.codec.PayloadEncoder;
+import com.grookage.iosave.as.codec.PayloadListener;
 import com.grookage.iosave.as.config.IOSaveAerospikeConfig;
 import com.grookage.iosave.as.repository.ASRequestRepository;
 import com.grookage.iosave.as.utils.AerospikeClientUtils;
+import com.grookage.iosave.core.config.RequestReceiverConfig;
+import com.grookage.iosave.core.config.WriteBehindConfig;
+import com.grookage.iosave.core.repository.InMemoryRequestRepository;
+import com.grookage.iosave.core.repository.RequestRepository;
+import com.grookage.iosave.core.repository.WriteBehindListener;
+import com.grookage.iosave.core.repository.WriteBehindRequestRepository;
+import com.grookage.iosave.core.services.RequestReceiverService;
 import io.dropwizard.Configuration;
 import io.dropwizard.ConfiguredBundle;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Environment;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public abstract class IOSaveBundle<T extends Configuration> implements ConfiguredBundle<T> {
 
+  /*
+    Available once the bundle has run, for services deduplicating outside of the request filter,
+    through a RequestReceiverService of their own
+   */
+  @Getter
+  private RequestRepository requestRepository;
+  /*
+    The service the request filter deduplicates with, for handlers renewing their lease
+   */
+  @Getter
+  private RequestReceiverService requestReceiverService;
+
   public abstract IOSaveAerospikeConfig getConfig(T configuration);
 
   public abstract void preBundle(T configuration);
 
-  @Override
-  public void run(T configuration, Environment environment) {
+  /**
+   * The repository iosave stores requests in, aerospike unless overridden. Override to return an
+   * {@link InMemoryRequestRepository} where a per node idempotency window is enough, or any other
+   * {@link RequestRepository}; {@code getConfig} isn't consulted then.
+   */
+  protected RequestRepository provideRepository(T configuration, Environment environment) {
     final var aerospikeConfig = getConfig(configuration);
-    final var iAeroClient = AerospikeClientUtils.provideIAerospikeClient(aerospikeConfig);
+    final var eventLoops = AerospikeClientUtils.provideEventLoops(aerospikeConfig);
+    final var iAeroClient = AerospikeClientUtils.provideIAerospikeClient(aerospikeConfig,
+        eventLoops);
+    if (null != eventLoops) {
+      environment.lifecycle().manage(new Managed() {
+        @Override
+        public void start() {
+          //Started with the client
+        }
+
+        @Override
+        public void stop() {
+          eventLoops.close();
+        }
+      });
+    }
+    if (aerospikeConfig.getWarmupConnectionsPerNode() > 0) {
+      environment.lifecycle().manage(new Managed() {
+        @Override
+        public void start() {
+          AerospikeClientUtils.warmup(iAeroClient, aerospikeConfig);
+        }
+
+        @Override
+        public void stop() {
+          //Closed with the client
+        }
+      });
+    }
+    registerConnectionGauges(iAeroClient, environment);
     final var aeroClient = AerospikeClient.builder()
         .client(iAeroClient)
         .namespace(aerospikeConfig.getNamespace())
         .storeType(aerospikeConfig.getDefaultSet())
         .ttl(aerospikeConfig.getTtl())
         .mapper(environment.getObjectMapper())
+        .payloadEncoder(new PayloadEncoder(aerospikeConfig.getCodec().getType(),
+            aerospikeConfig.getCodec().getThreshold(), payloadListener(environment)))
+        .eventLoops(eventLoops)
         .build();
-    final var messageRepository = new ASRequestRepository(aeroClient);
-    environment.jersey().register(InboundMessageFilter.builder()
-        .messageRepository(messageRepository)
-        .mapper(environment.getObjectMapper())
+    final var repositoryBuilder = ASRequestRepository.builder()
+        .aerospikeClient(aeroClient)
+        .recordLayout(aerospikeConfig.getRecordLayout());
+    if (!aerospikeConfig.getNearCache().isEnabled()) {
+      return repositoryBuilder.build();
+    }
+    final var nearCache = new RequestNearCache(aerospikeConfig.getNearCache(),
+        aerospikeConfig.getTtl());
+    final var metrics = environment.metrics();
+    metrics.register("iosave.nearcache.hits", (Gauge<Long>) () -> nearCache.stats().hitCount());
+    metrics.register("iosave.nearcache.misses",
+        (Gauge<Long>) () -> nearCache.stats().missCount());
+    metrics.register("iosave.nearcache.hitRate",
+        (Gauge<Double>) () -> nearCache.stats().hitRate());
+    metrics.register("iosave.nearcache.size", (Gauge<Long>) nearCache::size);
+    return repositoryBuilder
+        .nearCache(nearCache)
+        .build();
+  }
+
+  /*
+    Connections of the blocking client across all nodes, busy and idle in the pools
+   */
+  private static void registerConnectionGauges(IAerospikeClient client, Environment environment) {
+    final var metrics = environment.metrics();
+    metrics.register("iosave.aerospike.connections.inUse", (Gauge<Integer>) () ->
+        Arrays.stream(client.getNodes()).mapToInt(node -> node.getConnectionStats().inUse).sum());
+    metrics.register("iosave.aerospike.connections.inPool", (Gauge<Integer>) () ->
+        Arrays.stream(client.getNodes()).mapToInt(node -> node.getConnectionStats().inPool).sum());
+  }
+
+  /*
+    Sizes of the payloads stored, before and after encoding, and the ratio of the two over all of
+    them
+   */
+  private static PayloadListener payloadListener(Environment environment) {
+    final var metrics = environment.metrics();
+    final var serializedBytes = metrics.histogram("iosave.payload.serializedBytes");
+    final var storedBytes = metrics.histogram("iosave.payload.storedBytes");
+    final var serializedTotal = new LongAdder();
+    final var storedTotal = new LongAdder();
+    metrics.register("iosave.payload.compressionRatio", (Gauge<Double>) () -> {
+      final var serialized = serializedTotal.sum();
+      return 0 == serialized ? 1.0 : (double) storedTotal.sum() / serialized;
+    });
+    return new PayloadListener() {
+      @Override
+      public void onEncode(CodecType codecType, int rawBytes, int encodedBytes) {
+        serializedBytes.update(rawBytes);
+        storedBytes.update(encodedBytes);
+        serializedTotal.add(rawBytes);
+        storedTotal.add(encodedBytes);
+      }
+    };
+  }
+
+  /**
+   * How incoming requests are deduplicated, the defaults unless overridden
+   */
+  protected RequestReceiverConfig getReceiverConfig(T configuration) {
+    return RequestReceiverConfig.builder().build();
+  }
+
+  private RequestRepository withWriteBehind(RequestRepository repository,
+      WriteBehindConfig writeBehindConfig, Environment environment) {
+    if (!writeBehindConfig.isEnabled()) {
+      return repository;
+    }
+    final var metrics = environment.metrics();
+    final var flushTimer = metrics.timer("iosave.writebehind.flush");
+    final var batchSizes = metrics.histogram("iosave.writebehind.batchSize");
+    final var failed = metrics.meter("iosave.writebehind.failed");
+    final var droppedToSync = metrics.meter("iosave.writebehind.droppedToSync");
+    final var rejected = metrics.meter("iosave.writebehind.rejected");
+    final var givenUp = metrics.meter("iosave.writebehind.givenUp");
+    final var writeBehindRepository = new WriteBehindRequestRepository(repository,
+        writeBehindConfig, new WriteBehindListener() {
+      @Override
+      public void onFlush(int batchSize, int failedCount, long elapsedNanos) {
+        flushTimer.update(elapsedNanos, TimeUnit.NANOSECONDS);
+        batchSizes.update(batchSize);
+        failed.mark(failedCount);
+      }
+
+      @Override
+      public void onDroppedToSync() {
+        droppedToSync.mark();
+      }
+
+      @Override
+      public void onRejected() {
+        rejected.mark();
+      }
+
+      @Override
+      public void onGivenUp(int count) {
+        givenUp.mark(count);
+      }
+    });
+    metrics.register("iosave.writebehind.queueDepth",
+        (Gauge<Integer>) writeBehindRepository::queueDepth);
+    environment.lifecycle().manage(new Managed() {
+      @Override
+      public void start() {
+        writeBehindRepository.start();
+      }
+
+      @Override
+      public void stop() throws Exception {
+        writeBehindRepository.stop();
+      }
+    });
+    return writeBehindRepository;
+  }
+
+  @Override
+  public void run(T configuration, Environment environment) {
+    final var receiverConfig = getReceiverConfig(configuration);
+    final var storeRepository = new MeteredRequestRepository(
+        provideRepository(configuration, environment), environment.metrics());
+    final var messageRepository = withWriteBehind(storeRepository,
+        receiverConfig.getWriteBehind(), environment);
+    this.requestRepository = messageRepository;
+    this.requestReceiverService = new RequestReceiverService(messageRepository, receiverConfig);
+    requestReceiverService.recentRequests().ifPresent(recentRequests -> {
+      environment.metrics().register("iosave.recentrequests.lookups",
+          (Gauge<Long>) recentRequests::lookups);
+      environment.metrics().register("iosave.recentrequests.skippedLookups",
+          (Gauge<Long>) recentRequests::skippedLookups);
+    });
+    requestReceiverService.hotRequests().ifPresent(hotRequests -> {
+      environment.metrics().register("iosave.hotrequests.localAnswers",
+          (Gauge<Long>) hotRequests::localAnswers);
+      environment.metrics().register("iosave.hotrequests.pendingIds",
+          (Gauge<Integer>) hotRequests::pendingIds);
+      environment.lifecycle().manage(new Managed() {
+        @Override
+        public void start() {
+          //Flushing starts with the service
+        }
+
+        @Override
+        public void stop() throws Exception {
+          hotRequests.stop();
+        }
+      });
+    });
+    environment.jersey().register(InboundFeature.builder()
+        .requestReceiverService(requestReceiverService)
+        .metricRegistry(environment.metrics())
         .build());
     environment.healthChecks().register("iosave-as-health", new HealthCheck() {
       @Override
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.utils.RequestManager;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
+import lombok.experimental.UtilityClass;
+
+/**
+ * The iosave state of a request, kept on the request itself so it follows the request across
+ * threads. Async resources, those taking an {@link AsyncResponse} or returning a
+ * {@link CompletionStage}, read it from here, or carry it over to their executors with
+ * {@link #snapshot(ContainerRequestContext)}. {@link RequestManager} only holds it for the thread
+ * invoking a synchronous resource.
+ */
+@UtilityClass
+public class IOSaveRequestContext {
+
+  public static final String MESSAGE_PROPERTY = "iosave.message";
+  public static final String TRACE_ID_PROPERTY = "iosave.traceId";
+
+  /**
+   * The request being handled, null if iosave turned it away or isn't deduplicating it
+   */
+  public static RequestEntity getMessage(ContainerRequestContext requestContext) {
+    return (RequestEntity) requestContext.getProperty(MESSAGE_PROPERTY);
+  }
+
+  public static String getTraceId(ContainerRequestContext requestContext) {
+    return (String) requestContext.getProperty(TRACE_ID_PROPERTY);
+  }
+
+  /**
+   * The request's state, to be attached to the threads an async resource hands work to
+   */
+  public static RequestManager.Snapshot snapshot(ContainerRequestContext requestContext) {
+    return RequestManager.snapshot(getMessage(requestContext), getTraceId(requestContext));
+  }
+
+  /*
+    Whether the resource completes the response on another thread than the one invoking it
+   */
+  static boolean isAsync(Method resourceMethod) {
+    return CompletionStage.class.isAssignableFrom(resourceMethod.getReturnType())
+        || Arrays.stream(resourceMethod.getParameterAnnotations())
+        .flatMap(Arrays::stream)
+        .anyMatch(Suspended.class::isInstance);
+  }
+}
@@ -28,6 +28,43 @@ public @interface Inbound {
 
   boolean saveRequestBody() default false;
 
+  /**
+   * The most bytes of a request body that are captured when {@code saveRequestBody} is on, the
+   * rest of the body is streamed to the resource without being held. Defaults to 1MiB, aerospike's
+   * default record size limit.
+   */
+  int maxCapturedBytes() default 1 << 20;
+
+  /**
+   * Whether {@code saveRequestBody} keeps the body, a fingerprint of it, or both
+   */
+  RequestBodyMode requestBodyMode() default RequestBodyMode.BODY;
+
+  /**
+   * The most bytes of a response that are stored for replay. A larger response is stored without
+   * its body and is replayed without one.
+   */
+  int maxCapturedResponseBytes() default 1 << 20;
+
+  /**
+   * The response headers stored for replay, all of them when empty. Hop-by-hop headers,
+   * Content-Length, Date, Server, Set-Cookie, Expires, Age and the trace id header are never
+   * stored, Content-Type always is.
+   */
+  String[] storedResponseHeaders() default {};
+
+  /**
+   * Response headers that are never stored, on top of the ones that never are
+   */
+  String[] excludedResponseHeaders() default {};
+
+  /**
+   * How long a duplicate of a request in flight polls for the request to complete, to be answered
+   * with its response, before being turned away. 0 turns it away right away, the default of -1
+   * leaves it to the receiver config's {@code inFlightWait}.
+   */
+  long inFlightWaitMillis() default -1;
+
   boolean mandateRequestId() default false;
 
   String requestId() default "X-REQUEST-ID";
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import com.codahale.metrics.MetricRegistry;
+import com.grookage.iosave.core.config.RequestReceiverConfig;
+import com.grookage.iosave.core.repository.RequestRepository;
+import com.grookage.iosave.core.services.RequestReceiverService;
+import java.util.Optional;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Binds an {@link InboundMessageFilter} to every resource method that is {@link Inbound}, or
+ * belongs to a resource class that is, with what the annotation asks for resolved once, as the
+ * application starts. Other resource methods are not filtered at all.
+ */
+@Slf4j
+public class InboundFeature implements DynamicFeature {
+
+  private final RequestReceiverService requestReceiverService;
+  private final MetricRegistry metrics;
+
+  @Builder
+  public InboundFeature(
+      final RequestRepository messageRepository,
+      final RequestReceiverConfig receiverConfig,
+      final RequestReceiverService requestReceiverService,
+      final MetricRegistry metricRegistry
+  ) {
+    this.requestReceiverService = null != requestReceiverService ? requestReceiverService
+        : new RequestReceiverService(messageRepository,
+            null == receiverConfig ? RequestReceiverConfig.builder().build() : receiverConfig);
+    this.metrics = null == metricRegistry ? new MetricRegistry() : metricRegistry;
+  }
+
+  /**
+   * The filter of the resource method, empty if it isn't {@link Inbound}
+   */
+  public Optional<InboundMessageFilter> filterFor(ResourceInfo resourceInfo) {
+    return Optional.ofNullable(InboundPolicy.of(resourceInfo.getResourceMethod(),
+            resourceInfo.getResourceClass(), metrics))
+        .map(policy -> new InboundMessageFilter(requestReceiverService, policy));
+  }
+
+  @Override
+  public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+    filterFor(resourceInfo).ifPresent(filter -> {
+      log.debug("Deduplicating requests to {}", resourceInfo.getResourceMethod());
+      context.register(filter);
+    });
+  }
+}
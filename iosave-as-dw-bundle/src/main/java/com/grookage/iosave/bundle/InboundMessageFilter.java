@@ -15,26 +15,24 @@
  */
 package com.grookage.iosave.bundle;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.grookage.iosave.as.repository.ASRequestRepository;
+import com.grookage.iosave.core.config.RequestReceiverConfig;
 import com.grookage.iosave.core.entities.RequestEntity;
 import com.grookage.iosave.core.entities.RequestHeaders;
 import com.grookage.iosave.core.entities.RequestStatus;
 import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.repository.RequestRepository;
 import com.grookage.iosave.core.services.RequestReceiverService;
 import com.grookage.iosave.core.utils.RequestManager;
 import com.grookage.iosave.core.utils.RequestUtils;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.HashMap;
+import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.stream.Collectors;
-import javax.inject.Singleton;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.ContainerResponseContext;
@@ -42,213 +40,360 @@ import javax.ws.rs.container.ContainerResponseFilter;
 import javax.ws.rs.container.ResourceInfo;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
-import lombok.Builder;
-import lombok.Setter;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.glassfish.jersey.message.internal.ReaderWriter;
-import org.glassfish.jersey.server.ContainerException;
 import org.glassfish.jersey.server.internal.process.MappableException;
 
-@Singleton
+/**
+ * Deduplicates the requests to an {@link Inbound} resource method and records their responses.
+ * {@link InboundFeature} binds one to each such method, with what its annotation asks for.
+ */
 @Slf4j
-@Setter
-@Inbound
-public class InboundMessageFilter implements ContainerRequestFilter, ContainerResponseFilter {
+public class InboundMessageFilter implements ContainerRequestFilter, ContainerResponseFilter,
+    WriterInterceptor {
+
+  private static final String REPLAYED_PROPERTY = "iosave.replayed";
+  private static final String PENDING_MESSAGE_PROPERTY = "iosave.pendingMessage";
+  private static final String SPOOL_PROPERTY = "iosave.spool";
 
   private final RequestReceiverService requestReceiverService;
-  private final ObjectMapper mapper;
+  /* The policy of the one method the filter is bound to, null for one registered for all */
+  private final InboundPolicy policy;
+  private final MetricRegistry metrics;
+  private final Map<Method, Optional<InboundPolicy>> policies = new ConcurrentHashMap<>();
   @Context
   private ResourceInfo resourceInfo;
 
-  @Builder
-  public InboundMessageFilter(
-      final ASRequestRepository messageRepository,
-      final ObjectMapper mapper
-  ) {
-    this.requestReceiverService = new RequestReceiverService(messageRepository);
-    this.mapper = mapper;
+  InboundMessageFilter(RequestReceiverService requestReceiverService, InboundPolicy policy) {
+    this(requestReceiverService, policy, null);
   }
 
-  private static String readFromRequest(ContainerRequestContext request) {
-    final var out = new ByteArrayOutputStream();
-    final var in = request.getEntityStream();
-    byte[] requestEntity = new byte[0];
-    try {
-      if (in.available() > 0) {
-        ReaderWriter.writeTo(in, out);
-        requestEntity = out.toByteArray();
-        request.setEntityStream(
-            new ByteArrayInputStream(requestEntity));  //Write back so that it gets consumed later
-      }
-      return new String(requestEntity);
-    } catch (IOException ex) {
-      throw new ContainerException(ex);
-    }
+  private InboundMessageFilter(RequestReceiverService requestReceiverService,
+      InboundPolicy policy, MetricRegistry metrics) {
+    this.requestReceiverService = requestReceiverService;
+    this.policy = policy;
+    this.metrics = metrics;
   }
 
-  private String getTraceId(final ContainerRequestContext requestContext, Inbound inbound) {
-    if (null == inbound.traceId()) {
-      return "TXN-" + UUID.randomUUID();
-    }
-    return requestContext.getHeaderString(inbound.traceId());
+  /**
+   * Builds a filter to register for every resource method, which looks up what the
+   * {@link Inbound} annotation of the method asks for as it is first requested, and passes
+   * requests to other methods through. {@code mapper} is not used anymore.
+   *
+   * @deprecated register an {@link InboundFeature}, which binds a filter to each {@link Inbound}
+   *     resource method as the application starts
+   */
+  @Deprecated
+  public static InboundMessageFilterBuilder builder() {
+    return new InboundMessageFilterBuilder();
   }
 
-  private String getRequestId(ContainerRequestContext requestContext, Inbound inbound) {
-    if (null == inbound.requestId()) {
-      return null;
+  /*
+    The policy of the resource method being requested, null if it isn't @Inbound
+   */
+  private InboundPolicy policy() {
+    if (null != policy) {
+      return policy;
     }
-    return requestContext.getHeaderString(inbound.requestId());
-  }
-
-  private boolean mandateRequestId(Inbound inbound) {
-    return inbound.mandateRequestId();
-  }
-
-  private boolean shouldSaveBody(Inbound inbound) {
-    return inbound.saveRequestBody();
-  }
-
-  private Optional<Inbound> getInbound() {
     final var resourceMethod = resourceInfo.getResourceMethod();
-    return null == resourceMethod ? Optional.empty() : Optional.ofNullable(
-        resourceMethod.getAnnotation(Inbound.class)
-    );
+    if (null == resourceMethod) {
+      return null;
+    }
+    final var resourceClass = resourceInfo.getResourceClass();
+    return policies.computeIfAbsent(resourceMethod, method -> Optional.ofNullable(
+        InboundPolicy.of(method, resourceClass, metrics))).orElse(null);
   }
 
-  @SneakyThrows
-  private void handleProcessedMessage(final RequestEntity message) {
-    HashMap<String, String> responseHeaders = new HashMap<>();
-    if (message.getResponseHeaders() != null) {
-      try {
-        responseHeaders = mapper.readValue(message.getResponseHeaders(), new TypeReference<>() {
-        });
-      } catch (final Exception e) {
-        log.error("Unable to parse response headers with value {}.", message.getResponseHeaders());
-      }
+  /*
+    Answers a duplicate of a processed request with the response stored for it, without invoking
+    the resource. The stored body is the bytes that were written for the entity, so they are
+    written back as they are, under the Content-Type they were sent with rather than one Jersey
+    would negotiate for a byte array. A response stored without its body, too large to be held,
+    isn't replayed, the duplicate is turned away as already processed.
+   */
+  private void handleProcessedMessage(final ContainerRequestContext requestContext,
+      final InboundPolicy policy, final RequestEntity message) {
+    if (!message.isResponseReplayable()) {
+      log.info("Message with id {} already processed, its response is too large to replay",
+          message.getRequestId());
+      throw IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_ALREADY_PROCESSED);
+    }
+    policy.getEndpointMetrics().getReplayed().mark();
+    final var builder = Response.status(message.getResponseStatus());
+    if (null != message.getResponseBody()) {
+      builder.entity(message.decodeResponseBody());
     }
-    final var builder = Response
-        .status(Response.Status.fromStatusCode(message.getResponseStatus()))
-        .entity(message.getResponseBody());
-    responseHeaders.forEach(builder::header);
-    //If message already processed, return
-    throw IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_ALREADY_PROCESSED);
+    if (null != message.getResponseHeaders()) {
+      //Records stored before headers were filtered may carry ones that aren't stored anymore
+      final var headerFilter = policy.getHeaderFilter();
+      message.getResponseHeaders().forEach((name, value) -> {
+        if (ResponseHeaderFilter.isContentType(name)) {
+          builder.type(value);
+        } else if (headerFilter.stored(name)) {
+          builder.header(name, value);
+        }
+      });
+    }
+    log.info("Message with id {} already processed. Returning previous response",
+        message.getRequestId());
+    requestContext.setProperty(REPLAYED_PROPERTY, Boolean.TRUE);
+    requestContext.abortWith(builder.build());
   }
 
-  @SneakyThrows
-  private String readFromResponse(ContainerResponseContext response) {
-    final var entity = response.getEntity();
+  /*
+    The leader is the message preHandle was given, whose flight is landed
+   */
+  private void postHandle(InboundPolicy policy, RequestEntity message, RequestEntity leader) {
+    final var timer = policy.getEndpointMetrics().getPostHandle().time();
     try {
-      return mapper.writeValueAsString(entity);   //Deserialize anyway
-    } catch (IOSaveException e) {
-      return entity.toString();
+      requestReceiverService.postHandle(message, leader);
+    } finally {
+      timer.stop();
     }
   }
 
-  private String getRequestBody(ContainerRequestContext context, RequestEntity requestEntity) {
-    return Objects.isNull(requestEntity) ? readFromRequest(context)
-        : requestEntity.getRequestBody();
+  /*
+    The body was captured, if at all, by the request filter, the stream has been consumed since
+   */
+  private String getRequestBody(RequestEntity requestEntity) {
+    return Objects.isNull(requestEntity) ? null : requestEntity.getRequestBody();
   }
 
   @Override
   public void filter(final ContainerRequestContext requestContext) {
-    final var inbound = getInbound().orElse(null);
-    if (null == inbound) {
+    final var policy = policy();
+    if (null == policy) {
       return;
     }
-    final boolean saveRequestBody = shouldSaveBody(inbound);
-    final boolean mandateRequestId = mandateRequestId(inbound);
-    final var requestId = getRequestId(requestContext, inbound);
-    if (mandateRequestId && null == requestId) {
+    final var endpointMetrics = policy.getEndpointMetrics();
+    final var requestId = requestContext.getHeaderString(policy.getRequestIdHeader());
+    if (policy.isMandateRequestId() && null == requestId) {
       throw IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED);
     }
-    final var traceId = getTraceId(requestContext, inbound);
     final var loggingEnabled = requestContext.getHeaderString(
         RequestHeaders.LOGGING_ENABLED.getHeaderName()
     );
-    if (RequestUtils.loggingEnabled(loggingEnabled, requestId)) {
+    if (!RequestUtils.loggingEnabled(loggingEnabled, requestId)) {
+      return;
+    }
+    final var traceId = requestContext.getHeaderString(policy.getTraceIdHeader());
+    final var threadBound = !policy.isAsync();
+    requestContext.setProperty(IOSaveRequestContext.TRACE_ID_PROPERTY, traceId);
+    if (threadBound) {
       RequestUtils.setupTracing(traceId);
+    }
+    try {
+      final var saveRequestBody = policy.isSaveRequestBody();
+      final var capturedBody = saveRequestBody
+          ? CapturedBody.capture(requestContext, policy.getMaxCapturedBytes(),
+          policy.isFingerprint())
+          : CapturedBody.NONE;
+      if (null != capturedBody.getSpool()) {
+        requestContext.setProperty(SPOOL_PROPERTY, capturedBody.getSpool());
+      }
+      final var message = RequestUtils.createInboundMessage(
+          requestId,
+          traceId,
+          saveRequestBody,
+          capturedBody.getBody(),
+          null,
+          null
+      );
+      message.setRequestFingerprint(capturedBody.getFingerprint());
+      log.info("Received message with id {} ", message.getRequestId());
+      final RequestEntity inboundMessage;
+      final var timer = endpointMetrics.getPreHandle().time();
       try {
-        final var message = RequestUtils.createInboundMessage(
-            requestId,
-            traceId,
-            saveRequestBody,
-            getRequestBody(requestContext, null),
-            null,
-            null
-        );
-        log.info("Received message with id {} ", message.getRequestId());
-        RequestManager.setCurrentMessage(message);
-        final var inboundMessage = requestReceiverService.preHandle(message);
-        if (inboundMessage.getProcessed() == RequestStatus.PROCESSED) {
-          handleProcessedMessage(inboundMessage);
+        inboundMessage = policy.getInFlightWaitMillis() < 0
+            ? requestReceiverService.preHandle(message)
+            : requestReceiverService.preHandle(message, policy.getInFlightWaitMillis());
+      } finally {
+        timer.stop();
+      }
+      if (inboundMessage.getProcessed() == RequestStatus.PROCESSED) {
+        handleProcessedMessage(requestContext, policy, inboundMessage);
+      } else {
+        endpointMetrics.getAccepted().mark();
+        //Only a request handled here has a response to record
+        requestContext.setProperty(IOSaveRequestContext.MESSAGE_PROPERTY, message);
+        if (threadBound) {
+          RequestManager.setCurrentMessage(message);
         }
-      } catch (final IOSaveException e) {
-        log.error("Unable to process message. REASON: {}", e.getMessage());
-        throw e;
-      } catch (final Exception e) {
-        log.error("Unable to process message. REASON: {}", e.getMessage());
-        throw IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED);
       }
+    } catch (final IOSaveException e) {
+      RequestUtils.endTransaction(traceId);
+      endpointMetrics.markTurnedAway(e.getErrorCode());
+      log.error("Unable to process message. REASON: {}", e.getMessage());
+      throw e;
+    } catch (final Exception e) {
+      RequestUtils.endTransaction(traceId);
+      endpointMetrics.getErrors().mark();
+      log.error("Unable to process message. REASON: {}", e.getMessage());
+      throw IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED);
     }
   }
 
+  /*
+    Everything it needs the request filter left on the request, a request it didn't take on, or
+    turned away, has neither a message nor a replay and is passed through
+   */
   @Override
   @SneakyThrows
   public void filter(final ContainerRequestContext requestContext,
       final ContainerResponseContext responseContext) {
-    final var inbound = getInbound().orElse(null);
-    if (null == inbound) {
+    closeSpool(requestContext);
+    final var inboundMessage = IOSaveRequestContext.getMessage(requestContext);
+    final var replayed = Boolean.TRUE.equals(requestContext.getProperty(REPLAYED_PROPERTY));
+    if (null == inboundMessage && !replayed) {
       return;
     }
-    final boolean saveRequestBody = shouldSaveBody(inbound);
-    final var requestId = getRequestId(requestContext, inbound);
-    final var loggingEnabled = requestContext.getHeaderString(
-        RequestHeaders.LOGGING_ENABLED.getHeaderName());
-    final var traceId = getTraceId(requestContext, inbound);
-    if (RequestUtils.loggingEnabled(loggingEnabled, requestId)) {
-      final var inboundMessage = RequestManager.getCurrentMessage();
-      RequestEntity message = null;
-      try {
-        if (inboundMessage != null && inboundMessage.getProcessed() == RequestStatus.PROCESSED) {
-          log.info("Message with id {} already processed. Returning previous response",
-              inboundMessage.getRequestId());
-
-          //Message already processed, do not set from app, but set data from DB
-          message = RequestUtils.createFromPreviousResponse(
-              requestId,
-              traceId,
-              getRequestBody(requestContext, inboundMessage),
-              inboundMessage,
-              saveRequestBody
-          );
+    final var policy = policy();
+    final var traceId = IOSaveRequestContext.getTraceId(requestContext);
+    RequestEntity message = null;
+    try {
+      if (replayed) {
+        //The stored response was replayed, there is nothing new to store
+        log.debug("Replayed the stored response for a message");
+      } else {
+        message = RequestUtils.createInboundMessage(inboundMessage.getRequestId(),
+            traceId,
+            getRequestBody(inboundMessage),
+            null,
+            policy.isSaveRequestBody(),
+            inboundMessage,
+            responseContext.getStatus(),
+            null
+        );
+        if (responseContext.hasEntity()) {
+          //Completed once the entity is written, with the bytes that were
+          requestContext.setProperty(PENDING_MESSAGE_PROPERTY, message);
         } else {
-          final Map<String, String> responseHeaders = new HashMap<>();
-          responseContext.getHeaders().forEach((key, value) -> responseHeaders.put(key,
-              value.stream().map(String::valueOf).collect(Collectors.joining(","))));
-          message = RequestUtils.createInboundMessage(requestId,
-              traceId,
-              getRequestBody(requestContext, inboundMessage),
-              readFromResponse(responseContext),
-              saveRequestBody,
-              inboundMessage,
-              responseContext.getStatus(),
-              mapper.writeValueAsString(responseHeaders)
-          );
-          requestReceiverService.postHandle(message);
-        }
-      } catch (final MappableException e) {
-        log.warn("There is a mappable exception while trying to process the request");
-      } catch (final Exception e) {
-        log.warn("Possible duplicate request can creep in.");
-      } finally {
-        if (message != null) {
-          log.info("Finished processing message with id {}. Response Code {}",
-              message.getRequestId(), message.getResponseStatus());
+          message.setResponseHeaders(
+              policy.getHeaderFilter().filter(responseContext.getHeaders()));
+          postHandle(policy, message, inboundMessage);
         }
-        RequestManager.endMessageProcessing();
-        RequestUtils.endTransaction();
       }
+    } catch (final MappableException e) {
+      log.warn("There is a mappable exception while trying to process the request");
+    } catch (final Exception e) {
+      log.warn("Possible duplicate request can creep in.");
+    } finally {
+      if (message != null) {
+        log.info("Finished processing message with id {}. Response Code {}",
+            message.getRequestId(), message.getResponseStatus());
+      }
+      //The response may be filtered on another thread than the one that invoked the resource
+      RequestManager.endMessageProcessing(inboundMessage);
+      RequestUtils.endTransaction(traceId);
+    }
+  }
+
+  /*
+    The resource is done with the request body by the time there is a response, turned away or not
+   */
+  private static void closeSpool(ContainerRequestContext requestContext) {
+    final var spool = (Closeable) requestContext.getProperty(SPOOL_PROPERTY);
+    if (null == spool) {
+      return;
+    }
+    requestContext.removeProperty(SPOOL_PROPERTY);
+    try {
+      spool.close();
+    } catch (IOException e) {
+      log.warn("Spooled request body could not be deleted", e);
+    }
+  }
+
+  /*
+    Tees the entity as it is written to the wire, and records the response with what was written
+   */
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    final var message = (RequestEntity) context.getProperty(PENDING_MESSAGE_PROPERTY);
+    if (null == message) {
+      context.proceed();
+      return;
+    }
+    context.removeProperty(PENDING_MESSAGE_PROPERTY);
+    final var leader = (RequestEntity) context.getProperty(IOSaveRequestContext.MESSAGE_PROPERTY);
+    final var policy = policy();
+    final var maxCapturedBytes = policy.getMaxCapturedResponseBytes();
+    final var capture = new CapturingOutputStream(context.getOutputStream(), maxCapturedBytes);
+    context.setOutputStream(capture);
+    try {
+      context.proceed();
+    } catch (final IOException | RuntimeException e) {
+      log.warn("Response of message {} could not be written, it is left in flight",
+          message.getRequestId());
+      requestReceiverService.abandon(leader);
+      throw e;
+    }
+    try {
+      if (capture.isOverflowed()) {
+        log.warn("Response of message {} is over {} bytes, it is stored without a body and won't "
+            + "be replayed", message.getRequestId(), maxCapturedBytes);
+        message.truncateResponseBody();
+      } else {
+        message.encodeResponseBody(capture.captured());
+      }
+      message.setResponseHeaders(policy.getHeaderFilter().filter(context.getHeaders()));
+      postHandle(policy, message, leader);
+    } catch (final Exception e) {
+      log.warn("Possible duplicate request can creep in.", e);
+    }
+  }
+
+  /**
+   * The arguments the filter was built with before {@link InboundFeature} took over
+   *
+   * @deprecated register an {@link InboundFeature}, built with the same arguments
+   */
+  @Deprecated
+  public static final class InboundMessageFilterBuilder {
+
+    private RequestRepository messageRepository;
+    private RequestReceiverConfig receiverConfig;
+    private RequestReceiverService requestReceiverService;
+    private MetricRegistry metricRegistry;
+
+    private InboundMessageFilterBuilder() {
+    }
+
+    public InboundMessageFilterBuilder messageRepository(RequestRepository messageRepository) {
+      this.messageRepository = messageRepository;
+      return this;
+    }
+
+    /**
+     * Ignored, responses are stored as the bytes that were written
+     */
+    public InboundMessageFilterBuilder mapper(ObjectMapper mapper) {
+      return this;
+    }
+
+    public InboundMessageFilterBuilder receiverConfig(RequestReceiverConfig receiverConfig) {
+      this.receiverConfig = receiverConfig;
+      return this;
+    }
+
+    public InboundMessageFilterBuilder requestReceiverService(
+        RequestReceiverService requestReceiverService) {
+      this.requestReceiverService = requestReceiverService;
+      return this;
+    }
+
+    public InboundMessageFilterBuilder metricRegistry(MetricRegistry metricRegistry) {
+      this.metricRegistry = metricRegistry;
+      return this;
+    }
+
+    public InboundMessageFilter build() {
+      return new InboundMessageFilter(null != requestReceiverService ? requestReceiverService
+          : new RequestReceiverService(messageRepository,
+              null == receiverConfig ? RequestReceiverConfig.builder().build() : receiverConfig),
+          null, null == metricRegistry ? new MetricRegistry() : metricRegistry);
     }
   }
 }
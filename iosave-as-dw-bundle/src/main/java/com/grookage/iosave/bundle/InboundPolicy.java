@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import com.codahale.metrics.MetricRegistry;
+import java.lang.reflect.Method;
+import lombok.Getter;
+
+/*
+  What the filters do for an @Inbound resource method, resolved from its annotation once, when the
+  resource is bound, rather than on every request
+ */
+@Getter
+class InboundPolicy {
+
+  private final String requestIdHeader;
+  private final String traceIdHeader;
+  private final boolean mandateRequestId;
+  private final boolean saveRequestBody;
+  /* Bytes of the request body kept, 0 when only its fingerprint is */
+  private final int maxCapturedBytes;
+  private final boolean fingerprint;
+  private final int maxCapturedResponseBytes;
+  private final long inFlightWaitMillis;
+  /* Whether the response is completed on another thread than the one invoking the resource */
+  private final boolean async;
+  private final ResponseHeaderFilter headerFilter;
+  private final EndpointMetrics endpointMetrics;
+
+  private InboundPolicy(Inbound inbound, Method resourceMethod, Class<?> resourceClass,
+      MetricRegistry metrics) {
+    this.requestIdHeader = inbound.requestId();
+    this.traceIdHeader = inbound.traceId();
+    this.mandateRequestId = inbound.mandateRequestId();
+    this.saveRequestBody = inbound.saveRequestBody();
+    this.maxCapturedBytes = inbound.requestBodyMode().isBody() ? inbound.maxCapturedBytes() : 0;
+    this.fingerprint = inbound.requestBodyMode().isFingerprint();
+    this.maxCapturedResponseBytes = inbound.maxCapturedResponseBytes();
+    this.inFlightWaitMillis = inbound.inFlightWaitMillis();
+    this.async = IOSaveRequestContext.isAsync(resourceMethod);
+    this.headerFilter = ResponseHeaderFilter.of(inbound);
+    this.endpointMetrics = new EndpointMetrics(metrics,
+        MetricRegistry.name(resourceClass.getSimpleName(), resourceMethod.getName()));
+  }
+
+  /*
+    The policy of a resource method, null if neither it nor its class is @Inbound
+   */
+  static InboundPolicy of(Method resourceMethod, Class<?> resourceClass,
+      MetricRegistry metrics) {
+    if (null == resourceMethod || null == resourceClass) {
+      return null;
+    }
+    var inbound = resourceMethod.getAnnotation(Inbound.class);
+    if (null == inbound) {
+      inbound = resourceClass.getAnnotation(Inbound.class);
+    }
+    return null == inbound ? null
+        : new InboundPolicy(inbound, resourceMethod, resourceClass, metrics);
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.ResultCode;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.repository.RequestRepository;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import lombok.SneakyThrows;
+
+/**
+ * Times every call to the repository it wraps, as {@code iosave.store.<operation>} timers, and
+ * marks the ones that fail, on {@code iosave.store.<operation>.errors}. Aerospike failures are
+ * also marked by result code, on {@code iosave.aerospike.errors.<RESULT_CODE>}. Async calls are
+ * timed until their future completes, under the same names as their synchronous namesakes.
+ */
+public class MeteredRequestRepository implements RequestRepository {
+
+  private static final Map<Integer, String> RESULT_CODES = resultCodes();
+
+  private final RequestRepository delegate;
+  private final MetricRegistry metrics;
+  private final Operation find;
+  private final Operation strictSave;
+  private final Operation save;
+  private final Operation saveIfUnchanged;
+  private final Operation update;
+  private final Operation claim;
+  private final Operation incrementDuplicateRequestCount;
+  private final Operation complete;
+  private final Operation completeAll;
+
+  public MeteredRequestRepository(final RequestRepository delegate, final MetricRegistry metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+    this.find = new Operation("find");
+    this.strictSave = new Operation("strictSave");
+    this.save = new Operation("save");
+    this.saveIfUnchanged = new Operation("saveIfUnchanged");
+    this.update = new Operation("update");
+    this.claim = new Operation("claim");
+    this.incrementDuplicateRequestCount = new Operation("incrementDuplicateRequestCount");
+    this.complete = new Operation("complete");
+    this.completeAll = new Operation("completeAll");
+  }
+
+  /*
+    ResultCode is a bag of int constants, the names make for readable metrics
+   */
+  private static Map<Integer, String> resultCodes() {
+    final var resultCodes = new HashMap<Integer, String>();
+    Arrays.stream(ResultCode.class.getFields())
+        .filter(field -> Modifier.isStatic(field.getModifiers()) && field.getType() == int.class)
+        .forEach(field -> resultCodes.putIfAbsent(readCode(field), field.getName()));
+    return resultCodes;
+  }
+
+  @SneakyThrows
+  private static int readCode(Field field) {
+    return field.getInt(null);
+  }
+
+  private void failed(Operation operation, Throwable throwable) {
+    operation.errors.mark();
+    for (var cause = throwable; null != cause; cause = cause.getCause()) {
+      if (cause instanceof AerospikeException) {
+        final var resultCode = ((AerospikeException) cause).getResultCode();
+        metrics.meter(MetricRegistry.name("iosave.aerospike.errors",
+            RESULT_CODES.getOrDefault(resultCode, String.valueOf(resultCode)))).mark();
+        return;
+      }
+    }
+  }
+
+  private <T> T time(Operation operation, Supplier<T> call) {
+    final var context = operation.timer.time();
+    try {
+      return call.get();
+    } catch (RuntimeException e) {
+      failed(operation, e);
+      throw e;
+    } finally {
+      context.stop();
+    }
+  }
+
+  private void time(Operation operation, Runnable call) {
+    time(operation, () -> {
+      call.run();
+      return null;
+    });
+  }
+
+  private <T> CompletableFuture<T> timeAsync(Operation operation,
+      Supplier<CompletableFuture<T>> call) {
+    final var context = operation.timer.time();
+    final CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException e) {
+      context.stop();
+      failed(operation, e);
+      throw e;
+    }
+    return future.whenComplete((result, throwable) -> {
+      context.stop();
+      if (null != throwable) {
+        failed(operation, throwable);
+      }
+    });
+  }
+
+  @Override
+  public boolean connected() {
+    return delegate.connected();
+  }
+
+  @Override
+  public Optional<RequestEntity> findByMessageId(String messageId) {
+    return time(find, () -> delegate.findByMessageId(messageId));
+  }
+
+  @Override
+  public void strictSave(RequestEntity requestEntity) {
+    time(strictSave, () -> delegate.strictSave(requestEntity));
+  }
+
+  @Override
+  public void save(RequestEntity requestEntity) {
+    time(save, () -> delegate.save(requestEntity));
+  }
+
+  @Override
+  public boolean saveIfUnchanged(RequestEntity requestEntity) {
+    return time(saveIfUnchanged, () -> delegate.saveIfUnchanged(requestEntity));
+  }
+
+  @Override
+  public void update(RequestEntity requestEntity) {
+    time(update, () -> delegate.update(requestEntity));
+  }
+
+  @Override
+  public Optional<RequestEntity> claim(RequestEntity requestEntity) {
+    return time(claim, () -> delegate.claim(requestEntity));
+  }
+
+  @Override
+  public void incrementDuplicateRequestCount(String messageId, int count) {
+    time(incrementDuplicateRequestCount,
+        () -> delegate.incrementDuplicateRequestCount(messageId, count));
+  }
+
+  @Override
+  public void complete(RequestEntity requestEntity) {
+    time(complete, () -> delegate.complete(requestEntity));
+  }
+
+  @Override
+  public List<RequestEntity> completeAll(List<RequestEntity> requestEntities) {
+    return time(completeAll, () -> delegate.completeAll(requestEntities));
+  }
+
+  @Override
+  public CompletableFuture<Optional<RequestEntity>> findByMessageIdAsync(String messageId) {
+    return timeAsync(find, () -> delegate.findByMessageIdAsync(messageId));
+  }
+
+  @Override
+  public CompletableFuture<Void> strictSaveAsync(RequestEntity requestEntity) {
+    return timeAsync(strictSave, () -> delegate.strictSaveAsync(requestEntity));
+  }
+
+  @Override
+  public CompletableFuture<Void> saveAsync(RequestEntity requestEntity) {
+    return timeAsync(save, () -> delegate.saveAsync(requestEntity));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> saveIfUnchangedAsync(RequestEntity requestEntity) {
+    return timeAsync(saveIfUnchanged, () -> delegate.saveIfUnchangedAsync(requestEntity));
+  }
+
+  @Override
+  public CompletableFuture<Optional<RequestEntity>> claimAsync(RequestEntity requestEntity) {
+    return timeAsync(claim, () -> delegate.claimAsync(requestEntity));
+  }
+
+  @Override
+  public CompletableFuture<Void> incrementDuplicateRequestCountAsync(String messageId,
+      int count) {
+    return timeAsync(incrementDuplicateRequestCount,
+        () -> delegate.incrementDuplicateRequestCountAsync(messageId, count));
+  }
+
+  @Override
+  public CompletableFuture<Void> completeAsync(RequestEntity requestEntity) {
+    return timeAsync(complete, () -> delegate.completeAsync(requestEntity));
+  }
+
+  private class Operation {
+
+    private final Timer timer;
+    private final Meter errors;
+
+    private Operation(String name) {
+      this.timer = metrics.timer(MetricRegistry.name("iosave.store", name));
+      this.errors = metrics.meter(MetricRegistry.name("iosave.store", name, "errors"));
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * What {@link Inbound#saveRequestBody()} keeps of a request body. A fingerprint is a SHA-256 of
+ * the body as received, a duplicate request id arriving with a different fingerprint is rejected.
+ */
+@Getter
+@AllArgsConstructor
+public enum RequestBodyMode {
+
+  BODY(true, false),
+
+  FINGERPRINT(false, true),
+
+  FINGERPRINT_AND_BODY(true, true);
+
+  private final boolean body;
+  private final boolean fingerprint;
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.ws.rs.core.MultivaluedMap;
+
+/*
+  Which response headers of an @Inbound endpoint are stored for replay. Hop-by-hop headers and the
+  body's length never are, they belong to the connection the response was first sent on, and
+  neither are the ones that describe that one sending, a replay must not set its cookies again or
+  claim its date. Content-Type always is, the stored bytes can't be read without it.
+ */
+class ResponseHeaderFilter {
+
+  private static final Set<String> HOP_BY_HOP = Set.of("connection", "keep-alive",
+      "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding",
+      "upgrade", "content-length");
+  private static final Set<String> PER_RESPONSE = Set.of("date", "server", "set-cookie",
+      "expires", "age");
+  private static final String CONTENT_TYPE = "content-type";
+
+  private final Set<String> allowed;
+  private final Set<String> denied;
+
+  private ResponseHeaderFilter(Set<String> allowed, Set<String> denied) {
+    this.allowed = allowed;
+    this.denied = denied;
+  }
+
+  private static Set<String> lowerCased(Stream<String> headers) {
+    return headers.map(header -> header.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+  }
+
+  static ResponseHeaderFilter of(Inbound inbound) {
+    return new ResponseHeaderFilter(
+        lowerCased(Arrays.stream(inbound.storedResponseHeaders())),
+        lowerCased(Stream.of(HOP_BY_HOP.stream(), PER_RESPONSE.stream(),
+                Arrays.stream(inbound.excludedResponseHeaders()), Stream.of(inbound.traceId()))
+            .flatMap(headers -> headers))
+    );
+  }
+
+  static boolean isContentType(String header) {
+    return CONTENT_TYPE.equalsIgnoreCase(header);
+  }
+
+  boolean stored(String header) {
+    final var name = header.toLowerCase(Locale.ROOT);
+    return CONTENT_TYPE.equals(name)
+        || !denied.contains(name) && (allowed.isEmpty() || allowed.contains(name));
+  }
+
+  /*
+    The stored headers, with multiple values joined by commas
+   */
+  Map<String, String> filter(MultivaluedMap<String, ?> headers) {
+    final var stored = new HashMap<String, String>();
+    headers.forEach((name, values) -> {
+      if (stored(name)) {
+        stored.put(name, values.stream().map(String::valueOf).collect(Collectors.joining(",")));
+      }
+    });
+    return stored;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import javax.ws.rs.container.ContainerRequestContext;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class CapturedBodyTest {
+
+  private static byte[] body(int size) {
+    final var body = new byte[size];
+    new Random(size).nextBytes(body);
+    return body;
+  }
+
+  private static ContainerRequestContext request(byte[] body, int declaredLength) {
+    final var request = Mockito.mock(ContainerRequestContext.class);
+    Mockito.when(request.getEntityStream()).thenReturn(new ByteArrayInputStream(body));
+    Mockito.when(request.getLength()).thenReturn(declaredLength);
+    return request;
+  }
+
+  private static InputStream handedOn(ContainerRequestContext request) {
+    final var stream = ArgumentCaptor.forClass(InputStream.class);
+    Mockito.verify(request).setEntityStream(stream.capture());
+    return stream.getValue();
+  }
+
+  private static String sha256(byte[] body) throws Exception {
+    return Base64.getEncoder().encodeToString(
+        MessageDigest.getInstance("SHA-256").digest(body));
+  }
+
+  @Test
+  public void testBodyIsKeptUpToTheCapAndHandedOnWhole() throws Exception {
+    final var body = "{\"amount\":100,\"currency\":\"INR\"}".getBytes(StandardCharsets.UTF_8);
+    final var request = request(body, body.length);
+    final var captured = CapturedBody.capture(request, 10, false);
+    Assert.assertEquals("{\"amount\":", captured.getBody());
+    Assert.assertNull(captured.getFingerprint());
+    Assert.assertNull(captured.getSpool());
+    Assert.assertArrayEquals(body, handedOn(request).readAllBytes());
+  }
+
+  @Test
+  public void testDeclaredLengthDoesNotSizeTheBuffer() throws Exception {
+    final var body = body(100);
+    final var request = request(body, 2_000_000_000);
+    final var captured = CapturedBody.capture(request, 1 << 20, true);
+    Assert.assertNotNull(captured.getBody());
+    Assert.assertEquals(sha256(body), captured.getFingerprint());
+    Assert.assertNull(captured.getSpool());
+    Assert.assertArrayEquals(body, handedOn(request).readAllBytes());
+  }
+
+  @Test
+  public void testLargeBodyIsFingerprintedThroughASpool() throws Exception {
+    final var body = body(1 << 20);
+    final var request = request(body, -1);
+    final var captured = CapturedBody.capture(request, 0, true);
+    Assert.assertNull(captured.getBody());
+    Assert.assertEquals(sha256(body), captured.getFingerprint());
+    Assert.assertNotNull(captured.getSpool());
+    try (var stream = handedOn(request)) {
+      Assert.assertArrayEquals(body, stream.readAllBytes());
+    }
+    captured.getSpool().close();
+  }
+
+  @Test
+  public void testFingerprintWithKeptBody() throws Exception {
+    final var body = body(200_000);
+    final var request = request(body, body.length);
+    final var captured = CapturedBody.capture(request, 1000, true);
+    Assert.assertEquals(sha256(body), captured.getFingerprint());
+    Assert.assertNotNull(captured.getSpool());
+    Assert.assertArrayEquals(body, handedOn(request).readAllBytes());
+    Assert.assertArrayEquals(new String(Arrays.copyOf(body, 1000), StandardCharsets.UTF_8)
+        .getBytes(StandardCharsets.UTF_8), captured.getBody().getBytes(StandardCharsets.UTF_8));
+    captured.getSpool().close();
+  }
+
+  @Test
+  public void testEmptyBody() {
+    final var request = request(new byte[0], 0);
+    final var captured = CapturedBody.capture(request, 1000, true);
+    Assert.assertNull(captured.getBody());
+    Assert.assertNotNull(captured.getFingerprint());
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.repository.InMemoryRequestRepository;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class InboundMessageFilterTest {
+
+  private final InMemoryRequestRepository repository = new InMemoryRequestRepository(
+      InMemoryRepositoryConfig.builder().build());
+
+  public static class Resource {
+
+    public void plain() {
+    }
+
+    @Inbound
+    public void deduplicated() {
+    }
+
+    @Inbound(mandateRequestId = true)
+    public void mandated() {
+    }
+
+    @Inbound(maxCapturedResponseBytes = 4)
+    public void small() {
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private InboundMessageFilter legacyFilter(String resourceMethod) throws Exception {
+    final var filter = InboundMessageFilter.builder()
+        .messageRepository(repository)
+        .build();
+    final var resourceInfo = Mockito.mock(ResourceInfo.class);
+    Mockito.when(resourceInfo.getResourceMethod())
+        .thenReturn(Resource.class.getMethod(resourceMethod));
+    Mockito.<Class<?>>when(resourceInfo.getResourceClass()).thenReturn(Resource.class);
+    final var field = InboundMessageFilter.class.getDeclaredField("resourceInfo");
+    field.setAccessible(true);
+    field.set(filter, resourceInfo);
+    return filter;
+  }
+
+  private static ContainerRequestContext request(String requestId) {
+    final var request = Mockito.mock(ContainerRequestContext.class);
+    Mockito.when(request.getHeaderString("X-REQUEST-ID")).thenReturn(requestId);
+    return request;
+  }
+
+  /*
+    A request whose properties are kept, as the filters and interceptor hand state over in them
+   */
+  private static ContainerRequestContext liveRequest(String requestId,
+      Map<String, Object> properties) {
+    final var request = request(requestId);
+    Mockito.doAnswer(call -> properties.put(call.getArgument(0), call.getArgument(1)))
+        .when(request).setProperty(Mockito.anyString(), Mockito.any());
+    Mockito.doAnswer(call -> properties.get(call.<String>getArgument(0)))
+        .when(request).getProperty(Mockito.anyString());
+    return request;
+  }
+
+  /*
+    Accepts a request and writes the response body the resource returned for it
+   */
+  private static void handle(InboundMessageFilter filter, String requestId, String body)
+      throws Exception {
+    final var properties = new HashMap<String, Object>();
+    final var request = liveRequest(requestId, properties);
+    filter.filter(request);
+    final var response = Mockito.mock(ContainerResponseContext.class);
+    Mockito.when(response.getStatus()).thenReturn(200);
+    Mockito.when(response.hasEntity()).thenReturn(true);
+    filter.filter(request, response);
+    final var writer = Mockito.mock(WriterInterceptorContext.class);
+    Mockito.doAnswer(call -> properties.get(call.<String>getArgument(0)))
+        .when(writer).getProperty(Mockito.anyString());
+    Mockito.doAnswer(call -> properties.remove(call.<String>getArgument(0)))
+        .when(writer).removeProperty(Mockito.anyString());
+    Mockito.when(writer.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    Mockito.when(writer.getHeaders()).thenReturn(new MultivaluedHashMap<>());
+    final var stream = new OutputStream[1];
+    Mockito.doAnswer(call -> stream[0] = call.getArgument(0))
+        .when(writer).setOutputStream(Mockito.any());
+    Mockito.doAnswer(call -> {
+      stream[0].write(body.getBytes(StandardCharsets.UTF_8));
+      return null;
+    }).when(writer).proceed();
+    filter.aroundWriteTo(writer);
+  }
+
+  @Test
+  public void testLegacyFilterPassesOtherMethodsThrough() throws Exception {
+    final var request = request("r1");
+    legacyFilter("plain").filter(request);
+    Mockito.verifyNoInteractions(request);
+    Assert.assertFalse(repository.findByMessageId("r1").isPresent());
+  }
+
+  @Test
+  public void testLegacyFilterDeduplicatesAnnotatedMethods() throws Exception {
+    final var request = request("r1");
+    legacyFilter("deduplicated").filter(request);
+    Mockito.verify(request).setProperty(Mockito.eq(IOSaveRequestContext.MESSAGE_PROPERTY),
+        Mockito.any());
+    Assert.assertTrue(repository.findByMessageId("r1").isPresent());
+  }
+
+  @Test(expected = IOSaveException.class)
+  public void testLegacyFilterFollowsTheMethodsAnnotation() throws Exception {
+    legacyFilter("mandated").filter(request(null));
+  }
+
+  @Test
+  public void testResponseWithinTheCapIsReplayed() throws Exception {
+    final var filter = legacyFilter("small");
+    handle(filter, "r1", "ok");
+    final var duplicate = liveRequest("r1", new HashMap<>());
+    filter.filter(duplicate);
+    final var replay = ArgumentCaptor.forClass(Response.class);
+    Mockito.verify(duplicate).abortWith(replay.capture());
+    Assert.assertArrayEquals("ok".getBytes(StandardCharsets.UTF_8),
+        (byte[]) replay.getValue().getEntity());
+  }
+
+  @Test
+  public void testResponseOverTheCapIsNeverReplayed() throws Exception {
+    final var filter = legacyFilter("small");
+    handle(filter, "r1", "too large");
+    final var stored = repository.findByMessageId("r1").orElseThrow();
+    Assert.assertEquals(RequestStatus.PROCESSED, stored.getProcessed());
+    Assert.assertEquals(RequestEntity.TRUNCATED, stored.getResponseBodyEncoding());
+    Assert.assertNull(stored.getResponseBody());
+    final var duplicate = liveRequest("r1", new HashMap<>());
+    try {
+      filter.filter(duplicate);
+      Assert.fail("A truncated response was replayed");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_ALREADY_PROCESSED, e.getErrorCode());
+    }
+    Mockito.verify(duplicate, Mockito.never()).abortWith(Mockito.any());
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.bundle;
+
+import java.util.Map;
+import javax.ws.rs.core.MultivaluedHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ResponseHeaderFilterTest {
+
+  private static Inbound inbound(String[] stored, String[] excluded) {
+    final var inbound = Mockito.mock(Inbound.class);
+    Mockito.when(inbound.storedResponseHeaders()).thenReturn(stored);
+    Mockito.when(inbound.excludedResponseHeaders()).thenReturn(excluded);
+    Mockito.when(inbound.traceId()).thenReturn("X-TRACE-ID");
+    return inbound;
+  }
+
+  private static MultivaluedHashMap<String, Object> headers() {
+    final var headers = new MultivaluedHashMap<String, Object>();
+    headers.add("Content-Type", "application/json");
+    headers.add("Content-Length", 42);
+    headers.add("Date", "Sun, 18 Oct 2026 10:00:00 GMT");
+    headers.add("Set-Cookie", "session=a");
+    headers.add("Set-Cookie", "theme=b");
+    headers.add("X-TRACE-ID", "trace");
+    headers.add("X-Request-Cost", 3);
+    headers.add("Location", "/orders/1");
+    return headers;
+  }
+
+  @Test
+  public void testPerResponseHeadersAreNeverStored() {
+    final var filter = ResponseHeaderFilter.of(inbound(new String[0], new String[0]));
+    Assert.assertEquals(Map.of("Content-Type", "application/json", "X-Request-Cost", "3",
+        "Location", "/orders/1"), filter.filter(headers()));
+  }
+
+  @Test
+  public void testExcludedHeadersAddToTheOnesNeverStored() {
+    final var filter = ResponseHeaderFilter.of(
+        inbound(new String[0], new String[]{"x-request-cost"}));
+    Assert.assertEquals(Map.of("Content-Type", "application/json", "Location", "/orders/1"),
+        filter.filter(headers()));
+  }
+
+  @Test
+  public void testStoredHeadersCantBringBackPerResponseOnes() {
+    final var filter = ResponseHeaderFilter.of(
+        inbound(new String[]{"Set-Cookie", "Date", "Location"}, new String[0]));
+    Assert.assertEquals(Map.of("Content-Type", "application/json", "Location", "/orders/1"),
+        filter.filter(headers()));
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.benchmarks;
+
+import com.grookage.iosave.as.client.AerospikeClient;
+import com.grookage.iosave.as.codec.CodecType;
+import com.grookage.iosave.as.codec.PayloadEncoder;
+import com.grookage.iosave.core.entities.RequestEntity;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link AerospikeClient} put and get, which is where serialization and compression of
+ * every stored {@link RequestEntity} happens, for each payload codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AerospikeClientBenchmark {
+
+  @Param({"1024", "16384", "262144", "1048576"})
+  private int payloadSize;
+
+  @Param({"NONE", "GZIP", "LZ4", "ZSTD"})
+  private CodecType codec;
+
+  @Param({"1024"})
+  private int compressionThreshold;
+
+  private AerospikeClient aerospikeClient;
+  private RequestEntity entity;
+
+  @Setup
+  public void setup() {
+    final var payload = BenchmarkFixtures.payload(payloadSize);
+    aerospikeClient = BenchmarkFixtures.aerospikeClient(
+        BenchmarkFixtures.store(payloadSize), BenchmarkFixtures.mapper(),
+        new PayloadEncoder(codec, compressionThreshold));
+    entity = BenchmarkFixtures.completed(BenchmarkFixtures.PROCESSED_ID, payload, 200);
+    BenchmarkFixtures.seed(BenchmarkFixtures.repository(aerospikeClient), payload);
+  }
+
+  @Benchmark
+  public void strictSaveNewId() {
+    aerospikeClient.strictSave(BenchmarkFixtures.newRequestId(), entity);
+  }
+
+  @Benchmark
+  public void saveExistingId() {
+    aerospikeClient.save(BenchmarkFixtures.PROCESSED_ID, entity);
+  }
+
+  @Benchmark
+  public Optional<RequestEntity> getExistingId() {
+    return aerospikeClient.get(BenchmarkFixtures.PROCESSED_ID, RequestEntity.class);
+  }
+
+  @Benchmark
+  public Optional<RequestEntity> getMissingId() {
+    return aerospikeClient.get(BenchmarkFixtures.newRequestId(), RequestEntity.class);
+  }
+}
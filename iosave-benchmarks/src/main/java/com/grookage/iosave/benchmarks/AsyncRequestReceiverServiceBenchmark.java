@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.benchmarks;
+
+import com.grookage.iosave.as.config.RecordLayout;
+import com.grookage.iosave.as.repository.ASRequestRepository;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.services.RequestReceiverService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares what a single thread gets through with the blocking and the async receiver paths, when
+ * every store call takes a network round trip. The blocking path handles {@link #IN_FLIGHT}
+ * requests one after the other, the async one has all of them in flight at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncRequestReceiverServiceBenchmark {
+
+  private static final int IN_FLIGHT = 64;
+
+  @Param({"1024", "16384"})
+  private int payloadSize;
+
+  @Param({"SINGLE_BIN", "MULTI_BIN"})
+  private RecordLayout recordLayout;
+
+  @Param({"200"})
+  private long storeRoundTripMicros;
+
+  private RequestReceiverService requestReceiverService;
+  private String payload;
+
+  @Setup
+  public void setup() {
+    payload = BenchmarkFixtures.payload(payloadSize);
+    final var aerospikeClient = BenchmarkFixtures.aerospikeClient(
+        BenchmarkFixtures.store(payloadSize, storeRoundTripMicros), BenchmarkFixtures.mapper());
+    requestReceiverService = new RequestReceiverService(ASRequestRepository.builder()
+        .aerospikeClient(aerospikeClient)
+        .recordLayout(recordLayout)
+        .build());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(IN_FLIGHT)
+  public void preAndPostHandleNewIds() {
+    for (int i = 0; i < IN_FLIGHT; i++) {
+      final var requestId = BenchmarkFixtures.newRequestId();
+      requestReceiverService.preHandle(BenchmarkFixtures.incoming(requestId, payload));
+      requestReceiverService.postHandle(BenchmarkFixtures.completed(requestId, payload, 200));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(IN_FLIGHT)
+  public void preAndPostHandleNewIdsAsync() {
+    final var inFlight = new CompletableFuture<?>[IN_FLIGHT];
+    for (int i = 0; i < IN_FLIGHT; i++) {
+      final var requestId = BenchmarkFixtures.newRequestId();
+      inFlight[i] = requestReceiverService
+          .preHandleAsync(BenchmarkFixtures.incoming(requestId, payload))
+          .thenCompose(created -> requestReceiverService
+              .postHandleAsync(BenchmarkFixtures.completed(requestId, payload, 200)));
+    }
+    CompletableFuture.allOf(inFlight).join();
+  }
+
+  @Benchmark
+  public RequestEntity preHandleNewIdAsync() {
+    return requestReceiverService
+        .preHandleAsync(BenchmarkFixtures.incoming(BenchmarkFixtures.newRequestId(), payload))
+        .join();
+  }
+}
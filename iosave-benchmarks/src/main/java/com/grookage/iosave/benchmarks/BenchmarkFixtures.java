@@ -0,0 +1,143 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.benchmarks;
+
+import com.aerospike.client.IAerospikeClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grookage.iosave.as.client.AerospikeClient;
+import com.grookage.iosave.as.codec.PayloadEncoder;
+import com.grookage.iosave.as.repository.ASRequestRepository;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.repository.RequestRepository;
+import io.dropwizard.jackson.Jackson;
+import java.util.Date;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class BenchmarkFixtures {
+
+  public static final String PROCESSED_ID = "processed-request-id";
+  public static final String FAILED_ID = "failed-request-id";
+  public static final String NAMESPACE = "iosave";
+  public static final String SET = "messages";
+
+  /*
+    Keeps the in-process store under ~64MB of payload, no matter the payload size being measured
+   */
+  private static final int STORE_BUDGET_BYTES = 64 * 1024 * 1024;
+
+  private static final AtomicLong ID_SEQUENCE = new AtomicLong();
+
+  public static ObjectMapper mapper() {
+    return Jackson.newObjectMapper();
+  }
+
+  public static IAerospikeClient store(int payloadSize) {
+    return store(payloadSize, 0);
+  }
+
+  public static IAerospikeClient store(int payloadSize, long roundTripMicros) {
+    return InProcessAerospikeClient.create(roundTripMicros,
+        Math.max(16, STORE_BUDGET_BYTES / payloadSize));
+  }
+
+  public static AerospikeClient aerospikeClient(IAerospikeClient store, ObjectMapper mapper) {
+    return aerospikeClient(store, mapper, PayloadEncoder.defaultEncoder());
+  }
+
+  public static AerospikeClient aerospikeClient(IAerospikeClient store, ObjectMapper mapper,
+      PayloadEncoder payloadEncoder) {
+    return AerospikeClient.builder()
+        .client(store)
+        .namespace(NAMESPACE)
+        .storeType(SET)
+        .mapper(mapper)
+        .payloadEncoder(payloadEncoder)
+        .eventLoops(InProcessAerospikeClient.eventLoops())
+        .build();
+  }
+
+  public static ASRequestRepository repository(AerospikeClient aerospikeClient) {
+    return ASRequestRepository.builder()
+        .aerospikeClient(aerospikeClient)
+        .build();
+  }
+
+  public static String newRequestId() {
+    return "request-" + ID_SEQUENCE.incrementAndGet();
+  }
+
+  /**
+   * A JSON document of roughly {@code size} bytes, shaped like a typical API payload. Seeded, so
+   * every fork measures the same bytes.
+   */
+  public static String payload(int size) {
+    final var random = new Random(size);
+    final var builder = new StringBuilder(size + 256).append("{\"items\":[");
+    var index = 0;
+    while (builder.length() < size) {
+      if (index > 0) {
+        builder.append(',');
+      }
+      builder.append("{\"id\":").append(index)
+          .append(",\"sku\":\"SKU-").append(Long.toHexString(random.nextLong()))
+          .append("\",\"quantity\":").append(random.nextInt(100))
+          .append(",\"amount\":").append(random.nextInt(1_000_000) / 100.0)
+          .append(",\"merchant\":\"merchant-").append(random.nextInt(512))
+          .append("\",\"note\":\"").append(Long.toString(random.nextLong(), 36))
+          .append(Long.toString(random.nextLong(), 36)).append("\"}");
+      index++;
+    }
+    return builder.append("]}").toString();
+  }
+
+  public static RequestEntity incoming(String requestId, String requestBody) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .traceId("TXN-" + requestId)
+        .requestBody(requestBody)
+        .processed(RequestStatus.PROCESSING)
+        .build();
+  }
+
+  public static RequestEntity completed(String requestId, String payload, int responseStatus) {
+    final var now = new Date();
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .traceId("TXN-" + requestId)
+        .requestBody(payload)
+        .responseBody(payload)
+        .responseHeaders(Map.of("Content-Type", "application/json"))
+        .responseStatus(responseStatus)
+        .processed(responseStatus < 300 ? RequestStatus.PROCESSED : RequestStatus.FAILED)
+        .createdAt(now)
+        .updatedAt(now)
+        .processedAt(now)
+        .build();
+  }
+
+  /**
+   * Seeds one {@link RequestStatus#PROCESSED} and one {@link RequestStatus#FAILED} record
+   */
+  public static void seed(RequestRepository repository, String payload) {
+    repository.save(completed(PROCESSED_ID, payload, 200));
+    repository.save(completed(FAILED_ID, payload, 500));
+  }
+}
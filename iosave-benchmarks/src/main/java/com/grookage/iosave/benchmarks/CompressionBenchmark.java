@@ -0,0 +1,85 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.benchmarks;
+
+import com.grookage.iosave.as.codec.CodecType;
+import com.grookage.iosave.as.codec.PayloadEncoder;
+import com.grookage.iosave.as.utils.CompressionUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+  @Param({"1024", "16384", "262144", "1048576"})
+  private int payloadSize;
+
+  @Param({"NONE", "GZIP", "LZ4", "ZSTD"})
+  private CodecType codec;
+
+  private byte[] payload;
+  private String legacyEncoded;
+  private PayloadEncoder payloadEncoder;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws IOException {
+    payload = BenchmarkFixtures.payload(payloadSize).getBytes(StandardCharsets.UTF_8);
+    legacyEncoded = CompressionUtils.compressAndEncode(payload);
+    payloadEncoder = new PayloadEncoder(codec, 0);
+    encoded = payloadEncoder.encode(payload);
+  }
+
+  /*
+    The base64 gzip String encoding of earlier versions, independent of the codec param
+   */
+  @Benchmark
+  public String compressAndEncode() throws IOException {
+    return CompressionUtils.compressAndEncode(payload);
+  }
+
+  @Benchmark
+  public byte[] decodeAndDecompress() throws IOException {
+    return CompressionUtils.decodeAndDecompress(legacyEncoded);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return payloadEncoder.encode(payload);
+  }
+
+  @Benchmark
+  public byte[] decode() {
+    return payloadEncoder.decode(encoded);
+  }
+}
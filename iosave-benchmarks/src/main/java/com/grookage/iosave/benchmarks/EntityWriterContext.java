@@ -0,0 +1,138 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+
+/**
+ * Writes a response entity the way Jersey's Jackson writer would, as JSON into a stream that
+ * discards it, so writer interceptors run against a plain entity write.
+ */
+class EntityWriterContext implements WriterInterceptorContext {
+
+  private final ObjectMapper mapper;
+  private final ContainerRequest request;
+  private final ContainerResponse response;
+  private OutputStream outputStream = OutputStream.nullOutputStream();
+  private Object entity;
+
+  EntityWriterContext(ObjectMapper mapper, ContainerRequest request, ContainerResponse response) {
+    this.mapper = mapper;
+    this.request = request;
+    this.response = response;
+    this.entity = response.getEntity();
+  }
+
+  @Override
+  public void proceed() throws IOException {
+    mapper.writeValue(outputStream, entity);
+  }
+
+  @Override
+  public Object getEntity() {
+    return entity;
+  }
+
+  @Override
+  public void setEntity(Object entity) {
+    this.entity = entity;
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  @Override
+  public void setOutputStream(OutputStream os) {
+    this.outputStream = os;
+  }
+
+  @Override
+  public MultivaluedMap<String, Object> getHeaders() {
+    return response.getHeaders();
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    return request.getProperty(name);
+  }
+
+  @Override
+  public Collection<String> getPropertyNames() {
+    return request.getPropertyNames();
+  }
+
+  @Override
+  public void setProperty(String name, Object object) {
+    request.setProperty(name, object);
+  }
+
+  @Override
+  public void removeProperty(String name) {
+    request.removeProperty(name);
+  }
+
+  @Override
+  public Annotation[] getAnnotations() {
+    return new Annotation[0];
+  }
+
+  @Override
+  public void setAnnotations(Annotation[] annotations) {
+    //Not consulted
+  }
+
+  @Override
+  public Class<?> getType() {
+    return null == entity ? null : entity.getClass();
+  }
+
+  @Override
+  public void setType(Class<?> type) {
+    //Not consulted
+  }
+
+  @Override
+  public Type getGenericType() {
+    return getType();
+  }
+
+  @Override
+  public void setGenericType(Type genericType) {
+    //Not consulted
+  }
+
+  @Override
+  public MediaType getMediaType() {
+    return response.getMediaType();
+  }
+
+  @Override
+  public void setMediaType(MediaType mediaType) {
+    //Not consulted
+  }
+}
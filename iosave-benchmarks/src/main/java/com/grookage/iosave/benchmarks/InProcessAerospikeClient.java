@@ -0,0 +1,304 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.benchmarks;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Operation;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.async.EventLoops;
+import com.aerospike.client.listener.RecordListener;
+import com.aerospike.client.listener.WriteListener;
+import com.aerospike.client.policy.GenerationPolicy;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import lombok.AllArgsConstructor;
+
+/**
+ * An in-process stand-in for {@link IAerospikeClient}, backed by a {@link ConcurrentHashMap}.
+ * Implements the subset of the client the iosave repositories use, with the same record exists,
+ * generation and result code semantics as the server. An optional simulated round trip can be
+ * added to every call to approximate network latency.
+ */
+public class InProcessAerospikeClient implements InvocationHandler {
+
+  private static final ScheduledExecutorService TIMER = Executors.newScheduledThreadPool(2,
+      runnable -> {
+        final var thread = new Thread(runnable, "in-process-aerospike-timer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final Map<Key, StoredRecord> records = new ConcurrentHashMap<>();
+  private final long roundTripNanos;
+  private final int maxRecords;
+
+  private InProcessAerospikeClient(long roundTripMicros, int maxRecords) {
+    this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    this.maxRecords = maxRecords;
+  }
+
+  /**
+   * @param roundTripMicros simulated network round trip added to every store call, 0 for none
+   * @param maxRecords      once exceeded, the store is cleared so that benchmarks creating new
+   *                        ids for every invocation do not grow the heap without bound
+   */
+  public static IAerospikeClient create(long roundTripMicros, int maxRecords) {
+    return (IAerospikeClient) Proxy.newProxyInstance(
+        IAerospikeClient.class.getClassLoader(),
+        new Class<?>[]{IAerospikeClient.class},
+        new InProcessAerospikeClient(roundTripMicros, maxRecords)
+    );
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) {
+    switch (method.getName()) {
+      case "isConnected":
+        return true;
+      case "close":
+        records.clear();
+        return null;
+      case "getReadPolicyDefault":
+        return new Policy();
+      case "getWritePolicyDefault":
+        return new WritePolicy();
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "equals":
+        return proxy == args[0];
+      case "toString":
+        return "InProcessAerospikeClient";
+      default:
+        break;
+    }
+    if (null != args && args.length > 3 && args[3] instanceof Key) {
+      invokeAsync(method, args);
+      return null;
+    }
+    if (null == args || args.length < 2 || !(args[1] instanceof Key)) {
+      throw new UnsupportedOperationException(method.toString());
+    }
+    roundTrip();
+    final var key = (Key) args[1];
+    switch (method.getName()) {
+      case "get":
+        return get(key, args.length > 2 ? (String[]) args[2] : null);
+      case "put":
+        put((WritePolicy) args[0], key, (Bin[]) args[2]);
+        return null;
+      case "operate":
+        return operate((WritePolicy) args[0], key, (Operation[]) args[2]);
+      case "delete":
+        return null != records.remove(key);
+      default:
+        throw new UnsupportedOperationException(method.toString());
+    }
+  }
+
+  /*
+    Async commands complete on a timer thread once the simulated round trip has passed, so no
+    thread is held while they are in flight, or inline when there is no round trip
+   */
+  private void invokeAsync(Method method, Object[] args) {
+    final var listener = args[1];
+    final var key = (Key) args[3];
+    final Runnable command;
+    switch (method.getName()) {
+      case "get":
+        final var binNames = args.length > 4 ? (String[]) args[4] : null;
+        command = () -> ((RecordListener) listener).onSuccess(key, get(key, binNames));
+        break;
+      case "put":
+        command = () -> {
+          put((WritePolicy) args[2], key, (Bin[]) args[4]);
+          ((WriteListener) listener).onSuccess(key);
+        };
+        break;
+      case "operate":
+        command = () -> ((RecordListener) listener).onSuccess(key,
+            operate((WritePolicy) args[2], key, (Operation[]) args[4]));
+        break;
+      default:
+        throw new UnsupportedOperationException(method.toString());
+    }
+    final Runnable completion = () -> {
+      try {
+        command.run();
+      } catch (AerospikeException e) {
+        if (listener instanceof RecordListener) {
+          ((RecordListener) listener).onFailure(e);
+        } else {
+          ((WriteListener) listener).onFailure(e);
+        }
+      }
+    };
+    if (roundTripNanos > 0) {
+      TIMER.schedule(completion, roundTripNanos, TimeUnit.NANOSECONDS);
+    } else {
+      completion.run();
+    }
+  }
+
+  /**
+   * Event loops for {@link com.grookage.iosave.as.client.AerospikeClient} to hand to the
+   * stand-in, which completes async commands without them
+   */
+  public static EventLoops eventLoops() {
+    return (EventLoops) Proxy.newProxyInstance(
+        EventLoops.class.getClassLoader(),
+        new Class<?>[]{EventLoops.class},
+        (proxy, method, args) -> "getSize".equals(method.getName()) ? 1 : null
+    );
+  }
+
+  private void roundTrip() {
+    if (roundTripNanos > 0) {
+      LockSupport.parkNanos(roundTripNanos);
+    }
+  }
+
+  private Record get(Key key, String[] binNames) {
+    final var stored = records.get(key);
+    if (null == stored) {
+      return null;
+    }
+    if (null == binNames || binNames.length == 0) {
+      return stored.toRecord(stored.bins);
+    }
+    final var bins = new HashMap<String, Object>();
+    for (var binName : binNames) {
+      bins.put(binName, stored.bins.get(binName));
+    }
+    return stored.toRecord(bins);
+  }
+
+  private void put(WritePolicy policy, Key key, Bin[] bins) {
+    final var operations = new Operation[bins.length];
+    for (int i = 0; i < bins.length; i++) {
+      operations[i] = Operation.put(bins[i]);
+    }
+    operate(policy, key, operations);
+  }
+
+  private Record operate(WritePolicy policy, Key key, Operation[] operations) {
+    final var action = null == policy || null == policy.recordExistsAction
+        ? RecordExistsAction.UPDATE : policy.recordExistsAction;
+    final var result = new HashMap<String, Object>();
+    final var updated = records.compute(key, (k, existing) -> {
+      checkPolicy(policy, action, existing);
+      final var bins = null == existing || action == RecordExistsAction.REPLACE
+          || action == RecordExistsAction.REPLACE_ONLY
+          ? new HashMap<String, Object>() : new HashMap<>(existing.bins);
+      var written = false;
+      for (var operation : operations) {
+        switch (operation.type) {
+          case WRITE:
+            final var value = operation.value.getObject();
+            if (null == value) {
+              bins.remove(operation.binName);
+            } else {
+              bins.put(operation.binName, asStored(value));
+            }
+            written = true;
+            break;
+          case ADD:
+            final var current = (Number) bins.getOrDefault(operation.binName, 0L);
+            bins.put(operation.binName,
+                current.longValue() + ((Number) operation.value.getObject()).longValue());
+            written = true;
+            break;
+          case TOUCH:
+            written = true;
+            break;
+          case READ:
+            if (null == operation.binName) {
+              result.putAll(bins);
+            } else {
+              result.put(operation.binName, bins.get(operation.binName));
+            }
+            break;
+          case READ_HEADER:
+            break;
+          default:
+            throw new UnsupportedOperationException(operation.type.name());
+        }
+      }
+      if (null == existing && !written) {
+        return null;
+      }
+      final var generation = null == existing ? 1
+          : existing.generation + (written ? 1 : 0);
+      return new StoredRecord(bins, generation);
+    });
+    if (records.size() > maxRecords) {
+      records.clear();
+    }
+    return null == updated ? null : updated.toRecord(result);
+  }
+
+  /*
+    The server hands integral bins back as longs, irrespective of how they were written
+   */
+  private static Object asStored(Object value) {
+    if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    }
+    return value;
+  }
+
+  private static void checkPolicy(WritePolicy policy, RecordExistsAction action,
+      StoredRecord existing) {
+    if (null == existing) {
+      if (action == RecordExistsAction.UPDATE_ONLY || action == RecordExistsAction.REPLACE_ONLY) {
+        throw new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR);
+      }
+      return;
+    }
+    if (action == RecordExistsAction.CREATE_ONLY) {
+      throw new AerospikeException(ResultCode.KEY_EXISTS_ERROR);
+    }
+    if (null != policy && policy.generationPolicy == GenerationPolicy.EXPECT_GEN_EQUAL
+        && policy.generation != existing.generation) {
+      throw new AerospikeException(ResultCode.GENERATION_ERROR);
+    }
+  }
+
+  @AllArgsConstructor
+  private static class StoredRecord {
+
+    private final Map<String, Object> bins;
+    private final int generation;
+
+    private Record toRecord(Map<String, Object> selected) {
+      return new Record(new HashMap<>(selected), generation, 0);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grookage.iosave.bundle.Inbound;
+import com.grookage.iosave.bundle.InboundFeature;
+import com.grookage.iosave.bundle.InboundMessageFilter;
+import com.grookage.iosave.bundle.RequestBodyMode;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.utils.RequestManager;
+import com.grookage.iosave.core.utils.RequestUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import lombok.SneakyThrows;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the request and response filters of {@link InboundMessageFilter} end to end, against an
+ * in-process aerospike stand-in. The request and response contexts are plain Jersey containers, so
+ * body capture and header handling cost what they cost inside Jetty.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboundMessageFilterBenchmark {
+
+  private static final URI BASE_URI = URI.create("http://localhost:8080/");
+  private static final URI REQUEST_URI = URI.create("http://localhost:8080/v1/test");
+  private static final Configuration CONFIGURATION = new ResourceConfig();
+
+  @Param({"1024", "16384", "262144", "1048576"})
+  private int payloadSize;
+
+  @Param({"BODY", "FINGERPRINT", "FINGERPRINT_AND_BODY"})
+  private RequestBodyMode requestBodyMode;
+
+  private InboundMessageFilter filter;
+  private ObjectMapper mapper;
+  private byte[] requestBody;
+  private JsonNode responseEntity;
+
+  @Setup
+  public void setup() throws IOException {
+    final var payload = BenchmarkFixtures.payload(payloadSize);
+    mapper = BenchmarkFixtures.mapper();
+    final var aerospikeClient = BenchmarkFixtures.aerospikeClient(
+        BenchmarkFixtures.store(payloadSize), mapper);
+    final var repository = BenchmarkFixtures.repository(aerospikeClient);
+    BenchmarkFixtures.seed(repository, payload);
+    filter = InboundFeature.builder()
+        .messageRepository(repository)
+        .build()
+        .filterFor(new BenchmarkResourceInfo(requestBodyMode))
+        .orElseThrow();
+    requestBody = payload.getBytes(StandardCharsets.UTF_8);
+    responseEntity = mapper.readTree(payload);
+  }
+
+  private ContainerRequest request(String requestId) {
+    final var request = new ContainerRequest(BASE_URI, REQUEST_URI, "POST", null,
+        new MapPropertiesDelegate(), CONFIGURATION);
+    request.header("X-REQUEST-ID", requestId);
+    request.header("X-TRACE-ID", "TXN-" + requestId);
+    request.header("Content-Type", MediaType.APPLICATION_JSON);
+    request.setEntityStream(new ByteArrayInputStream(requestBody));
+    return request;
+  }
+
+  private ContainerResponse response(ContainerRequest request) {
+    return new ContainerResponse(request, Response.ok(responseEntity)
+        .type(MediaType.APPLICATION_JSON_TYPE)
+        .build());
+  }
+
+  private Object requestFilter(String requestId) {
+    try {
+      final var request = request(requestId);
+      filter.filter(request);
+      return request;
+    } catch (IOSaveException e) {
+      return e;
+    } finally {
+      RequestManager.endMessageProcessing();
+      RequestUtils.endTransaction();
+    }
+  }
+
+  @Benchmark
+  public Object requestFilterNewId() {
+    return requestFilter(BenchmarkFixtures.newRequestId());
+  }
+
+  @Benchmark
+  public Object requestFilterProcessedId() {
+    return requestFilter(BenchmarkFixtures.PROCESSED_ID);
+  }
+
+  @Benchmark
+  public Object requestFilterFailedId() {
+    return requestFilter(BenchmarkFixtures.FAILED_ID);
+  }
+
+  /*
+    The response is recorded once its entity is written, so the write is part of this
+   */
+  @Benchmark
+  public Object requestAndResponseFilterNewId() throws IOException {
+    final var request = request(BenchmarkFixtures.newRequestId());
+    filter.filter(request);
+    final var response = response(request);
+    filter.filter(request, response);
+    filter.aroundWriteTo(new EntityWriterContext(mapper, request, response));
+    return response;
+  }
+
+  /*
+    A processed id is answered by the request filter, with the stored response
+   */
+  @Benchmark
+  public Object requestAndResponseFilterProcessedId() {
+    final var request = request(BenchmarkFixtures.PROCESSED_ID);
+    filter.filter(request);
+    final var response = new ContainerResponse(request, request.getAbortResponse());
+    filter.filter(request, response);
+    return response;
+  }
+
+  public static class BenchmarkResource {
+
+    @Inbound(saveRequestBody = true)
+    public Response body() {
+      return Response.ok().build();
+    }
+
+    @Inbound(saveRequestBody = true, requestBodyMode = RequestBodyMode.FINGERPRINT)
+    public Response fingerprint() {
+      return Response.ok().build();
+    }
+
+    @Inbound(saveRequestBody = true, requestBodyMode = RequestBodyMode.FINGERPRINT_AND_BODY)
+    public Response fingerprintAndBody() {
+      return Response.ok().build();
+    }
+  }
+
+  private static class BenchmarkResourceInfo implements ResourceInfo {
+
+    private final Method resourceMethod;
+
+    private BenchmarkResourceInfo(RequestBodyMode requestBodyMode) {
+      this.resourceMethod = resourceMethod(requestBodyMode);
+    }
+
+    @SneakyThrows
+    private static Method resourceMethod(RequestBodyMode requestBodyMode) {
+      switch (requestBodyMode) {
+        case FINGERPRINT:
+          return BenchmarkResource.class.getMethod("fingerprint");
+        case FINGERPRINT_AND_BODY:
+          return BenchmarkResource.class.getMethod("fingerprintAndBody");
+        default:
+          return BenchmarkResource.class.getMethod("body");
+      }
+    }
+
+    @Override
+    public Method getResourceMethod() {
+      return resourceMethod;
+    }
+
+    @Override
+    public Class<?> getResourceClass() {
+      return BenchmarkResource.class;
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.benchmarks;
+
+import com.grookage.iosave.as.cache.RequestNearCache;
+import com.grookage.iosave.as.config.NearCacheConfig;
+import com.grookage.iosave.as.config.RecordLayout;
+import com.grookage.iosave.as.repository.ASRequestRepository;
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.config.RequestReceiverConfig;
+import com.grookage.iosave.core.config.WriteBehindConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.repository.InMemoryRequestRepository;
+import com.grookage.iosave.core.repository.RequestRepository;
+import com.grookage.iosave.core.repository.WriteBehindRequestRepository;
+import com.grookage.iosave.core.services.RequestReceiverService;
+import com.grookage.iosave.jdbc.config.JdbcRepositoryConfig;
+import com.grookage.iosave.jdbc.repository.JdbcRequestRepository;
+import com.grookage.iosave.jdbc.utils.DataSourceUtils;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link RequestReceiverService#preHandle(RequestEntity)} and
+ * {@link RequestReceiverService#postHandle(RequestEntity)} against the aerospike repository, with
+ * its near cache, in its multi bin layout and behind write behind, and against the in memory
+ * repository and against the JDBC repository on an in memory H2 database, for a new request id,
+ * a duplicate of a processed id and a duplicate of a failed id.
+ * Set {@code storeRoundTripMicros} to see what the number of store round trips on each path costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestReceiverServiceBenchmark {
+
+  @Param({"1024", "16384", "262144", "1048576"})
+  private int payloadSize;
+
+  @Param({"AEROSPIKE", "AEROSPIKE_NEAR_CACHE", "AEROSPIKE_MULTI_BIN", "AEROSPIKE_WRITE_BEHIND",
+      "IN_MEMORY", "JDBC"})
+  private String repositoryType;
+
+  @Param({"false", "true"})
+  private boolean claimFirst;
+
+  @Param({"0"})
+  private long storeRoundTripMicros;
+
+  private RequestReceiverService requestReceiverService;
+  private WriteBehindRequestRepository writeBehindRepository;
+  private HikariDataSource dataSource;
+  private String payload;
+
+  @Setup
+  public void setup() {
+    payload = BenchmarkFixtures.payload(payloadSize);
+    final var repository = repository();
+    BenchmarkFixtures.seed(repository, payload);
+    requestReceiverService = new RequestReceiverService(repository,
+        RequestReceiverConfig.builder().claimFirst(claimFirst).build());
+  }
+
+  private RequestRepository repository() {
+    if ("IN_MEMORY".equals(repositoryType)) {
+      return new InMemoryRequestRepository(InMemoryRepositoryConfig.builder()
+          .maxEntries(Math.max(16, 64 * 1024 * 1024 / payloadSize))
+          .build());
+    }
+    if ("JDBC".equals(repositoryType)) {
+      return jdbcRepository();
+    }
+    final var aerospikeClient = BenchmarkFixtures.aerospikeClient(
+        BenchmarkFixtures.store(payloadSize, storeRoundTripMicros), BenchmarkFixtures.mapper());
+    if ("AEROSPIKE_NEAR_CACHE".equals(repositoryType)) {
+      return ASRequestRepository.builder()
+          .aerospikeClient(aerospikeClient)
+          .nearCache(new RequestNearCache(NearCacheConfig.builder().enabled(true).build(), 0))
+          .build();
+    }
+    if ("AEROSPIKE_WRITE_BEHIND".equals(repositoryType)) {
+      writeBehindRepository = new WriteBehindRequestRepository(
+          BenchmarkFixtures.repository(aerospikeClient),
+          WriteBehindConfig.builder().enabled(true).build());
+      writeBehindRepository.start();
+      return writeBehindRepository;
+    }
+    if ("AEROSPIKE_MULTI_BIN".equals(repositoryType)) {
+      return ASRequestRepository.builder()
+          .aerospikeClient(aerospikeClient)
+          .recordLayout(RecordLayout.MULTI_BIN)
+          .build();
+    }
+    return BenchmarkFixtures.repository(aerospikeClient);
+  }
+
+  private RequestRepository jdbcRepository() {
+    final var config = JdbcRepositoryConfig.builder()
+        .jdbcUrl("jdbc:h2:mem:iosave-" + payloadSize + "-" + claimFirst)
+        .createTable(true)
+        .ttl(0)
+        .build();
+    dataSource = DataSourceUtils.provideDataSource(config);
+    return new JdbcRequestRepository(dataSource, config, BenchmarkFixtures.mapper());
+  }
+
+  /*
+    Deletes the new ids an iteration wrote, so the in memory database stays small however many
+    are written
+   */
+  @TearDown(Level.Iteration)
+  public void deleteNewIds() throws SQLException {
+    if (null == dataSource) {
+      return;
+    }
+    try (var connection = dataSource.getConnection();
+        var statement = connection.prepareStatement(
+            "DELETE FROM iosave_requests WHERE request_id LIKE 'request-%'")) {
+      statement.executeUpdate();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    if (null != writeBehindRepository) {
+      writeBehindRepository.stop();
+    }
+    if (null != dataSource) {
+      dataSource.close();
+    }
+  }
+
+  private Object preHandle(String requestId) {
+    try {
+      return requestReceiverService.preHandle(BenchmarkFixtures.incoming(requestId, payload));
+    } catch (IOSaveException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public Object preHandleNewId() {
+    return preHandle(BenchmarkFixtures.newRequestId());
+  }
+
+  @Benchmark
+  public Object preHandleProcessedId() {
+    return preHandle(BenchmarkFixtures.PROCESSED_ID);
+  }
+
+  @Benchmark
+  public Object preHandleFailedId() {
+    return preHandle(BenchmarkFixtures.FAILED_ID);
+  }
+
+  @Benchmark
+  public RequestEntity preAndPostHandleNewId() {
+    final var requestId = BenchmarkFixtures.newRequestId();
+    final var created = requestReceiverService.preHandle(
+        BenchmarkFixtures.incoming(requestId, payload));
+    requestReceiverService.postHandle(BenchmarkFixtures.completed(requestId, payload, 200));
+    return created;
+  }
+}
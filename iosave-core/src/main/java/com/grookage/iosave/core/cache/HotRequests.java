@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.grookage.iosave.core.config.HotRequestsConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.repository.RequestRepository;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps a client retrying one request id in a loop off that id's record. A duplicate answered
+ * from the store leaves its entity here for {@code windowMillis}, and the duplicates after it are
+ * answered with that copy. Only {@link RequestStatus#PROCESSED} and {@link RequestStatus#FAILED}
+ * entities are kept, they are answered the same way for as long as they are stored. Duplicate
+ * counts are gathered per id and written every {@code flushIntervalMillis}, one increment per id,
+ * instead of an increment per duplicate.
+ * <p>
+ * Counts are flushed from a daemon thread started with the instance, {@link #stop()} writes what
+ * is left.
+ */
+@Slf4j
+public class HotRequests {
+
+  private final RequestRepository requestRepository;
+  private final Cache<String, RequestEntity> answered;
+  private final Map<String, Integer> pendingCounts = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService flusher;
+
+  public HotRequests(final HotRequestsConfig config, final RequestRepository requestRepository) {
+    this.requestRepository = requestRepository;
+    this.answered = Caffeine.newBuilder()
+        .maximumSize(config.getMaxEntries())
+        .expireAfterWrite(config.getWindowMillis(), TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build();
+    this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final var thread = new Thread(runnable, "iosave-hot-requests");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flusher.scheduleWithFixedDelay(this::flush, config.getFlushIntervalMillis(),
+        config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A copy of the entity a duplicate of the id was last answered with, within the window
+   */
+  public Optional<RequestEntity> get(String requestId) {
+    return Optional.ofNullable(answered.getIfPresent(requestId))
+        .map(requestEntity -> requestEntity.toBuilder().build());
+  }
+
+  /**
+   * Keeps the entity a duplicate is being answered with, if it won't change
+   */
+  public void offer(RequestEntity requestEntity) {
+    if (requestEntity.getProcessed() == RequestStatus.PROCESSED
+        || requestEntity.getProcessed() == RequestStatus.FAILED) {
+      answered.put(requestEntity.getRequestId(), requestEntity.toBuilder().build());
+    }
+  }
+
+  public void countDuplicate(String requestId) {
+    pendingCounts.merge(requestId, 1, Integer::sum);
+  }
+
+  /*
+    An id's count is removed whole before it is written, a duplicate counted meanwhile starts a new
+    count for the next flush
+   */
+  public void flush() {
+    for (final var requestId : pendingCounts.keySet()) {
+      final var count = pendingCounts.remove(requestId);
+      if (null == count) {
+        continue;
+      }
+      try {
+        requestRepository.incrementDuplicateRequestCount(requestId, count);
+      } catch (RuntimeException e) {
+        log.error("Can't increment the duplicate request count of messageId {}", requestId, e);
+      }
+    }
+  }
+
+  public void stop() throws InterruptedException {
+    flusher.shutdown();
+    flusher.awaitTermination(1, TimeUnit.MINUTES);
+    flush();
+  }
+
+  /**
+   * Duplicates answered from this node
+   */
+  public long localAnswers() {
+    return answered.stats().hitCount();
+  }
+
+  /**
+   * Ids with duplicate counts yet to be written
+   */
+  public int pendingIds() {
+    return pendingCounts.size();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.cache;
+
+import com.grookage.iosave.core.config.RecentRequestsConfig;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A node local Bloom filter of the request ids seen in the last window or two. An id it has never
+ * had is told apart for certain, an id it has had might be taken for another one now and then. It
+ * only knows ids seen on this node, so an id it doesn't know may still be stored, and is claimed
+ * with a create only write that finds it then.
+ * <p>
+ * Ids are recorded in the current of two filters and looked for in both. Every
+ * {@code windowSeconds} the older filter is dropped and an empty one takes the current one's place.
+ */
+public class RecentRequestFilter {
+
+  private static final double LN2 = Math.log(2);
+
+  private final int words;
+  private final int hashes;
+  private final long windowNanos;
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder skippedLookups = new LongAdder();
+  private volatile AtomicLongArray current;
+  private volatile AtomicLongArray previous;
+  private volatile long rotateAt;
+
+  public RecentRequestFilter(RecentRequestsConfig config) {
+    final var expected = Math.max(1, config.getExpectedRequests());
+    final var bits = Math.ceil(-expected * Math.log(config.getFalsePositiveRate()) / (LN2 * LN2));
+    this.words = (int) Math.max(1, Math.ceil(bits / Long.SIZE));
+    this.hashes = (int) Math.max(1, Math.round((double) words * Long.SIZE / expected * LN2));
+    this.windowNanos = TimeUnit.SECONDS.toNanos(config.getWindowSeconds());
+    this.current = new AtomicLongArray(words);
+    this.previous = new AtomicLongArray(words);
+    this.rotateAt = System.nanoTime() + windowNanos;
+  }
+
+  /*
+    FNV-1a over the chars, finished with murmur3's mix so that every bit of the hash depends on
+    every char
+   */
+  private static long mix(long hash) {
+    hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+    hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  private static long hash(String requestId) {
+    var hash = 0xcbf29ce484222325L;
+    for (var i = 0; i < requestId.length(); i++) {
+      hash = (hash ^ requestId.charAt(i)) * 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private long bit(long hash, long step, int i) {
+    return Long.remainderUnsigned(hash + i * step, (long) words * Long.SIZE);
+  }
+
+  /*
+    Sets the id's bits, returning whether any was unset
+   */
+  private boolean put(AtomicLongArray filter, long hash, long step) {
+    var changed = false;
+    for (var i = 0; i < hashes; i++) {
+      final var bit = bit(hash, step, i);
+      final var mask = 1L << bit;
+      final var word = (int) (bit >>> 6);
+      final var was = filter.getAndAccumulate(word, mask, (value, set) -> value | set);
+      changed |= 0 == (was & mask);
+    }
+    return changed;
+  }
+
+  private boolean mightContain(AtomicLongArray filter, long hash, long step) {
+    for (var i = 0; i < hashes; i++) {
+      final var bit = bit(hash, step, i);
+      if (0 == (filter.get((int) (bit >>> 6)) & (1L << bit))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+    A filter idle for a whole window past its rotation has nothing worth keeping
+   */
+  private void rotateIfDue() {
+    final var now = System.nanoTime();
+    if (now - rotateAt < 0) {
+      return;
+    }
+    synchronized (this) {
+      if (now - rotateAt < 0) {
+        return;
+      }
+      previous = now - rotateAt < windowNanos ? current : new AtomicLongArray(words);
+      current = new AtomicLongArray(words);
+      rotateAt = now + windowNanos;
+    }
+  }
+
+  /**
+   * Records the request id, returning true when it certainly wasn't seen in the last window or two,
+   * and false when it might have been
+   */
+  public boolean add(String requestId) {
+    rotateIfDue();
+    final var hash = hash(requestId);
+    final var step = mix(hash) | 1;
+    final var unseen = put(current, hash, step) && !mightContain(previous, hash, step);
+    (unseen ? skippedLookups : lookups).increment();
+    return unseen;
+  }
+
+  /**
+   * Ids taken for seen, and looked up
+   */
+  public long lookups() {
+    return lookups.sum();
+  }
+
+  /**
+   * Ids known to be unseen, claimed without a lookup
+   */
+  public long skippedLookups() {
+    return skippedLookups.sum();
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.config;
+
+/**
+ * What a completion does when the write behind queue is full
+ */
+public enum BackpressurePolicy {
+
+  /*
+    Wait for the workers to make room, async callers included
+   */
+  BLOCK,
+
+  /*
+    Write it on the calling thread, as if write behind were off
+   */
+  DROP_TO_SYNC,
+
+  /*
+    Fail it with WRITE_BEHIND_QUEUE_FULL
+   */
+  REJECT
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HotRequestsConfig {
+
+  private boolean enabled;
+  /*
+    How long a duplicate answered from the store answers the duplicates after it, from this node
+   */
+  @Builder.Default
+  private long windowMillis = 1_000;
+  @Builder.Default
+  private long maxEntries = 10_000;
+  /*
+    How often duplicate counts gathered on this node are written, one increment per request id
+   */
+  @Builder.Default
+  private long flushIntervalMillis = 1_000;
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RecentRequestsConfig {
+
+  private boolean enabled;
+  /*
+    Request ids expected per window, the filter is sized for its false positive rate at this many
+   */
+  @Builder.Default
+  private int expectedRequests = 1_000_000;
+  /*
+    Share of ids never seen that the filter takes for seen, and looks up in the store anyway
+   */
+  @Builder.Default
+  private double falsePositiveRate = 0.01;
+  /*
+    Ids are remembered for between one and two windows after they were last seen
+   */
+  @Builder.Default
+  private int windowSeconds = 600;
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RequestReceiverConfig {
+
+  /*
+    Claim the request id with a create only write first, and only read the stored entity when the
+    id already exists. One round trip for a new id instead of a read followed by a write.
+   */
+  private boolean claimFirst;
+  /*
+    Without claimFirst, claim the ids this node certainly hasn't seen recently first, and only look
+    up the rest before claiming them, see RecentRequestFilter
+   */
+  @Builder.Default
+  private RecentRequestsConfig recentRequests = new RecentRequestsConfig();
+  /*
+    Write responses from background workers instead of before the response is released, see
+    WriteBehindRequestRepository
+   */
+  @Builder.Default
+  private WriteBehindConfig writeBehind = new WriteBehindConfig();
+  /*
+    Park duplicates of a request in flight on this node until it completes, and answer them with
+    its response
+   */
+  @Builder.Default
+  private SingleFlightConfig singleFlight = new SingleFlightConfig();
+  /*
+    Have a duplicate of a request in flight, on any node, poll the store until the request
+    completes, and answer it with the request's response
+   */
+  @Builder.Default
+  private InFlightWaitConfig inFlightWait = new InFlightWaitConfig();
+  /*
+    Claim requests in flight for a while only, so that one whose node went away can be taken over
+    once its lease expires
+   */
+  @Builder.Default
+  private LeaseConfig lease = new LeaseConfig();
+  /*
+    Answer duplicates of an id answered moments ago from this node, and write their counts
+    together, so that a client retrying one id in a loop doesn't make a hot key of its record
+   */
+  @Builder.Default
+  private HotRequestsConfig hotRequests = new HotRequestsConfig();
+}
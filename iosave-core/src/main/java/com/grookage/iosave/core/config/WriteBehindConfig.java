@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class WriteBehindConfig {
+
+  private boolean enabled;
+  @Builder.Default
+  private int queueSize = 10_000;
+  @Builder.Default
+  private int workers = 2;
+  @Builder.Default
+  private int batchSize = 64;
+  /*
+    How long an idle worker waits before looking at the queue again
+   */
+  @Builder.Default
+  private long idleWaitMicros = 500;
+  @Builder.Default
+  private BackpressurePolicy backpressure = BackpressurePolicy.BLOCK;
+  /*
+    Times a completion the store fails to write is queued again before it is given up on, and how
+    long a worker waits after a batch that failed before it writes the next one
+   */
+  @Builder.Default
+  private int maxRetries = 3;
+  @Builder.Default
+  private long retryBackoffMillis = 100;
+  /*
+    How long shutdown waits for the queue to drain
+   */
+  @Builder.Default
+  private int shutdownTimeoutSeconds = 30;
+}
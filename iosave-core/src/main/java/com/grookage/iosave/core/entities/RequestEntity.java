@@ -15,7 +15,16 @@
  */
 package com.grookage.iosave.core.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.grookage.iosave.core.utils.ResponseHeadersDeserializer;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -24,22 +33,52 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @SuppressWarnings("unused")
 public class RequestEntity {
 
+  /**
+   * The {@code responseBodyEncoding} of a body held as base64
+   */
+  public static final String BASE64 = "base64";
+  /**
+   * The {@code responseBodyEncoding} of a response too large to be stored, which can't be replayed
+   */
+  public static final String TRUNCATED = "truncated";
+
   protected String requestId;
   protected String traceId;
   protected String requestBody;
+  /*
+    Base64 SHA-256 of the request body, duplicates with a different body are rejected
+   */
+  protected String requestFingerprint;
   protected Date createdAt;
   protected Date processedAt;
   protected Date updatedAt;
   protected RequestStatus processed = RequestStatus.PROCESSING;
   protected int retryCount = 0;
   protected int responseStatus;
-  protected String responseHeaders;
+  @JsonDeserialize(using = ResponseHeadersDeserializer.class)
+  protected Map<String, String> responseHeaders;
   protected String responseBody;
+  /*
+    Null when responseBody is the response's bytes as UTF-8 text, BASE64 when they weren't valid
+    UTF-8 and are held base64 encoded, TRUNCATED when the body was too large to be held at all
+   */
+  protected String responseBodyEncoding;
   protected int duplicateRequestCount = 0;
+  /*
+    Who is handling the request while it is in flight, and until when, unless leases are off
+   */
+  protected String leaseOwner;
+  protected Date leaseExpiresAt;
+  /*
+    The store's version of the entity as of when it was read, checked by saveIfUnchanged. Not
+    part of what is stored.
+   */
+  @JsonIgnore
+  protected int generation;
 
 
   public RequestEntity(RequestEntity requestEntity) {
@@ -48,9 +87,13 @@ public class RequestEntity {
     this.updatedAt = requestEntity.getUpdatedAt();
     this.traceId = requestEntity.getTraceId();
     this.responseBody = requestEntity.getResponseBody();
+    this.responseBodyEncoding = requestEntity.getResponseBodyEncoding();
     this.responseHeaders = requestEntity.getResponseHeaders();
     this.requestBody = requestEntity.getRequestBody();
+    this.requestFingerprint = requestEntity.getRequestFingerprint();
     this.responseStatus = requestEntity.getResponseStatus();
+    this.leaseOwner = requestEntity.getLeaseOwner();
+    this.leaseExpiresAt = requestEntity.getLeaseExpiresAt();
   }
 
   public void loadFromMessage(RequestEntity requestEntity) {
@@ -58,11 +101,13 @@ public class RequestEntity {
     setRetryCount(requestEntity.getRetryCount());
     setResponseStatus(requestEntity.getResponseStatus());
     setResponseBody(requestEntity.getResponseBody());
+    setResponseBodyEncoding(requestEntity.getResponseBodyEncoding());
     setResponseHeaders(requestEntity.getResponseHeaders());
     setProcessed(requestEntity.getProcessed());
     setProcessedAt(requestEntity.getProcessedAt());
     setDuplicateRequestCount(requestEntity.getDuplicateRequestCount());
     setRequestBody(requestEntity.getRequestBody());
+    setRequestFingerprint(requestEntity.getRequestFingerprint());
 
     if (requestEntity.getCreatedAt() != null) {
       setCreatedAt(requestEntity.getCreatedAt());
@@ -73,6 +118,76 @@ public class RequestEntity {
     }
   }
 
+  public void loadResponseFromMessage(RequestEntity requestEntity) {
+    setResponseStatus(requestEntity.getResponseStatus());
+    setResponseBody(requestEntity.getResponseBody());
+    setResponseBodyEncoding(requestEntity.getResponseBodyEncoding());
+    setResponseHeaders(requestEntity.getResponseHeaders());
+    setProcessed(requestEntity.getProcessed());
+    setProcessedAt(requestEntity.getProcessedAt());
+  }
+
+  /*
+    In flight under a lease that has run out, free to be taken over
+   */
+  @JsonIgnore
+  public boolean isLeaseExpired() {
+    return processed == RequestStatus.PROCESSING && null != leaseExpiresAt
+        && leaseExpiresAt.getTime() <= System.currentTimeMillis();
+  }
+
+  /**
+   * Holds the response's bytes as they are. Bytes that are valid UTF-8 are held as the text they
+   * decode to, which encodes back to the same bytes, any others base64 encoded. No charset is
+   * assumed for the response.
+   */
+  public void encodeResponseBody(byte[] body) {
+    if (null == body) {
+      setResponseBody(null);
+      setResponseBodyEncoding(null);
+      return;
+    }
+    try {
+      setResponseBody(StandardCharsets.UTF_8.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT)
+          .decode(ByteBuffer.wrap(body))
+          .toString());
+      setResponseBodyEncoding(null);
+    } catch (CharacterCodingException e) {
+      setResponseBody(Base64.getEncoder().encodeToString(body));
+      setResponseBodyEncoding(BASE64);
+    }
+  }
+
+  /**
+   * The response's bytes, as {@link #encodeResponseBody(byte[])} was given them
+   */
+  public byte[] decodeResponseBody() {
+    if (null == responseBody) {
+      return null;
+    }
+    return BASE64.equals(responseBodyEncoding) ? Base64.getDecoder().decode(responseBody)
+        : responseBody.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Records that the response was sent but its body was too large to be held, so that it isn't
+   * replayed without one
+   */
+  public void truncateResponseBody() {
+    setResponseBody(null);
+    setResponseBodyEncoding(TRUNCATED);
+  }
+
+  /*
+    Whether the response is held whole, a truncated one can't be sent again
+   */
+  @JsonIgnore
+  public boolean isResponseReplayable() {
+    return !TRUNCATED.equals(responseBodyEncoding);
+  }
+
   public void incrementDuplicateRequestCount() {
     this.duplicateRequestCount += 1;
   }
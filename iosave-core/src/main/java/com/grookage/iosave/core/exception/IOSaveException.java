@@ -21,6 +21,7 @@ import java.util.Map;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+@Getter
 @SuppressWarnings("unused")
 public class IOSaveException extends RuntimeException {
 
@@ -63,7 +64,15 @@ public class IOSaveException extends RuntimeException {
 
     BAD_REQUEST(400),
 
-    DUPLICATE_MESSAGE(417);
+    DUPLICATE_MESSAGE(417),
+
+    UPDATE_CONFLICT(409),
+
+    WRITE_BEHIND_QUEUE_FULL(503),
+
+    REQUEST_FINGERPRINT_MISMATCH(422),
+
+    STORE_ERROR(500);
 
     int responseCode;
   }
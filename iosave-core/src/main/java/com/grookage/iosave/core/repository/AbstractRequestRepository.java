@@ -16,25 +16,178 @@
 package com.grookage.iosave.core.repository;
 
 import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.exception.IOSaveException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public abstract class AbstractRequestRepository implements RequestRepository {
 
+  private static final int MAX_UPDATE_ATTEMPTS = 5;
+  private static final long BASE_BACKOFF_MICROS = 500;
+  private static final long MAX_BACKOFF_MICROS = 20_000;
+
+  protected static IOSaveException entityNotFound(String messageId) {
+    log.error("inbound message not found for messageId: {}", messageId);
+    return IOSaveException.error(
+        IOSaveException.ErrorCode.ENTITY_NOT_FOUND,
+        Map.of("cause", String
+            .format("inbound message not found for messageId: %s", messageId)));
+  }
+
+  private static IOSaveException updateConflict(String messageId) {
+    log.error("inbound message kept changing while being updated, messageId: {}", messageId);
+    return IOSaveException.error(
+        IOSaveException.ErrorCode.UPDATE_CONFLICT,
+        Map.of("cause", String
+            .format("inbound message kept changing while being updated, messageId: %s",
+                messageId)));
+  }
+
+  /*
+    Exponential, with jitter so that nodes that collided once don't collide again
+   */
+  private static long backoffNanos(int attempt) {
+    final var ceiling = Math.min(MAX_BACKOFF_MICROS, BASE_BACKOFF_MICROS << (attempt - 1));
+    return TimeUnit.MICROSECONDS.toNanos(
+        ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+  }
+
+  /**
+   * The read an update starts from. Stores that cache reads must go to the store here, a cached
+   * generation that is behind would conflict on every attempt.
+   */
+  protected Optional<RequestEntity> findForUpdate(final String messageId) {
+    return findByMessageId(messageId);
+  }
+
+  protected CompletableFuture<Optional<RequestEntity>> findForUpdateAsync(
+      final String messageId) {
+    return findByMessageIdAsync(messageId);
+  }
+
+  /**
+   * Reads the entity, applies the change and writes it back with
+   * {@link #saveIfUnchanged(RequestEntity)}, reading again after a backoff when something else
+   * wrote it in between. Returns false if there is no entity, fails with UPDATE_CONFLICT when
+   * every attempt conflicts.
+   */
+  protected boolean updateWithRetries(final String messageId,
+      final Consumer<RequestEntity> change) {
+    for (int attempt = 1; ; attempt++) {
+      final var stored = findForUpdate(messageId);
+      if (stored.isEmpty()) {
+        return false;
+      }
+      change.accept(stored.get());
+      if (saveIfUnchanged(stored.get())) {
+        return true;
+      }
+      if (attempt >= MAX_UPDATE_ATTEMPTS) {
+        throw updateConflict(messageId);
+      }
+      LockSupport.parkNanos(backoffNanos(attempt));
+    }
+  }
+
+  protected CompletableFuture<Boolean> updateWithRetriesAsync(final String messageId,
+      final Consumer<RequestEntity> change) {
+    return updateWithRetriesAsync(messageId, change, 1);
+  }
+
+  private CompletableFuture<Boolean> updateWithRetriesAsync(final String messageId,
+      final Consumer<RequestEntity> change, final int attempt) {
+    return findForUpdateAsync(messageId).thenCompose(stored -> {
+      if (stored.isEmpty()) {
+        return CompletableFuture.completedFuture(false);
+      }
+      change.accept(stored.get());
+      return saveIfUnchangedAsync(stored.get()).thenCompose(saved -> {
+        if (Boolean.TRUE.equals(saved)) {
+          return CompletableFuture.completedFuture(true);
+        }
+        if (attempt >= MAX_UPDATE_ATTEMPTS) {
+          return CompletableFuture.failedFuture(updateConflict(messageId));
+        }
+        final var backoff = CompletableFuture.delayedExecutor(backoffNanos(attempt),
+            TimeUnit.NANOSECONDS);
+        return CompletableFuture.supplyAsync(() -> attempt + 1, backoff)
+            .thenCompose(next -> updateWithRetriesAsync(messageId, change, next));
+      });
+    });
+  }
+
   @Override
   public void update(final RequestEntity requestEntity) {
     try {
-      final var optionalEntity = findByMessageId(requestEntity.getRequestId());
-      if (optionalEntity.isEmpty()) {
+      final var updated = updateWithRetries(requestEntity.getRequestId(),
+          inboundEntity -> inboundEntity.loadFromMessage(requestEntity));
+      if (!updated) {
         strictSave(requestEntity);
-        return;
       }
-      final var inboundEntity = optionalEntity.get();
-      inboundEntity.loadFromMessage(requestEntity);
-      save(inboundEntity);
     } catch (Exception e) {
       log.error(
           "Can't persist the inbound entity into aerospike. Possible duplicates might creep in");
     }
   }
+
+  /*
+    strictSave is expected to fail with DUPLICATE_MESSAGE when the id exists, the read only
+    happens then
+   */
+  @Override
+  public Optional<RequestEntity> claim(final RequestEntity requestEntity) {
+    try {
+      strictSave(requestEntity);
+      return Optional.empty();
+    } catch (IOSaveException e) {
+      if (e.getErrorCode() != IOSaveException.ErrorCode.DUPLICATE_MESSAGE) {
+        throw e;
+      }
+      final var existing = findByMessageId(requestEntity.getRequestId());
+      if (existing.isEmpty()) {
+        //Expired or deleted since, there is no telling whether it was processed
+        throw e;
+      }
+      return existing;
+    }
+  }
+
+  @Override
+  public void incrementDuplicateRequestCount(final String messageId, final int count) {
+    updateWithRetries(messageId, inboundEntity -> inboundEntity
+        .setDuplicateRequestCount(inboundEntity.getDuplicateRequestCount() + count));
+  }
+
+  @Override
+  public void complete(final RequestEntity requestEntity) {
+    final var updated = updateWithRetries(requestEntity.getRequestId(),
+        inboundEntity -> inboundEntity.loadResponseFromMessage(requestEntity));
+    if (!updated) {
+      throw entityNotFound(requestEntity.getRequestId());
+    }
+  }
+
+  @Override
+  public List<RequestEntity> completeAll(final List<RequestEntity> requestEntities) {
+    final var failed = new ArrayList<RequestEntity>();
+    requestEntities.forEach(requestEntity -> {
+      try {
+        complete(requestEntity);
+      } catch (Exception e) {
+        log.error("Can't complete the inbound entity with messageId {}",
+            requestEntity.getRequestId(), e);
+        failed.add(requestEntity);
+      }
+    });
+    return failed;
+  }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.repository;
+
+import com.grookage.iosave.core.entities.RequestEntity;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non blocking variant of {@link RequestRepository}, each method behaving as its synchronous
+ * namesake does, failing the returned future where that one would throw. Futures may complete on
+ * the store client's I/O threads, so whatever is chained onto them mustn't block.
+ */
+public interface AsyncRequestRepository {
+
+  CompletableFuture<Optional<RequestEntity>> findByMessageIdAsync(String messageId);
+
+  CompletableFuture<Void> strictSaveAsync(RequestEntity requestEntity);
+
+  CompletableFuture<Void> saveAsync(RequestEntity requestEntity);
+
+  CompletableFuture<Boolean> saveIfUnchangedAsync(RequestEntity requestEntity);
+
+  CompletableFuture<Optional<RequestEntity>> claimAsync(RequestEntity requestEntity);
+
+  CompletableFuture<Void> incrementDuplicateRequestCountAsync(String messageId, int count);
+
+  CompletableFuture<Void> completeAsync(RequestEntity requestEntity);
+}
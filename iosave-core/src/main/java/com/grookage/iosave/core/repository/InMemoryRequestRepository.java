@@ -0,0 +1,134 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.exception.IOSaveException;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A per node {@link RequestRepository}, for single instance services, local development and tests.
+ * Request ids are remembered for {@code ttl} seconds after their last write, and at most
+ * {@code maxEntries} are kept, the least valuable being evicted first (W-TinyLFU). Entities are
+ * copied on the way in and out, so callers mutating what they read never change what is stored.
+ */
+@Slf4j
+public class InMemoryRequestRepository extends AbstractRequestRepository {
+
+  private final Cache<String, RequestEntity> entities;
+
+  public InMemoryRequestRepository(final InMemoryRepositoryConfig config) {
+    final var builder = Caffeine.newBuilder()
+        .maximumSize(config.getMaxEntries())
+        .scheduler(Scheduler.systemScheduler());
+    if (config.getTtl() > 0) {
+      builder.expireAfterWrite(config.getTtl(), TimeUnit.SECONDS);
+    }
+    this.entities = builder.build();
+  }
+
+  private static RequestEntity copyOf(RequestEntity requestEntity) {
+    return requestEntity.toBuilder().build();
+  }
+
+  /*
+    Every write bumps the generation, as a store's record version would
+   */
+  private static RequestEntity nextGeneration(RequestEntity requestEntity, RequestEntity stored) {
+    final var next = copyOf(requestEntity);
+    next.setGeneration(null == stored ? 1 : stored.getGeneration() + 1);
+    return next;
+  }
+
+  @Override
+  public boolean connected() {
+    return true;
+  }
+
+  @Override
+  public Optional<RequestEntity> findByMessageId(String messageId) {
+    return Optional.ofNullable(entities.getIfPresent(messageId))
+        .map(InMemoryRequestRepository::copyOf);
+  }
+
+  @Override
+  public void strictSave(RequestEntity requestEntity) {
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    final var existing = entities.asMap()
+        .putIfAbsent(requestEntity.getRequestId(), nextGeneration(requestEntity, null));
+    if (null != existing) {
+      throw IOSaveException.error(IOSaveException.ErrorCode.DUPLICATE_MESSAGE);
+    }
+  }
+
+  @Override
+  public Optional<RequestEntity> claim(RequestEntity requestEntity) {
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    return Optional.ofNullable(entities.asMap()
+            .putIfAbsent(requestEntity.getRequestId(), nextGeneration(requestEntity, null)))
+        .map(InMemoryRequestRepository::copyOf);
+  }
+
+  @Override
+  public void incrementDuplicateRequestCount(String messageId, int count) {
+    entities.asMap().computeIfPresent(messageId, (id, stored) -> {
+      final var updated = nextGeneration(stored, stored);
+      updated.setDuplicateRequestCount(stored.getDuplicateRequestCount() + count);
+      updated.setUpdatedAt(new Date(System.currentTimeMillis()));
+      return updated;
+    });
+  }
+
+  @Override
+  public void complete(RequestEntity requestEntity) {
+    final var completed = entities.asMap()
+        .computeIfPresent(requestEntity.getRequestId(), (id, stored) -> {
+          final var updated = nextGeneration(stored, stored);
+          updated.loadResponseFromMessage(requestEntity);
+          updated.setUpdatedAt(new Date(System.currentTimeMillis()));
+          return updated;
+        });
+    if (null == completed) {
+      throw entityNotFound(requestEntity.getRequestId());
+    }
+  }
+
+  @Override
+  public void save(RequestEntity requestEntity) {
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    entities.asMap().compute(requestEntity.getRequestId(),
+        (id, stored) -> nextGeneration(requestEntity, stored));
+  }
+
+  @Override
+  public boolean saveIfUnchanged(RequestEntity requestEntity) {
+    final var stored = entities.getIfPresent(requestEntity.getRequestId());
+    if (null == stored || stored.getGeneration() != requestEntity.getGeneration()) {
+      return false;
+    }
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    //Replaces only if still the very entity read above, equals short circuits on identity
+    return entities.asMap().replace(requestEntity.getRequestId(), stored,
+        nextGeneration(requestEntity, stored));
+  }
+}
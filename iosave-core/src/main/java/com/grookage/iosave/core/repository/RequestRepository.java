@@ -17,9 +17,32 @@ package com.grookage.iosave.core.repository;
 
 
 import com.grookage.iosave.core.entities.RequestEntity;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
-public interface RequestRepository {
+/**
+ * The async methods default to running their synchronous namesakes on the calling thread, which is
+ * right for stores that never block, like the in memory one. Stores with an async client override
+ * them.
+ */
+public interface RequestRepository extends AsyncRequestRepository {
+
+  private static <T> CompletableFuture<T> inline(Supplier<T> supplier) {
+    try {
+      return CompletableFuture.completedFuture(supplier.get());
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private static CompletableFuture<Void> inline(Runnable runnable) {
+    return inline(() -> {
+      runnable.run();
+      return null;
+    });
+  }
 
   boolean connected();
 
@@ -29,5 +52,72 @@ public interface RequestRepository {
 
   void save(RequestEntity requestEntity);
 
+  /**
+   * Replaces the stored entity only if it hasn't been written since it was read, going by the
+   * entity's generation. Returns false, writing nothing, when it has or when it no longer exists.
+   */
+  boolean saveIfUnchanged(RequestEntity requestEntity);
+
   void update(RequestEntity requestEntity);
+
+  /**
+   * Creates the entity if no entity with its id exists, in a single write where the store allows
+   * for it. Returns empty when the entity was created, or the existing entity, which is left
+   * untouched, otherwise.
+   */
+  Optional<RequestEntity> claim(RequestEntity requestEntity);
+
+  /**
+   * Adds {@code count} to the duplicate request count of the stored entity, if there is one. Fails
+   * when the store does, the count being best effort is the caller's call.
+   */
+  void incrementDuplicateRequestCount(String messageId, int count);
+
+  /**
+   * Writes the response and the terminal status of the entity onto the stored entity, leaving
+   * everything else as stored. Fails with ENTITY_NOT_FOUND when there is no stored entity.
+   */
+  void complete(RequestEntity requestEntity);
+
+  /**
+   * Completes each of the entities as {@link #complete(RequestEntity)} would, one failing not
+   * stopping the others. Returns the entities that couldn't be completed.
+   */
+  List<RequestEntity> completeAll(List<RequestEntity> requestEntities);
+
+  @Override
+  default CompletableFuture<Optional<RequestEntity>> findByMessageIdAsync(String messageId) {
+    return inline(() -> findByMessageId(messageId));
+  }
+
+  @Override
+  default CompletableFuture<Void> strictSaveAsync(RequestEntity requestEntity) {
+    return inline(() -> strictSave(requestEntity));
+  }
+
+  @Override
+  default CompletableFuture<Void> saveAsync(RequestEntity requestEntity) {
+    return inline(() -> save(requestEntity));
+  }
+
+  @Override
+  default CompletableFuture<Boolean> saveIfUnchangedAsync(RequestEntity requestEntity) {
+    return inline(() -> saveIfUnchanged(requestEntity));
+  }
+
+  @Override
+  default CompletableFuture<Optional<RequestEntity>> claimAsync(RequestEntity requestEntity) {
+    return inline(() -> claim(requestEntity));
+  }
+
+  @Override
+  default CompletableFuture<Void> incrementDuplicateRequestCountAsync(String messageId,
+      int count) {
+    return inline(() -> incrementDuplicateRequestCount(messageId, count));
+  }
+
+  @Override
+  default CompletableFuture<Void> completeAsync(RequestEntity requestEntity) {
+    return inline(() -> complete(requestEntity));
+  }
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.repository;
+
+/**
+ * Hooks for instrumenting a {@link WriteBehindRequestRepository}. Called from the workers and the
+ * completing threads, implementations must be thread safe and quick.
+ */
+public interface WriteBehindListener {
+
+  WriteBehindListener NOOP = new WriteBehindListener() {
+  };
+
+  default void onFlush(int batchSize, int failed, long elapsedNanos) {
+  }
+
+  default void onDroppedToSync() {
+  }
+
+  default void onRejected() {
+  }
+
+  /**
+   * Completions still failing after {@code maxRetries} attempts, no longer written
+   */
+  default void onGivenUp(int count) {
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.repository;
+
+import com.grookage.iosave.core.config.BackpressurePolicy;
+import com.grookage.iosave.core.config.WriteBehindConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.exception.IOSaveException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Wraps a {@link RequestRepository} so that {@link #complete(RequestEntity)} only queues the
+ * completion, background workers writing them to the wrapped repository in batches. Everything
+ * else goes straight through. Until a queued completion is written, reads of its id through this
+ * repository see it applied, so a retry landing on the same node is replayed rather than turned
+ * away as in flight; other nodes see the request in flight until then.
+ * <p>
+ * The queue is bounded, what happens when it is full is the configured
+ * {@link BackpressurePolicy}. Completions are written synchronously before {@link #start()} and
+ * after {@link #stop()}, which waits for the queue to drain. Completions the wrapped repository
+ * fails to write are queued again, up to {@code maxRetries} times, and given up on after that.
+ */
+@Slf4j
+public class WriteBehindRequestRepository implements RequestRepository {
+
+  private final RequestRepository delegate;
+  private final WriteBehindConfig config;
+  private final WriteBehindListener listener;
+  private final Queue<Completion> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final Map<String, RequestEntity> pending = new ConcurrentHashMap<>();
+  private final List<Thread> workers = new ArrayList<>();
+  private volatile boolean running;
+
+  public WriteBehindRequestRepository(final RequestRepository delegate,
+      final WriteBehindConfig config,
+      final WriteBehindListener listener) {
+    this.delegate = delegate;
+    this.config = config;
+    this.listener = null == listener ? WriteBehindListener.NOOP : listener;
+  }
+
+  public WriteBehindRequestRepository(final RequestRepository delegate,
+      final WriteBehindConfig config) {
+    this(delegate, config, WriteBehindListener.NOOP);
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    for (int i = 0; i < Math.max(1, config.getWorkers()); i++) {
+      final var worker = new Thread(this::drain, "iosave-write-behind-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+  }
+
+  public synchronized void stop() throws InterruptedException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    final var deadline = System.nanoTime()
+        + TimeUnit.SECONDS.toNanos(config.getShutdownTimeoutSeconds());
+    for (var worker : workers) {
+      TimeUnit.NANOSECONDS.timedJoin(worker, Math.max(1, deadline - System.nanoTime()));
+    }
+    workers.clear();
+    //Whatever the workers left behind, or was queued as they were stopping
+    List<Completion> remaining = new ArrayList<>();
+    Completion next;
+    while (null != (next = queue.poll())) {
+      remaining.add(next);
+    }
+    if (!remaining.isEmpty()) {
+      log.warn("Writing {} completions left in the write behind queue", remaining.size());
+      queued.addAndGet(-remaining.size());
+    }
+    while (!remaining.isEmpty()) {
+      remaining = flush(remaining);
+      backOff(remaining);
+    }
+  }
+
+  public int queueDepth() {
+    return queued.get();
+  }
+
+  private void drain() {
+    final var idleNanos = TimeUnit.MICROSECONDS.toNanos(config.getIdleWaitMicros());
+    final var batch = new ArrayList<Completion>(config.getBatchSize());
+    while (running || queued.get() > 0) {
+      Completion next;
+      while (batch.size() < config.getBatchSize() && null != (next = queue.poll())) {
+        batch.add(next);
+      }
+      if (batch.isEmpty()) {
+        LockSupport.parkNanos(idleNanos);
+        continue;
+      }
+      queued.addAndGet(-batch.size());
+      final var retries = flush(batch);
+      batch.clear();
+      queued.addAndGet(retries.size());
+      queue.addAll(retries);
+      backOff(retries);
+    }
+  }
+
+  private void backOff(List<Completion> retries) {
+    if (!retries.isEmpty()) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(config.getRetryBackoffMillis()));
+    }
+  }
+
+  /*
+    Returns the completions to be written again. A completion written, or given up on, stops being
+    seen applied through this repository.
+   */
+  private List<Completion> flush(List<Completion> batch) {
+    final var started = System.nanoTime();
+    final var requestEntities = batch.stream()
+        .map(Completion::getRequestEntity)
+        .collect(Collectors.toList());
+    final var failed = Collections.newSetFromMap(new IdentityHashMap<RequestEntity, Boolean>());
+    try {
+      failed.addAll(delegate.completeAll(requestEntities));
+    } catch (Exception e) {
+      log.error("Can't write a batch of {} completions", batch.size(), e);
+      failed.addAll(requestEntities);
+    }
+    final var retries = new ArrayList<Completion>();
+    var givenUp = 0;
+    for (final var completion : batch) {
+      final var requestEntity = completion.getRequestEntity();
+      if (failed.contains(requestEntity) && completion.getAttempt() <= config.getMaxRetries()) {
+        retries.add(new Completion(requestEntity, completion.getAttempt() + 1));
+        continue;
+      }
+      if (failed.contains(requestEntity)) {
+        log.error("Giving up on the completion of messageId {} after {} attempts",
+            requestEntity.getRequestId(), completion.getAttempt());
+        givenUp++;
+      }
+      pending.remove(requestEntity.getRequestId(), requestEntity);
+    }
+    listener.onFlush(batch.size(), failed.size(), System.nanoTime() - started);
+    if (givenUp > 0) {
+      listener.onGivenUp(givenUp);
+    }
+    return retries;
+  }
+
+  /*
+    Lock free, the counter bounds the queue
+   */
+  private boolean tryReserve() {
+    while (true) {
+      final var current = queued.get();
+      if (current >= config.getQueueSize()) {
+        return false;
+      }
+      if (queued.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private boolean reserve() {
+    if (tryReserve()) {
+      return true;
+    }
+    switch (config.getBackpressure()) {
+      case DROP_TO_SYNC:
+        listener.onDroppedToSync();
+        return false;
+      case REJECT:
+        listener.onRejected();
+        throw IOSaveException.error(IOSaveException.ErrorCode.WRITE_BEHIND_QUEUE_FULL);
+      case BLOCK:
+      default:
+        while (running && !tryReserve()) {
+          LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(config.getIdleWaitMicros()));
+        }
+        return running;
+    }
+  }
+
+  private Optional<RequestEntity> withPending(Optional<RequestEntity> stored) {
+    stored.ifPresent(requestEntity -> {
+      final var completion = pending.get(requestEntity.getRequestId());
+      if (null != completion) {
+        requestEntity.loadResponseFromMessage(completion);
+      }
+    });
+    return stored;
+  }
+
+  /*
+    False when the completion has to be written by the caller instead
+   */
+  private boolean enqueue(RequestEntity requestEntity) {
+    if (!running || !reserve()) {
+      return false;
+    }
+    pending.put(requestEntity.getRequestId(), requestEntity);
+    queue.offer(new Completion(requestEntity, 1));
+    return true;
+  }
+
+  @Override
+  public void complete(RequestEntity requestEntity) {
+    if (!enqueue(requestEntity)) {
+      delegate.complete(requestEntity);
+    }
+  }
+
+  @Override
+  public List<RequestEntity> completeAll(List<RequestEntity> requestEntities) {
+    requestEntities.forEach(this::complete);
+    return List.of();
+  }
+
+  @Override
+  public boolean connected() {
+    return delegate.connected();
+  }
+
+  @Override
+  public Optional<RequestEntity> findByMessageId(String messageId) {
+    return withPending(delegate.findByMessageId(messageId));
+  }
+
+  @Override
+  public void strictSave(RequestEntity requestEntity) {
+    delegate.strictSave(requestEntity);
+  }
+
+  @Override
+  public void save(RequestEntity requestEntity) {
+    delegate.save(requestEntity);
+  }
+
+  @Override
+  public boolean saveIfUnchanged(RequestEntity requestEntity) {
+    return delegate.saveIfUnchanged(requestEntity);
+  }
+
+  @Override
+  public void update(RequestEntity requestEntity) {
+    delegate.update(requestEntity);
+  }
+
+  @Override
+  public Optional<RequestEntity> claim(RequestEntity requestEntity) {
+    return withPending(delegate.claim(requestEntity));
+  }
+
+  @Override
+  public void incrementDuplicateRequestCount(String messageId, int count) {
+    delegate.incrementDuplicateRequestCount(messageId, count);
+  }
+
+  @Override
+  public CompletableFuture<Optional<RequestEntity>> findByMessageIdAsync(String messageId) {
+    return delegate.findByMessageIdAsync(messageId).thenApply(this::withPending);
+  }
+
+  @Override
+  public CompletableFuture<Void> strictSaveAsync(RequestEntity requestEntity) {
+    return delegate.strictSaveAsync(requestEntity);
+  }
+
+  @Override
+  public CompletableFuture<Void> saveAsync(RequestEntity requestEntity) {
+    return delegate.saveAsync(requestEntity);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> saveIfUnchangedAsync(RequestEntity requestEntity) {
+    return delegate.saveIfUnchangedAsync(requestEntity);
+  }
+
+  @Override
+  public CompletableFuture<Optional<RequestEntity>> claimAsync(RequestEntity requestEntity) {
+    return delegate.claimAsync(requestEntity).thenApply(this::withPending);
+  }
+
+  @Override
+  public CompletableFuture<Void> incrementDuplicateRequestCountAsync(String messageId,
+      int count) {
+    return delegate.incrementDuplicateRequestCountAsync(messageId, count);
+  }
+
+  @Override
+  public CompletableFuture<Void> completeAsync(RequestEntity requestEntity) {
+    try {
+      return enqueue(requestEntity)
+          ? CompletableFuture.completedFuture(null) : delegate.completeAsync(requestEntity);
+    } catch (IOSaveException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /*
+    A queued completion, and which attempt at writing it this is
+   */
+  @Getter
+  @RequiredArgsConstructor
+  private static class Completion {
+
+    private final RequestEntity requestEntity;
+    private final int attempt;
+  }
+}
@@ -15,22 +15,106 @@
  */
 package com.grookage.iosave.core.services;
 
+import com.grookage.iosave.core.cache.HotRequests;
+import com.grookage.iosave.core.cache.RecentRequestFilter;
+import com.grookage.iosave.core.config.RequestReceiverConfig;
 import com.grookage.iosave.core.entities.RequestEntity;
 import com.grookage.iosave.core.entities.RequestStatus;
 import com.grookage.iosave.core.entities.RequestStatus.MessageTypeVisitor;
 import com.grookage.iosave.core.exception.IOSaveException;
 import com.grookage.iosave.core.repository.RequestRepository;
+import java.lang.management.ManagementFactory;
 import java.util.Date;
 import java.util.Map;
-import lombok.AllArgsConstructor;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-@AllArgsConstructor
 public class RequestReceiverService {
 
+  private static final String DEFAULT_LEASE_OWNER = ManagementFactory.getRuntimeMXBean().getName();
+  private static final int MAX_RENEW_ATTEMPTS = 5;
+
   private final RequestRepository requestRepository;
+  private final RequestReceiverConfig receiverConfig;
+  private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+  /* Null unless enabled */
+  private final RecentRequestFilter recentRequests;
+  /* Null unless enabled */
+  private final HotRequests hotRequests;
+
+  public RequestReceiverService(RequestRepository requestRepository) {
+    this(requestRepository, RequestReceiverConfig.builder().build());
+  }
+
+  public RequestReceiverService(RequestRepository requestRepository,
+      RequestReceiverConfig receiverConfig) {
+    this.requestRepository = requestRepository;
+    this.receiverConfig = receiverConfig;
+    this.recentRequests = receiverConfig.getRecentRequests().isEnabled()
+        ? new RecentRequestFilter(receiverConfig.getRecentRequests()) : null;
+    this.hotRequests = receiverConfig.getHotRequests().isEnabled()
+        ? new HotRequests(receiverConfig.getHotRequests(), requestRepository) : null;
+  }
+
+  /**
+   * The filter of request ids seen on this node, when enabled
+   */
+  public Optional<RecentRequestFilter> recentRequests() {
+    return Optional.ofNullable(recentRequests);
+  }
+
+  /**
+   * The duplicates answered from this node and their counts yet to be written, when enabled. Stop
+   * it as the service goes away, for those counts to be written.
+   */
+  public Optional<HotRequests> hotRequests() {
+    return Optional.ofNullable(hotRequests);
+  }
+
+  private String leaseOwner() {
+    final var owner = receiverConfig.getLease().getOwner();
+    return null == owner ? DEFAULT_LEASE_OWNER : owner;
+  }
+
+  private void grantLease(RequestEntity requestEntity) {
+    final var lease = receiverConfig.getLease();
+    if (lease.isEnabled()) {
+      requestEntity.setLeaseOwner(leaseOwner());
+      requestEntity.setLeaseExpiresAt(
+          new Date(System.currentTimeMillis() + lease.getDurationMillis()));
+    }
+  }
+
+  private boolean canTakeOver(RequestEntity requestEntity) {
+    return receiverConfig.getLease().isEnabled() && requestEntity.isLeaseExpired();
+  }
+
+  /*
+    The request under a fresh lease of this node's, to be written over the expired one only if
+    nothing else has written it since it was read
+   */
+  private RequestEntity takenOver(RequestEntity expired) {
+    log.warn("Lease of {} on message {} expired at {}, taking it over", expired.getLeaseOwner(),
+        expired.getRequestId(), expired.getLeaseExpiresAt());
+    final var takenOver = expired.toBuilder()
+        .retryCount(expired.getRetryCount() + 1)
+        .build();
+    grantLease(takenOver);
+    return takenOver;
+  }
 
   private RequestEntity getMessage(RequestEntity message) {
     return requestRepository
@@ -40,11 +124,12 @@ public class RequestReceiverService {
   @SneakyThrows
   private RequestEntity createMessage(RequestEntity message) {
     final var ibMessage = new RequestEntity(message);
+    grantLease(ibMessage);
     requestRepository.strictSave(ibMessage);
     return ibMessage;
   }
 
-  private void updateMessage(RequestEntity message) {
+  private void markCompletion(RequestEntity message) {
     final var status = message.getResponseStatus();
     if (status >= 200 && status < 300) {
       message.setProcessed(RequestStatus.PROCESSED);
@@ -52,11 +137,13 @@ public class RequestReceiverService {
     } else {
       message.setProcessed(RequestStatus.FAILED);
     }
-    requestRepository.update(message);
   }
 
+  /*
+    Throws for failed and in flight entities, returns for processed ones
+   */
   @SneakyThrows
-  private void processExistingMessage(RequestEntity requestEntity) {
+  private void checkExistingMessage(RequestEntity requestEntity) {
     requestEntity.getProcessed().accept(new MessageTypeVisitor<Void>() {
       @Override
       public Void failed() {
@@ -67,8 +154,6 @@ public class RequestReceiverService {
       public Void processed() {
         log.info("Message already processed in the INBOUND_MESSAGES entitystore: " + requestEntity
             .getRequestId());
-        requestEntity.incrementDuplicateRequestCount();
-        updateMessage(requestEntity);
         return null;
       }
 
@@ -81,39 +166,542 @@ public class RequestReceiverService {
     });
   }
 
-  public RequestEntity preHandle(RequestEntity message) {
-    log.debug("Pre-handling message");
-    var inboundMessage = getMessage(message);
-    if (null == inboundMessage) {
-      try {
-        inboundMessage = createMessage(message);
-      } catch (Exception e) {
-        log.error("Error! Message (" + message.getRequestId()
-            + " is already present. You can't callAndSave the same messageId twice.", e);
-        throw IOSaveException.error(IOSaveException.ErrorCode.DUPLICATE_MESSAGE);
+  /*
+    A duplicate id carrying a different body is a different request, unless either side was stored
+    without a fingerprint
+   */
+  private void checkFingerprint(RequestEntity requestEntity, RequestEntity message) {
+    final var stored = requestEntity.getRequestFingerprint();
+    final var received = message.getRequestFingerprint();
+    if (null != stored && null != received && !stored.equals(received)) {
+      log.error("Message {} was received again with a different body",
+          requestEntity.getRequestId());
+      throw IOSaveException.error(IOSaveException.ErrorCode.REQUEST_FINGERPRINT_MISMATCH);
+    }
+  }
+
+  private long defaultInFlightWaitMillis() {
+    final var inFlightWait = receiverConfig.getInFlightWait();
+    return inFlightWait.isEnabled() ? inFlightWait.getMaxWaitMillis() : 0;
+  }
+
+  /*
+    Exponential, with jitter so that duplicates of the same request don't poll in lockstep
+   */
+  private long pollBackoffNanos(int attempt) {
+    final var inFlightWait = receiverConfig.getInFlightWait();
+    final var ceiling = TimeUnit.MILLISECONDS.toNanos(Math.min(inFlightWait.getMaxBackoffMillis(),
+        inFlightWait.getInitialBackoffMillis() << Math.min(attempt - 1, 20)));
+    return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+  }
+
+  /*
+    Reads the entity again, backing off in between, until it leaves PROCESSING or the wait is over.
+    What it last read is returned, to be answered as any existing entity.
+   */
+  private RequestEntity awaitCompletion(RequestEntity requestEntity, long waitMillis) {
+    if (waitMillis <= 0 || requestEntity.getProcessed() != RequestStatus.PROCESSING) {
+      return requestEntity;
+    }
+    final var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    var current = requestEntity;
+    var attempt = 0;
+    while (current.getProcessed() == RequestStatus.PROCESSING && !canTakeOver(current)) {
+      final var remaining = deadline - System.nanoTime();
+      if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+        break;
+      }
+      LockSupport.parkNanos(Math.min(remaining, pollBackoffNanos(++attempt)));
+      final var latest = requestRepository.findByMessageId(requestEntity.getRequestId());
+      if (latest.isEmpty()) {
+        break;
+      }
+      current = latest.get();
+    }
+    return current;
+  }
+
+  private CompletableFuture<RequestEntity> awaitCompletionAsync(RequestEntity requestEntity,
+      long deadline, int attempt) {
+    final var remaining = deadline - System.nanoTime();
+    if (requestEntity.getProcessed() != RequestStatus.PROCESSING || canTakeOver(requestEntity)
+        || remaining <= 0) {
+      return CompletableFuture.completedFuture(requestEntity);
+    }
+    final var poll = CompletableFuture.delayedExecutor(
+        Math.min(remaining, pollBackoffNanos(attempt + 1)), TimeUnit.NANOSECONDS);
+    return CompletableFuture.supplyAsync(requestEntity::getRequestId, poll)
+        .thenCompose(requestRepository::findByMessageIdAsync)
+        .thenCompose(latest -> latest.isEmpty()
+            ? CompletableFuture.completedFuture(requestEntity)
+            : awaitCompletionAsync(latest.get(), deadline, attempt + 1));
+  }
+
+  /*
+    Counted on this node, to be written with the other duplicates of the id, when hot requests are
+    enabled
+   */
+  private RequestEntity answerDuplicate(RequestEntity existing) {
+    checkExistingMessage(existing);
+    existing.incrementDuplicateRequestCount();
+    hotRequests.countDuplicate(existing.getRequestId());
+    return existing;
+  }
+
+  private RequestEntity answerExistingMessage(RequestEntity existing) {
+    if (null != hotRequests) {
+      hotRequests.offer(existing);
+      return answerDuplicate(existing);
+    }
+    checkExistingMessage(existing);
+    existing.incrementDuplicateRequestCount();
+    try {
+      requestRepository.incrementDuplicateRequestCount(existing.getRequestId(), 1);
+    } catch (RuntimeException e) {
+      log.error("Can't increment the duplicate request count of messageId {}",
+          existing.getRequestId(), e);
+    }
+    return existing;
+  }
+
+  private CompletableFuture<RequestEntity> answerExistingMessageAsync(RequestEntity existing) {
+    try {
+      if (null != hotRequests) {
+        return CompletableFuture.completedFuture(answerExistingMessage(existing));
+      }
+      checkExistingMessage(existing);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    existing.incrementDuplicateRequestCount();
+    return requestRepository
+        .incrementDuplicateRequestCountAsync(existing.getRequestId(), 1)
+        .handle((ignored, e) -> {
+          if (null != e) {
+            log.error("Can't increment the duplicate request count of messageId {}",
+                existing.getRequestId(), unwrap(e));
+          }
+          return existing;
+        });
+  }
+
+  /*
+    A duplicate of an id another duplicate was answered for within the window, answered the same
+    way without going to the store. Null when there is none.
+   */
+  private RequestEntity answerLocally(RequestEntity message) {
+    if (null == hotRequests || null == message.getRequestId()) {
+      return null;
+    }
+    final var answered = hotRequests.get(message.getRequestId()).orElse(null);
+    if (null == answered) {
+      return null;
+    }
+    checkFingerprint(answered, message);
+    return answerDuplicate(answered);
+  }
+
+  /*
+    Returns the stored entity a duplicate is answered with, or the request taken over under a new
+    lease, in flight again for this node to handle
+   */
+  private RequestEntity processExistingMessage(RequestEntity requestEntity, RequestEntity message,
+      long waitMillis) {
+    checkFingerprint(requestEntity, message);
+    var existing = awaitCompletion(requestEntity, waitMillis);
+    if (canTakeOver(existing)) {
+      final var takenOver = takenOver(existing);
+      if (requestRepository.saveIfUnchanged(takenOver)) {
+        return takenOver;
+      }
+      //Taken over, or completed, by someone else first
+      existing = requestRepository.findByMessageId(existing.getRequestId()).orElse(existing);
+    }
+    return answerExistingMessage(existing);
+  }
+
+  private CompletableFuture<RequestEntity> processExistingMessageAsync(
+      RequestEntity requestEntity, RequestEntity message, long waitMillis) {
+    try {
+      checkFingerprint(requestEntity, message);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return awaitCompletionAsync(requestEntity,
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, waitMillis)), 0)
+        .thenCompose(existing -> {
+          if (!canTakeOver(existing)) {
+            return answerExistingMessageAsync(existing);
+          }
+          final var takenOver = takenOver(existing);
+          return requestRepository.saveIfUnchangedAsync(takenOver)
+              .thenCompose(saved -> saved
+                  ? CompletableFuture.completedFuture(takenOver)
+                  : requestRepository.findByMessageIdAsync(existing.getRequestId())
+                      .thenCompose(latest -> answerExistingMessageAsync(latest.orElse(existing))));
+        });
+  }
+
+  private RequestEntity claimMessage(RequestEntity message, long waitMillis) {
+    final var ibMessage = new RequestEntity(message);
+    grantLease(ibMessage);
+    final var existing = requestRepository.claim(ibMessage);
+    if (existing.isEmpty()) {
+      return ibMessage;
+    }
+    return processExistingMessage(existing.get(), message, waitMillis);
+  }
+
+  /*
+    An id this node has certainly not seen is most likely new, a lookup would only come back empty,
+    so it is claimed straight away. The claim's create only write still finds it if it is stored.
+   */
+  private boolean claimFirst(RequestEntity message) {
+    return receiverConfig.isClaimFirst() || (null != recentRequests
+        && null != message.getRequestId() && recentRequests.add(message.getRequestId()));
+  }
+
+  private RequestEntity handleMessage(RequestEntity message, long waitMillis) {
+    final var answered = answerLocally(message);
+    if (null != answered) {
+      return answered;
+    }
+    if (claimFirst(message)) {
+      return claimMessage(message, waitMillis);
+    }
+    final var inboundMessage = getMessage(message);
+    if (null != inboundMessage) {
+      return processExistingMessage(inboundMessage, message, waitMillis);
+    }
+    try {
+      return createMessage(message);
+    } catch (Exception e) {
+      if (isBadRequest(e)) {
+        throw (IOSaveException) e;
+      }
+      log.error("Error! Message (" + message.getRequestId()
+          + " is already present. You can't callAndSave the same messageId twice.", e);
+      throw IOSaveException.error(IOSaveException.ErrorCode.DUPLICATE_MESSAGE);
+    }
+  }
+
+  private CompletableFuture<RequestEntity> handleMessageAsync(RequestEntity message,
+      long waitMillis) {
+    try {
+      final var answered = answerLocally(message);
+      if (null != answered) {
+        return CompletableFuture.completedFuture(answered);
       }
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    final var ibMessage = new RequestEntity(message);
+    grantLease(ibMessage);
+    if (claimFirst(message)) {
+      return requestRepository.claimAsync(ibMessage)
+          .thenCompose(existing -> existing.isEmpty()
+              ? CompletableFuture.completedFuture(ibMessage)
+              : processExistingMessageAsync(existing.get(), message, waitMillis));
+    }
+    return requestRepository.findByMessageIdAsync(message.getRequestId())
+        .thenCompose(existing -> existing.isPresent()
+            ? processExistingMessageAsync(existing.get(), message, waitMillis)
+            : requestRepository.strictSaveAsync(ibMessage)
+                .handle((ignored, e) -> {
+                  if (isBadRequest(unwrap(e))) {
+                    throw (IOSaveException) unwrap(e);
+                  }
+                  if (null != e) {
+                    log.error("Error! Message (" + message.getRequestId()
+                        + " is already present. You can't callAndSave the same messageId twice.",
+                        e);
+                    throw IOSaveException.error(IOSaveException.ErrorCode.DUPLICATE_MESSAGE);
+                  }
+                  return ibMessage;
+                }));
+  }
+
+  private boolean singleFlight(RequestEntity message) {
+    return receiverConfig.getSingleFlight().isEnabled() && null != message.getRequestId();
+  }
+
+  /*
+    A request the store turned away as it is, its id too long say, rather than as a duplicate
+   */
+  private static boolean isBadRequest(Throwable throwable) {
+    return throwable instanceof IOSaveException && ((IOSaveException) throwable).getErrorCode()
+        == IOSaveException.ErrorCode.BAD_REQUEST;
+  }
+
+  private static Throwable unwrap(Throwable throwable) {
+    return throwable instanceof CompletionException && null != throwable.getCause()
+        ? throwable.getCause() : throwable;
+  }
+
+  /*
+    A duplicate parked on a flight is answered as a duplicate found in the store would be, without
+    being counted in the store
+   */
+  private RequestEntity answerFromFlight(RequestEntity completed) {
+    checkExistingMessage(completed);
+    return completed.toBuilder().build();
+  }
+
+  private RequestEntity awaitFlight(Flight flight, RequestEntity message) {
+    checkFingerprint(flight.getLeader(), message);
+    try {
+      return answerFromFlight(flight.getCompletion()
+          .get(receiverConfig.getSingleFlight().getMaxWaitMillis(), TimeUnit.MILLISECONDS));
+    } catch (TimeoutException e) {
+      throw IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOSaveException ? (IOSaveException) e.getCause()
+          : IOSaveException.propagate(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED, e.getCause());
+    }
+  }
+
+  private CompletableFuture<RequestEntity> awaitFlightAsync(Flight flight,
+      RequestEntity message) {
+    try {
+      checkFingerprint(flight.getLeader(), message);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return flight.getCompletion()
+        .thenApply(this::answerFromFlight)
+        .orTimeout(receiverConfig.getSingleFlight().getMaxWaitMillis(), TimeUnit.MILLISECONDS)
+        .exceptionally(throwable -> {
+          if (unwrap(throwable) instanceof TimeoutException) {
+            throw IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED);
+          }
+          throw throwable instanceof CompletionException ? (CompletionException) throwable
+              : new CompletionException(throwable);
+        });
+  }
+
+  /*
+    A flight is left for stale once no duplicate would still be waiting on it and its lease, when
+    leases are on, has run out
+   */
+  private long staleFlightNanos() {
+    final var lease = receiverConfig.getLease();
+    final var maxWaitMillis = receiverConfig.getSingleFlight().getMaxWaitMillis();
+    return TimeUnit.MILLISECONDS.toNanos(
+        Math.max(maxWaitMillis, lease.isEnabled() ? lease.getDurationMillis() : 0));
+  }
+
+  /*
+    Registers the flight, returning the one already in flight for its id instead. A flight that
+    never landed, its response not written or its postHandle never run, is replaced once stale,
+    and the duplicates still parked on it are turned away.
+   */
+  private Flight takeOff(Flight flight) {
+    final var requestId = flight.getLeader().getRequestId();
+    while (true) {
+      final var current = inFlight.putIfAbsent(requestId, flight);
+      if (null == current) {
+        return null;
+      }
+      if (System.nanoTime() - current.getStartedAt() < staleFlightNanos()) {
+        return current;
+      }
+      if (inFlight.replace(requestId, current, flight)) {
+        log.warn("Message {} was left in flight on this node, replacing it", requestId);
+        current.getCompletion().completeExceptionally(
+            IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED));
+        return null;
+      }
+    }
+  }
+
+  /*
+    The leader's own preHandle settles the flight unless it left the request to be processed, then
+    it is landed by the postHandle of what preHandle was given or returned
+   */
+  private void settleFlight(Flight flight, RequestEntity inboundMessage, Throwable throwable) {
+    if (null != throwable) {
+      inFlight.remove(flight.getLeader().getRequestId(), flight);
+      flight.getCompletion().completeExceptionally(unwrap(throwable));
+    } else if (inboundMessage.getProcessed() != RequestStatus.PROCESSING) {
+      inFlight.remove(flight.getLeader().getRequestId(), flight);
+      flight.getCompletion().complete(inboundMessage);
     } else {
-      processExistingMessage(message);
+      flight.setHandled(inboundMessage);
     }
+  }
+
+  /*
+    The flight the leader took off with, if it is still the one in flight for its id. A leader
+    whose flight was replaced as stale finds none, and leaves the one that replaced it alone.
+   */
+  private Flight removeFlight(RequestEntity leader) {
+    if (!singleFlight(leader)) {
+      return null;
+    }
+    final var flight = inFlight.get(leader.getRequestId());
+    return null != flight && flight.isLedBy(leader)
+        && inFlight.remove(leader.getRequestId(), flight) ? flight : null;
+  }
+
+  private void landFlight(RequestEntity leader, RequestEntity message) {
+    final var flight = removeFlight(leader);
+    if (null != flight) {
+      flight.getCompletion().complete(message);
+    }
+  }
+
+  public RequestEntity preHandle(RequestEntity message) {
+    return preHandle(message, defaultInFlightWaitMillis());
+  }
+
+  /**
+   * {@link #preHandle(RequestEntity)}, with a duplicate of a request in flight polling the store
+   * for up to {@code inFlightWaitMillis} for the request to complete, instead of the configured
+   * wait. 0 turns it away right away.
+   */
+  public RequestEntity preHandle(RequestEntity message, long inFlightWaitMillis) {
+    log.debug("Pre-handling message");
+    if (!singleFlight(message)) {
+      return handleMessage(message, inFlightWaitMillis);
+    }
+    final var flight = new Flight(message);
+    final var leader = takeOff(flight);
+    if (null != leader) {
+      log.info("Message {} is in flight on this node, waiting for it", message.getRequestId());
+      return awaitFlight(leader, message);
+    }
+    final RequestEntity inboundMessage;
+    try {
+      inboundMessage = handleMessage(message, inFlightWaitMillis);
+    } catch (RuntimeException e) {
+      settleFlight(flight, null, e);
+      throw e;
+    }
+    settleFlight(flight, inboundMessage, null);
     return inboundMessage;
   }
 
+  /**
+   * Completes the request with the response {@code message} carries. {@code message} is the entity
+   * preHandle was given or returned for it, to land the flight duplicates of it wait on.
+   */
   public void postHandle(RequestEntity message) {
+    postHandle(message, message);
+  }
+
+  /**
+   * {@link #postHandle(RequestEntity)}, with the response in an entity of its own and
+   * {@code leader} the entity preHandle was given or returned for the request
+   */
+  public void postHandle(RequestEntity message, RequestEntity leader) {
     log.debug("PostHandling message");
-    final var inboundMessage = getMessage(message);
-    if (null == inboundMessage) {
-      log.error("inbound message not found for messageId: {}", message.getRequestId());
-      throw IOSaveException.error(
-          IOSaveException.ErrorCode.ENTITY_NOT_FOUND,
-          Map.of("cause", String
-              .format("inbound message not found for messageId: %s", message.getRequestId())));
-    }
+    markCompletion(message);
     try {
-      inboundMessage.setResponseStatus(message.getResponseStatus());
-      inboundMessage.setResponseBody(message.getResponseBody());
-      inboundMessage.setResponseHeaders(message.getResponseHeaders());
+      requestRepository.complete(message);
     } finally {
-      updateMessage(inboundMessage);
+      landFlight(leader, message);
+    }
+  }
+
+  /**
+   * Extends this node's lease on a request in flight, for handlers that can run longer than the
+   * lease. Returns false when the request isn't in flight under this node's lease anymore, it
+   * completed or was taken over, or when leases are off.
+   */
+  public boolean renewLease(String requestId) {
+    if (!receiverConfig.getLease().isEnabled()) {
+      return false;
+    }
+    for (var attempt = 0; attempt < MAX_RENEW_ATTEMPTS; attempt++) {
+      final var stored = requestRepository.findByMessageId(requestId).orElse(null);
+      if (null == stored || stored.getProcessed() != RequestStatus.PROCESSING
+          || !leaseOwner().equals(stored.getLeaseOwner())) {
+        return false;
+      }
+      final var renewed = stored.toBuilder().build();
+      grantLease(renewed);
+      if (requestRepository.saveIfUnchanged(renewed)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Turns away the duplicates waiting on a request that won't be post handled, its response
+   * couldn't be sent say. Nothing is written, the request stays in flight in the store.
+   * {@code leader} is the entity preHandle was given or returned for the request.
+   */
+  public void abandon(RequestEntity leader) {
+    final var flight = removeFlight(leader);
+    if (null != flight) {
+      flight.getCompletion().completeExceptionally(
+          IOSaveException.error(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED));
+    }
+  }
+
+  /**
+   * {@link #preHandle(RequestEntity)} through the repository's async methods, so the calling
+   * thread isn't held for the store round trips. The future fails with what preHandle would throw,
+   * wrapped in a {@link java.util.concurrent.CompletionException} once chained.
+   */
+  public CompletableFuture<RequestEntity> preHandleAsync(RequestEntity message) {
+    return preHandleAsync(message, defaultInFlightWaitMillis());
+  }
+
+  /**
+   * {@link #preHandle(RequestEntity, long)} through the repository's async methods, polls included
+   */
+  public CompletableFuture<RequestEntity> preHandleAsync(RequestEntity message,
+      long inFlightWaitMillis) {
+    log.debug("Pre-handling message");
+    if (!singleFlight(message)) {
+      return handleMessageAsync(message, inFlightWaitMillis);
+    }
+    final var flight = new Flight(message);
+    final var leader = takeOff(flight);
+    if (null != leader) {
+      log.info("Message {} is in flight on this node, waiting for it", message.getRequestId());
+      return awaitFlightAsync(leader, message);
+    }
+    return handleMessageAsync(message, inFlightWaitMillis)
+        .whenComplete((inboundMessage, e) -> settleFlight(flight, inboundMessage, e));
+  }
+
+  public CompletableFuture<Void> postHandleAsync(RequestEntity message) {
+    return postHandleAsync(message, message);
+  }
+
+  /**
+   * {@link #postHandle(RequestEntity, RequestEntity)} through the repository's async methods
+   */
+  public CompletableFuture<Void> postHandleAsync(RequestEntity message, RequestEntity leader) {
+    log.debug("PostHandling message");
+    markCompletion(message);
+    return requestRepository.completeAsync(message)
+        .whenComplete((ignored, e) -> landFlight(leader, message));
+  }
+
+  /*
+    A request being handled on this node, and the duplicates of it waiting for its response
+   */
+  @Getter
+  @RequiredArgsConstructor
+  private static class Flight {
+
+    private final RequestEntity leader;
+    private final CompletableFuture<RequestEntity> completion = new CompletableFuture<>();
+    /* System#nanoTime when the leader took off */
+    private final long startedAt = System.nanoTime();
+    /* What the leader's preHandle returned, once it left the request to be processed */
+    @Setter
+    private volatile RequestEntity handled;
+
+    boolean isLedBy(RequestEntity requestEntity) {
+      return leader == requestEntity || handled == requestEntity;
     }
   }
 }
@@ -16,8 +16,19 @@
 package com.grookage.iosave.core.utils;
 
 import com.grookage.iosave.core.entities.RequestEntity;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.experimental.UtilityClass;
 
+/**
+ * The request being handled by the calling thread, and its trace id, as seen by code running on
+ * the thread that invoked the resource. Work handed to other threads sees it only when carried
+ * over with a {@link Snapshot}, or through {@link #propagating(Executor)}.
+ */
 @SuppressWarnings("unused")
 @UtilityClass
 public class RequestManager {
@@ -28,6 +39,16 @@ public class RequestManager {
     currentMessage.remove();
   }
 
+  /**
+   * Clears the current message if it is {@code message}, leaving the state of any other request
+   * the thread has moved on to alone
+   */
+  public static void endMessageProcessing(RequestEntity message) {
+    if (currentMessage.get() == message) {
+      currentMessage.remove();
+    }
+  }
+
   public static RequestEntity getCurrentMessage() {
     return currentMessage.get();
   }
@@ -35,4 +56,83 @@ public class RequestManager {
   public static void setCurrentMessage(RequestEntity message) {
     currentMessage.set(message);
   }
+
+  /**
+   * The calling thread's request state, to be attached to the threads work is handed to
+   */
+  public static Snapshot snapshot() {
+    return new Snapshot(currentMessage.get(), TracingManager.getTrace());
+  }
+
+  public static Snapshot snapshot(RequestEntity message, String traceId) {
+    return new Snapshot(message, traceId);
+  }
+
+  /**
+   * Runs what is submitted with the request state of the thread that submitted it
+   */
+  public static Executor propagating(Executor executor) {
+    return command -> executor.execute(snapshot().wrap(command));
+  }
+
+  /**
+   * A scope {@link Snapshot#attach()} opened, closing it restores the state the thread had before
+   */
+  public interface Scope extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+
+  @Getter
+  @AllArgsConstructor(access = AccessLevel.PRIVATE)
+  public static class Snapshot {
+
+    private final RequestEntity message;
+    private final String traceId;
+
+    public Scope attach() {
+      final var previousMessage = currentMessage.get();
+      final var previousTrace = TracingManager.getTrace();
+      currentMessage.set(message);
+      TracingManager.startTracing(traceId);
+      return () -> {
+        currentMessage.set(previousMessage);
+        TracingManager.startTracing(previousTrace);
+      };
+    }
+
+    public Runnable wrap(Runnable runnable) {
+      return () -> {
+        final var scope = attach();
+        try {
+          runnable.run();
+        } finally {
+          scope.close();
+        }
+      };
+    }
+
+    public <T> Callable<T> wrap(Callable<T> callable) {
+      return () -> {
+        final var scope = attach();
+        try {
+          return callable.call();
+        } finally {
+          scope.close();
+        }
+      };
+    }
+
+    public <T> Supplier<T> wrap(Supplier<T> supplier) {
+      return () -> {
+        final var scope = attach();
+        try {
+          return supplier.get();
+        } finally {
+          scope.close();
+        }
+      };
+    }
+  }
 }
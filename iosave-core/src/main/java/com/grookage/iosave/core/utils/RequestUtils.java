@@ -17,6 +17,7 @@ package com.grookage.iosave.core.utils;
 
 import com.grookage.iosave.core.entities.RequestEntity;
 import com.grookage.iosave.core.entities.RequestStatus;
+import java.util.Map;
 import java.util.Objects;
 import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
@@ -39,6 +40,10 @@ public class RequestUtils {
     TracingManager.endTracing();
   }
 
+  public static void endTransaction(String traceId) {
+    TracingManager.endTracing(traceId);
+  }
+
   public static RequestEntity createInboundMessage(String messageId,
       String traceId,
       boolean saveRequestBody,
@@ -70,6 +75,7 @@ public class RequestUtils {
         null, inboundMessage);
     message.setResponseStatus(inboundMessage.getResponseStatus());
     message.setResponseBody(inboundMessage.getResponseBody());
+    message.setResponseBodyEncoding(inboundMessage.getResponseBodyEncoding());
     message.setResponseHeaders(inboundMessage.getResponseHeaders());
     return message;
   }
@@ -82,7 +88,7 @@ public class RequestUtils {
       Boolean saveRequestBody,
       RequestEntity inboundMessage,
       int responseStatus,
-      String responseHeaders
+      Map<String, String> responseHeaders
   ) {
     final var message = createInboundMessage(
         messageId,
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Map;
+import lombok.SneakyThrows;
+
+/**
+ * Reads response headers stored as a map, or as the JSON string of one, the way they were stored
+ * before they were kept as a map
+ */
+public class ResponseHeadersDeserializer extends JsonDeserializer<Map<String, String>> {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final TypeReference<Map<String, String>> HEADERS = new TypeReference<>() {
+  };
+
+  @SneakyThrows
+  public static Map<String, String> parse(String headers) {
+    return null == headers ? null : MAPPER.readValue(headers, HEADERS);
+  }
+
+  @Override
+  public Map<String, String> deserialize(JsonParser parser, DeserializationContext context)
+      throws IOException {
+    if (parser.currentToken() == JsonToken.VALUE_STRING) {
+      return parse(parser.getText());
+    }
+    return parser.readValueAs(HEADERS);
+  }
+}
@@ -24,7 +24,11 @@ public class TracingManager {
   private static final ThreadLocal<String> tracingContext = new ThreadLocal<>();
 
   public static void startTracing(String transactionId) {
-    tracingContext.set(transactionId);
+    if (null == transactionId) {
+      tracingContext.remove();
+    } else {
+      tracingContext.set(transactionId);
+    }
   }
 
   public static String getTrace() {
@@ -34,4 +38,13 @@ public class TracingManager {
   public static void endTracing() {
     tracingContext.remove();
   }
+
+  /**
+   * Ends the current trace if it is {@code transactionId}
+   */
+  public static void endTracing(String transactionId) {
+    if (null != transactionId && transactionId.equals(tracingContext.get())) {
+      tracingContext.remove();
+    }
+  }
 }
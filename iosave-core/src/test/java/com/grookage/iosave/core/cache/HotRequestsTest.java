@@ -0,0 +1,167 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.cache;
+
+import com.grookage.iosave.core.config.HotRequestsConfig;
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.config.RequestReceiverConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.repository.InMemoryRequestRepository;
+import com.grookage.iosave.core.services.RequestReceiverService;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HotRequestsTest {
+
+  private static final long WINDOW_MILLIS = 200;
+
+  private final AtomicInteger reads = new AtomicInteger();
+  /* The increments written, per request id */
+  private final Map<String, Integer> increments = new ConcurrentHashMap<>();
+  private final AtomicInteger incrementCalls = new AtomicInteger();
+
+  /*
+    Counts the reads and increments that reach the store
+   */
+  private final InMemoryRequestRepository requestRepository = new InMemoryRequestRepository(
+      InMemoryRepositoryConfig.builder().build()) {
+    @Override
+    public Optional<RequestEntity> findByMessageId(String messageId) {
+      reads.incrementAndGet();
+      return super.findByMessageId(messageId);
+    }
+
+    @Override
+    public void incrementDuplicateRequestCount(String messageId, int count) {
+      incrementCalls.incrementAndGet();
+      increments.merge(messageId, count, Integer::sum);
+      super.incrementDuplicateRequestCount(messageId, count);
+    }
+  };
+
+  /*
+    Counts are only written by an explicit flush or stop, the scheduled flush is an hour away
+   */
+  private final RequestReceiverService service = new RequestReceiverService(requestRepository,
+      RequestReceiverConfig.builder()
+          .hotRequests(HotRequestsConfig.builder()
+              .enabled(true)
+              .windowMillis(WINDOW_MILLIS)
+              .flushIntervalMillis(3_600_000)
+              .build())
+          .build());
+
+  private HotRequests hotRequests() {
+    return service.hotRequests().orElseThrow();
+  }
+
+  private void processed(String requestId) {
+    final var inboundMessage = service.preHandle(message(requestId));
+    inboundMessage.setResponseStatus(200);
+    service.postHandle(inboundMessage);
+    reads.set(0);
+  }
+
+  private static RequestEntity message(String requestId) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .build();
+  }
+
+  private int storedDuplicates(String requestId) {
+    return requestRepository.findByMessageId(requestId).orElseThrow()
+        .getDuplicateRequestCount();
+  }
+
+  @Test
+  public void testDuplicatesWithinTheWindowAreAnsweredLocally() {
+    processed("hot");
+    for (var i = 0; i < 5; i++) {
+      final var duplicate = service.preHandle(message("hot"));
+      Assert.assertEquals(RequestStatus.PROCESSED, duplicate.getProcessed());
+      Assert.assertEquals(200, duplicate.getResponseStatus());
+    }
+    Assert.assertEquals("Only the first duplicate is read from the store", 1, reads.get());
+    Assert.assertEquals(4, hotRequests().localAnswers());
+    Assert.assertEquals(0, incrementCalls.get());
+  }
+
+  @Test
+  public void testDuplicatesAfterTheWindowAreReadAgain() throws InterruptedException {
+    processed("cooled");
+    service.preHandle(message("cooled"));
+    Thread.sleep(2 * WINDOW_MILLIS);
+    service.preHandle(message("cooled"));
+    Assert.assertEquals(2, reads.get());
+    Assert.assertEquals(0, hotRequests().localAnswers());
+  }
+
+  @Test
+  public void testRequestsInFlightAreNotAnsweredLocally() {
+    service.preHandle(message("in-flight"));
+    reads.set(0);
+    for (var i = 0; i < 3; i++) {
+      try {
+        service.preHandle(message("in-flight"));
+        Assert.fail("A duplicate of a request in flight is turned away");
+      } catch (IOSaveException e) {
+        Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED, e.getErrorCode());
+      }
+    }
+    Assert.assertEquals(3, reads.get());
+    Assert.assertEquals(0, hotRequests().localAnswers());
+  }
+
+  @Test
+  public void testCountsAreFlushedAsOneIncrementPerId() {
+    processed("first");
+    processed("second");
+    for (var i = 0; i < 5; i++) {
+      service.preHandle(message("first"));
+    }
+    for (var i = 0; i < 3; i++) {
+      service.preHandle(message("second"));
+    }
+    Assert.assertEquals(0, incrementCalls.get());
+    Assert.assertEquals(2, hotRequests().pendingIds());
+
+    hotRequests().flush();
+    Assert.assertEquals(2, incrementCalls.get());
+    Assert.assertEquals(Map.of("first", 5, "second", 3), increments);
+    Assert.assertEquals(5, storedDuplicates("first"));
+    Assert.assertEquals(3, storedDuplicates("second"));
+    Assert.assertEquals(0, hotRequests().pendingIds());
+  }
+
+  @Test
+  public void testStopFlushesWhatIsLeft() throws InterruptedException {
+    processed("stopped");
+    for (var i = 0; i < 4; i++) {
+      service.preHandle(message("stopped"));
+    }
+    Assert.assertEquals(0, incrementCalls.get());
+    hotRequests().stop();
+    Assert.assertEquals(1, incrementCalls.get());
+    Assert.assertEquals(4, storedDuplicates("stopped"));
+    Assert.assertEquals(0, hotRequests().pendingIds());
+  }
+}
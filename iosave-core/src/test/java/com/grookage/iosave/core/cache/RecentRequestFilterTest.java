@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.cache;
+
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.config.RecentRequestsConfig;
+import com.grookage.iosave.core.config.RequestReceiverConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.repository.InMemoryRequestRepository;
+import com.grookage.iosave.core.services.RequestReceiverService;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RecentRequestFilterTest {
+
+  private static final int EXPECTED_REQUESTS = 10_000;
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+
+  private static RecentRequestFilter filter(int windowSeconds) {
+    return new RecentRequestFilter(RecentRequestsConfig.builder()
+        .enabled(true)
+        .expectedRequests(EXPECTED_REQUESTS)
+        .falsePositiveRate(FALSE_POSITIVE_RATE)
+        .windowSeconds(windowSeconds)
+        .build());
+  }
+
+  @Test
+  public void testSeenIdsAreNeverTakenForUnseen() {
+    final var filter = filter(600);
+    for (var i = 0; i < EXPECTED_REQUESTS; i++) {
+      filter.add("seen-" + i);
+    }
+    for (var i = 0; i < EXPECTED_REQUESTS; i++) {
+      Assert.assertFalse(filter.add("seen-" + i));
+    }
+  }
+
+  /*
+    Every probe is recorded too, so the filter fills past expectedRequests as they go. A few
+    probes keep it close enough.
+   */
+  @Test
+  public void testFalsePositiveRateStaysNearTheConfiguredRate() {
+    final var filter = filter(600);
+    for (var i = 0; i < EXPECTED_REQUESTS; i++) {
+      filter.add("seen-" + i);
+    }
+    final var probes = EXPECTED_REQUESTS / 10;
+    var falsePositives = 0;
+    for (var i = 0; i < probes; i++) {
+      if (!filter.add("unseen-" + i)) {
+        falsePositives++;
+      }
+    }
+    final var rate = (double) falsePositives / probes;
+    Assert.assertTrue("False positive rate " + rate, rate <= 2 * FALSE_POSITIVE_RATE);
+  }
+
+  @Test
+  public void testIdsAreRememberedForOneWindowAfterRotation() throws InterruptedException {
+    final var filter = filter(1);
+    Assert.assertTrue(filter.add("remembered"));
+    Assert.assertTrue(filter.add("forgotten"));
+    Thread.sleep(1_200);
+    //Rotates, both are in the previous filter now
+    Assert.assertFalse(filter.add("remembered"));
+    Thread.sleep(1_200);
+    //Rotates again, the filter holding forgotten is dropped, remembered was seen since
+    Assert.assertFalse(filter.add("remembered"));
+    Assert.assertTrue(filter.add("forgotten"));
+  }
+
+  @Test
+  public void testUnseenIdIsClaimedWithoutALookup() {
+    final var reads = new AtomicInteger();
+    final var requestRepository = new InMemoryRequestRepository(
+        InMemoryRepositoryConfig.builder().build()) {
+      @Override
+      public Optional<RequestEntity> findByMessageId(String messageId) {
+        reads.incrementAndGet();
+        return super.findByMessageId(messageId);
+      }
+    };
+    final var config = RequestReceiverConfig.builder()
+        .recentRequests(RecentRequestsConfig.builder()
+            .enabled(true)
+            .expectedRequests(EXPECTED_REQUESTS)
+            .build())
+        .build();
+    final var service = new RequestReceiverService(requestRepository, config);
+
+    final var inboundMessage = service.preHandle(RequestEntity.builder()
+        .requestId("claimed")
+        .build());
+    Assert.assertEquals(RequestStatus.PROCESSING, inboundMessage.getProcessed());
+    Assert.assertEquals(0, reads.get());
+    inboundMessage.setResponseStatus(200);
+    service.postHandle(inboundMessage);
+
+    //Another node never saw the id, its claim finds it stored
+    final var other = new RequestReceiverService(requestRepository, config);
+    final var duplicate = other.preHandle(RequestEntity.builder()
+        .requestId("claimed")
+        .build());
+    Assert.assertEquals(RequestStatus.PROCESSED, duplicate.getProcessed());
+    Assert.assertEquals(200, duplicate.getResponseStatus());
+    Assert.assertEquals(1, other.recentRequests().orElseThrow().skippedLookups());
+    Assert.assertEquals(1, requestRepository.findByMessageId("claimed").orElseThrow()
+        .getDuplicateRequestCount());
+
+    //This node saw it, and looks it up first
+    reads.set(0);
+    final var seen = service.preHandle(RequestEntity.builder()
+        .requestId("claimed")
+        .build());
+    Assert.assertEquals(RequestStatus.PROCESSED, seen.getProcessed());
+    Assert.assertEquals(1, reads.get());
+    Assert.assertEquals(1, service.recentRequests().orElseThrow().lookups());
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.entities;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestEntityTest {
+
+  private static RequestEntity encoded(byte[] body) {
+    final var requestEntity = new RequestEntity();
+    requestEntity.encodeResponseBody(body);
+    return requestEntity;
+  }
+
+  @Test
+  public void testUtf8BodyIsStoredAsText() {
+    final var body = "{\"name\":\"café 😀\"}".getBytes(StandardCharsets.UTF_8);
+    final var requestEntity = encoded(body);
+    Assert.assertNull(requestEntity.getResponseBodyEncoding());
+    Assert.assertEquals("{\"name\":\"café 😀\"}", requestEntity.getResponseBody());
+    Assert.assertArrayEquals(body, requestEntity.decodeResponseBody());
+  }
+
+  @Test
+  public void testOtherBytesRoundTripExactly() {
+    final var latin1 = "café".getBytes(StandardCharsets.ISO_8859_1);
+    final var binary = new byte[256];
+    for (var i = 0; i < binary.length; i++) {
+      binary[i] = (byte) i;
+    }
+    for (final var body : new byte[][]{latin1, binary}) {
+      final var requestEntity = encoded(body);
+      Assert.assertEquals(RequestEntity.BASE64, requestEntity.getResponseBodyEncoding());
+      Assert.assertArrayEquals(body, requestEntity.decodeResponseBody());
+    }
+  }
+
+  @Test
+  public void testEncodingSurvivesSerializationAndCopies() throws Exception {
+    final var body = new byte[]{(byte) 0xff, 0, (byte) 0xfe};
+    final var mapper = new ObjectMapper();
+    final var stored = mapper.readValue(mapper.writeValueAsString(encoded(body)),
+        RequestEntity.class);
+    Assert.assertArrayEquals(body, stored.decodeResponseBody());
+    Assert.assertArrayEquals(body, new RequestEntity(stored).decodeResponseBody());
+    final var completed = new RequestEntity();
+    completed.loadResponseFromMessage(stored);
+    Assert.assertArrayEquals(body, completed.decodeResponseBody());
+  }
+
+  @Test
+  public void testNoBody() {
+    final var requestEntity = encoded(null);
+    Assert.assertNull(requestEntity.getResponseBody());
+    Assert.assertNull(requestEntity.decodeResponseBody());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.repository;
+
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AbstractRequestRepositoryTest {
+
+  private static final String REQUEST_ID = "conflicted";
+
+  private final AtomicInteger saves = new AtomicInteger();
+  private final AtomicInteger changes = new AtomicInteger();
+
+  /*
+    An in memory repository another writer gets to first, its first conflicts saveIfUnchanged
+    calls finding the entity changed since it was read
+   */
+  private InMemoryRequestRepository conflicting(int conflicts) {
+    final var remaining = new AtomicInteger(conflicts);
+    return new InMemoryRequestRepository(InMemoryRepositoryConfig.builder().build()) {
+      @Override
+      public boolean saveIfUnchanged(RequestEntity requestEntity) {
+        saves.incrementAndGet();
+        if (remaining.getAndDecrement() > 0) {
+          incrementDuplicateRequestCount(requestEntity.getRequestId(), 10);
+        }
+        return super.saveIfUnchanged(requestEntity);
+      }
+    };
+  }
+
+  private static InMemoryRequestRepository stored(InMemoryRequestRepository repository) {
+    repository.strictSave(RequestEntity.builder()
+        .requestId(REQUEST_ID)
+        .processed(RequestStatus.PROCESSING)
+        .build());
+    return repository;
+  }
+
+  private Consumer<RequestEntity> incrementByOne() {
+    return requestEntity -> {
+      changes.incrementAndGet();
+      requestEntity.setDuplicateRequestCount(requestEntity.getDuplicateRequestCount() + 1);
+    };
+  }
+
+  private static int duplicates(RequestRepository repository) {
+    return repository.findByMessageId(REQUEST_ID).orElseThrow().getDuplicateRequestCount();
+  }
+
+  @Test
+  public void testConflictingUpdateIsReadAgainAndAppliedOnce() {
+    final var repository = stored(conflicting(1));
+    Assert.assertTrue(repository.updateWithRetries(REQUEST_ID, incrementByOne()));
+    Assert.assertEquals(2, saves.get());
+    Assert.assertEquals(2, changes.get());
+    //The other writer's 10, and this update's 1 on top of it, once
+    Assert.assertEquals(11, duplicates(repository));
+  }
+
+  @Test
+  public void testConflictingUpdateIsReadAgainAndAppliedOnceAsync() {
+    final var repository = stored(conflicting(1));
+    Assert.assertTrue(repository.updateWithRetriesAsync(REQUEST_ID, incrementByOne()).join());
+    Assert.assertEquals(2, saves.get());
+    Assert.assertEquals(11, duplicates(repository));
+  }
+
+  @Test
+  public void testUpdateGivesUpAfterFiveConflicts() {
+    final var repository = stored(conflicting(Integer.MAX_VALUE));
+    try {
+      repository.updateWithRetries(REQUEST_ID, incrementByOne());
+      Assert.fail("An update conflicting on every attempt gives up");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.UPDATE_CONFLICT, e.getErrorCode());
+    }
+    Assert.assertEquals(5, saves.get());
+    Assert.assertEquals(50, duplicates(repository));
+  }
+
+  @Test
+  public void testUpdateGivesUpAfterFiveConflictsAsync() {
+    final var repository = stored(conflicting(Integer.MAX_VALUE));
+    try {
+      repository.updateWithRetriesAsync(REQUEST_ID, incrementByOne()).join();
+      Assert.fail("An update conflicting on every attempt gives up");
+    } catch (CompletionException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.UPDATE_CONFLICT,
+          ((IOSaveException) e.getCause()).getErrorCode());
+    }
+    Assert.assertEquals(5, saves.get());
+  }
+
+  @Test
+  public void testUpdateOfAMissingEntityIsNotApplied() {
+    final var repository = conflicting(0);
+    Assert.assertFalse(repository.updateWithRetries(REQUEST_ID, incrementByOne()));
+    Assert.assertEquals(0, saves.get());
+    Assert.assertEquals(0, changes.get());
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.repository;
+
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import java.util.stream.IntStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InMemoryRequestRepositoryTest {
+
+  private final InMemoryRequestRepository requestRepository = new InMemoryRequestRepository(
+      InMemoryRepositoryConfig.builder().build());
+
+  private static RequestEntity incoming(String requestId) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .processed(RequestStatus.PROCESSING)
+        .build();
+  }
+
+  private static RequestEntity completed(String requestId) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .processed(RequestStatus.PROCESSED)
+        .responseStatus(200)
+        .build();
+  }
+
+  private long generation(String requestId) {
+    return requestRepository.findByMessageId(requestId).orElseThrow().getGeneration();
+  }
+
+  @Test
+  public void testIdsAreForgottenOnceTheirTtlRunsOut() throws InterruptedException {
+    final var expiring = new InMemoryRequestRepository(InMemoryRepositoryConfig.builder()
+        .ttl(1)
+        .build());
+    expiring.strictSave(incoming("expiring"));
+    expiring.strictSave(incoming("rewritten"));
+    Thread.sleep(600);
+    //A write starts the ttl over
+    expiring.complete(completed("rewritten"));
+    Thread.sleep(600);
+    Assert.assertTrue(expiring.findByMessageId("expiring").isEmpty());
+    Assert.assertTrue(expiring.findByMessageId("rewritten").isPresent());
+    //Forgotten, the id can be claimed again
+    Assert.assertTrue(expiring.claim(incoming("expiring")).isEmpty());
+  }
+
+  /*
+    Eviction runs in the background, the size settles at the bound shortly after the writes
+   */
+  @Test
+  public void testEntriesPastTheBoundAreEvicted() throws InterruptedException {
+    final var maxEntries = 100;
+    final var bounded = new InMemoryRequestRepository(InMemoryRepositoryConfig.builder()
+        .maxEntries(maxEntries)
+        .build());
+    IntStream.range(0, 10 * maxEntries)
+        .forEach(i -> bounded.strictSave(incoming("bounded-" + i)));
+    final var deadline = System.nanoTime() + 5_000_000_000L;
+    long present;
+    do {
+      Thread.sleep(10);
+      present = IntStream.range(0, 10 * maxEntries)
+          .filter(i -> bounded.findByMessageId("bounded-" + i).isPresent())
+          .count();
+    } while (present > maxEntries && System.nanoTime() < deadline);
+    Assert.assertTrue("Entries kept " + present, present <= maxEntries);
+  }
+
+  @Test
+  public void testStrictSaveOfAStoredIdIsADuplicate() {
+    requestRepository.strictSave(incoming("strict"));
+    try {
+      requestRepository.strictSave(completed("strict"));
+      Assert.fail("strictSave doesn't write over a stored id");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.DUPLICATE_MESSAGE, e.getErrorCode());
+    }
+    Assert.assertEquals(RequestStatus.PROCESSING,
+        requestRepository.findByMessageId("strict").orElseThrow().getProcessed());
+    Assert.assertEquals(1, generation("strict"));
+  }
+
+  @Test
+  public void testEveryWriteBumpsTheGeneration() {
+    requestRepository.strictSave(incoming("generations"));
+    Assert.assertEquals(1, generation("generations"));
+    requestRepository.incrementDuplicateRequestCount("generations", 1);
+    Assert.assertEquals(2, generation("generations"));
+    requestRepository.complete(completed("generations"));
+    Assert.assertEquals(3, generation("generations"));
+    requestRepository.save(completed("generations"));
+    Assert.assertEquals(4, generation("generations"));
+
+    final var read = requestRepository.findByMessageId("generations").orElseThrow();
+    final var stale = read.toBuilder().generation(3).build();
+    Assert.assertFalse(requestRepository.saveIfUnchanged(stale));
+    Assert.assertTrue(requestRepository.saveIfUnchanged(read));
+    Assert.assertEquals(5, generation("generations"));
+    //What was read is behind now
+    Assert.assertFalse(requestRepository.saveIfUnchanged(read));
+  }
+
+  @Test
+  public void testStoredEntitiesAreCopies() {
+    final var saved = incoming("copies");
+    requestRepository.strictSave(saved);
+    saved.setProcessed(RequestStatus.PROCESSED);
+    final var read = requestRepository.findByMessageId("copies").orElseThrow();
+    Assert.assertEquals(RequestStatus.PROCESSING, read.getProcessed());
+    Assert.assertEquals(0, saved.getGeneration());
+
+    read.setProcessed(RequestStatus.FAILED);
+    read.setDuplicateRequestCount(5);
+    final var again = requestRepository.findByMessageId("copies").orElseThrow();
+    Assert.assertEquals(RequestStatus.PROCESSING, again.getProcessed());
+    Assert.assertEquals(0, again.getDuplicateRequestCount());
+    Assert.assertNotSame(read, again);
+  }
+
+  @Test
+  public void testCompletingAMissingIdFails() {
+    try {
+      requestRepository.complete(completed("missing"));
+      Assert.fail("There is nothing to complete");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.ENTITY_NOT_FOUND, e.getErrorCode());
+    }
+    requestRepository.incrementDuplicateRequestCount("missing", 1);
+    Assert.assertTrue(requestRepository.findByMessageId("missing").isEmpty());
+  }
+}
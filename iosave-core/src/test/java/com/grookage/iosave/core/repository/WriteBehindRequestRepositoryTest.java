@@ -0,0 +1,121 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.repository;
+
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.config.WriteBehindConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WriteBehindRequestRepositoryTest {
+
+  private static final int MAX_RETRIES = 2;
+
+  private final AtomicInteger givenUp = new AtomicInteger();
+
+  /*
+    An in memory repository whose batch writes fail the first failures times
+   */
+  private static InMemoryRequestRepository failing(int failures) {
+    final var remaining = new AtomicInteger(failures);
+    return new InMemoryRequestRepository(InMemoryRepositoryConfig.builder().build()) {
+      @Override
+      public List<RequestEntity> completeAll(List<RequestEntity> requestEntities) {
+        if (remaining.getAndDecrement() > 0) {
+          throw IOSaveException.error(IOSaveException.ErrorCode.STORE_ERROR);
+        }
+        return super.completeAll(requestEntities);
+      }
+    };
+  }
+
+  private static RequestEntity incoming(String requestId) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .processed(RequestStatus.PROCESSING)
+        .build();
+  }
+
+  private static RequestEntity completed(String requestId) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .processed(RequestStatus.PROCESSED)
+        .responseStatus(200)
+        .build();
+  }
+
+  private WriteBehindRequestRepository writeBehind(RequestRepository delegate) {
+    return new WriteBehindRequestRepository(delegate, WriteBehindConfig.builder()
+        .enabled(true)
+        .workers(1)
+        .maxRetries(MAX_RETRIES)
+        .retryBackoffMillis(1)
+        .build(), new WriteBehindListener() {
+      @Override
+      public void onGivenUp(int count) {
+        givenUp.addAndGet(count);
+      }
+    });
+  }
+
+  private static RequestStatus storedStatus(RequestRepository repository, String requestId) {
+    return repository.findByMessageId(requestId).orElseThrow().getProcessed();
+  }
+
+  @Test
+  public void testFailedWritesAreRetried() throws InterruptedException {
+    final var delegate = failing(MAX_RETRIES);
+    final var repository = writeBehind(delegate);
+    delegate.strictSave(incoming("retried"));
+    repository.start();
+    repository.complete(completed("retried"));
+    repository.stop();
+    Assert.assertEquals(RequestStatus.PROCESSED, storedStatus(delegate, "retried"));
+    Assert.assertEquals(0, givenUp.get());
+    Assert.assertEquals(0, repository.queueDepth());
+  }
+
+  @Test
+  public void testWritesFailingPastTheRetriesAreGivenUp() throws InterruptedException {
+    final var delegate = failing(MAX_RETRIES + 1);
+    final var repository = writeBehind(delegate);
+    delegate.strictSave(incoming("given-up"));
+    repository.start();
+    repository.complete(completed("given-up"));
+    repository.stop();
+    Assert.assertEquals(1, givenUp.get());
+    Assert.assertEquals(RequestStatus.PROCESSING, storedStatus(delegate, "given-up"));
+    Assert.assertEquals(RequestStatus.PROCESSING, storedStatus(repository, "given-up"));
+  }
+
+  @Test
+  public void testCompletionsNotStoredAreRetriedAndGivenUp() throws InterruptedException {
+    final var delegate = failing(0);
+    final var repository = writeBehind(delegate);
+    delegate.strictSave(incoming("stored"));
+    repository.start();
+    repository.complete(completed("stored"));
+    repository.complete(completed("missing"));
+    repository.stop();
+    Assert.assertEquals(RequestStatus.PROCESSED, storedStatus(delegate, "stored"));
+    Assert.assertEquals(1, givenUp.get());
+  }
+}
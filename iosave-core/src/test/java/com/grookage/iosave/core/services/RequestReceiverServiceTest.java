@@ -0,0 +1,498 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.core.services;
+
+import com.grookage.iosave.core.config.InFlightWaitConfig;
+import com.grookage.iosave.core.config.InMemoryRepositoryConfig;
+import com.grookage.iosave.core.config.LeaseConfig;
+import com.grookage.iosave.core.config.RequestReceiverConfig;
+import com.grookage.iosave.core.config.SingleFlightConfig;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.repository.InMemoryRequestRepository;
+import com.grookage.iosave.core.repository.RequestRepository;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestReceiverServiceTest {
+
+  private static final long MAX_WAIT_MILLIS = 50;
+
+  private final InMemoryRequestRepository requestRepository = new InMemoryRequestRepository(
+      InMemoryRepositoryConfig.builder().build());
+  private final RequestReceiverService service = new RequestReceiverService(requestRepository,
+      RequestReceiverConfig.builder()
+          .singleFlight(SingleFlightConfig.builder()
+              .enabled(true)
+              .maxWaitMillis(MAX_WAIT_MILLIS)
+              .build())
+          .build());
+
+  private static RequestEntity message(String requestId) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .build();
+  }
+
+  /*
+    A node of its own, its lease held by owner, without single flight
+   */
+  private RequestReceiverService leased(String owner, long durationMillis) {
+    return new RequestReceiverService(requestRepository,
+        RequestReceiverConfig.builder()
+            .lease(LeaseConfig.builder()
+                .enabled(true)
+                .durationMillis(durationMillis)
+                .owner(owner)
+                .build())
+            .build());
+  }
+
+  /*
+    The leader's completion is written without its postHandle landing the flight, as when its
+    response never goes through the filter
+   */
+  private void completeWithoutLanding(RequestEntity leader) {
+    final var completed = new RequestEntity(leader);
+    completed.setResponseStatus(200);
+    completed.setProcessed(RequestStatus.PROCESSED);
+    requestRepository.complete(completed);
+  }
+
+  @Test
+  public void testDuplicateWaitsOnALiveFlight() {
+    final var leader = service.preHandle(message("live"));
+    Assert.assertEquals(RequestStatus.PROCESSING, leader.getProcessed());
+    completeWithoutLanding(leader);
+    try {
+      service.preHandle(message("live"));
+      Assert.fail("A duplicate of a flight not yet landed is turned away once it stops waiting");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED, e.getErrorCode());
+    }
+  }
+
+  @Test
+  public void testStaleFlightIsReplaced() throws InterruptedException {
+    final var leader = service.preHandle(message("stale"));
+    completeWithoutLanding(leader);
+    Thread.sleep(2 * MAX_WAIT_MILLIS);
+    final var duplicate = service.preHandle(message("stale"));
+    Assert.assertEquals(RequestStatus.PROCESSED, duplicate.getProcessed());
+    Assert.assertEquals(200, duplicate.getResponseStatus());
+  }
+
+  @Test
+  public void testLandedFlightIsNotWaitedOn() {
+    final var leader = service.preHandle(message("landed"));
+    leader.setResponseStatus(200);
+    service.postHandle(leader);
+    final var duplicate = service.preHandle(message("landed"));
+    Assert.assertEquals(RequestStatus.PROCESSED, duplicate.getProcessed());
+  }
+
+  /*
+    A leader replaced as stale, its lease run out, lands after a duplicate took it over. Neither its
+    abandon nor its postHandle settle the flight of the duplicate that replaced it.
+   */
+  @Test
+  public void testStaleLeaderLandingLeavesItsReplacementInFlight() throws Exception {
+    final var leased = new RequestReceiverService(requestRepository,
+        RequestReceiverConfig.builder()
+            .singleFlight(SingleFlightConfig.builder()
+                .enabled(true)
+                .maxWaitMillis(10 * MAX_WAIT_MILLIS)
+                .build())
+            .lease(LeaseConfig.builder()
+                .enabled(true)
+                .durationMillis(MAX_WAIT_MILLIS)
+                .build())
+            .build());
+    final var stale = leased.preHandle(message("replaced"));
+    Thread.sleep(10 * MAX_WAIT_MILLIS + MAX_WAIT_MILLIS);
+    final var replacement = leased.preHandle(message("replaced"));
+    Assert.assertEquals(RequestStatus.PROCESSING, replacement.getProcessed());
+    Assert.assertEquals(1, replacement.getRetryCount());
+    final var waiting = leased.preHandleAsync(message("replaced"));
+
+    leased.abandon(stale);
+    stale.setResponseStatus(200);
+    leased.postHandle(stale);
+    Thread.sleep(MAX_WAIT_MILLIS);
+    Assert.assertFalse(waiting.isDone());
+
+    replacement.setResponseStatus(201);
+    leased.postHandle(replacement);
+    final var answered = waiting.get();
+    Assert.assertEquals(RequestStatus.PROCESSED, answered.getProcessed());
+    Assert.assertEquals(201, answered.getResponseStatus());
+  }
+
+  @Test
+  public void testExpiredLeaseIsTakenOverOnce() throws Exception {
+    leased("gone", MAX_WAIT_MILLIS).preHandle(message("expired"));
+    Thread.sleep(2 * MAX_WAIT_MILLIS);
+
+    final var nodes = 8;
+    final var start = new CountDownLatch(1);
+    final var executor = Executors.newFixedThreadPool(nodes);
+    try {
+      final var attempts = new ArrayList<Callable<RequestEntity>>();
+      for (var i = 0; i < nodes; i++) {
+        final var node = leased("node-" + i, 10_000);
+        attempts.add(() -> {
+          start.await();
+          return node.preHandle(message("expired"));
+        });
+      }
+      final var results = new ArrayList<Future<RequestEntity>>();
+      attempts.forEach(attempt -> results.add(executor.submit(attempt)));
+      start.countDown();
+
+      RequestEntity takenOver = null;
+      for (final var result : results) {
+        try {
+          final var entity = result.get();
+          Assert.assertNull("Only one node takes the expired lease over", takenOver);
+          takenOver = entity;
+        } catch (ExecutionException e) {
+          Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED,
+              ((IOSaveException) e.getCause()).getErrorCode());
+        }
+      }
+      Assert.assertNotNull(takenOver);
+      Assert.assertEquals(RequestStatus.PROCESSING, takenOver.getProcessed());
+      Assert.assertEquals(1, takenOver.getRetryCount());
+      final var stored = requestRepository.findByMessageId("expired").orElseThrow();
+      Assert.assertEquals(1, stored.getRetryCount());
+      Assert.assertEquals(takenOver.getLeaseOwner(), stored.getLeaseOwner());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testLiveLeaseIsTurnedAway() {
+    leased("holder", 10_000).preHandle(message("live-lease"));
+    try {
+      leased("other", 10_000).preHandle(message("live-lease"));
+      Assert.fail("A request under a live lease is not taken over");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED, e.getErrorCode());
+    }
+    final var stored = requestRepository.findByMessageId("live-lease").orElseThrow();
+    Assert.assertEquals("holder", stored.getLeaseOwner());
+    Assert.assertEquals(0, stored.getRetryCount());
+  }
+
+  @Test
+  public void testLeaseIsNotRenewedOnceTakenOver() throws InterruptedException {
+    final var previous = leased("previous", MAX_WAIT_MILLIS);
+    previous.preHandle(message("renewed"));
+    Assert.assertTrue(previous.renewLease("renewed"));
+    Thread.sleep(2 * MAX_WAIT_MILLIS);
+
+    final var current = leased("current", 10_000);
+    final var takenOver = current.preHandle(message("renewed"));
+    Assert.assertEquals("current", takenOver.getLeaseOwner());
+    Assert.assertFalse(previous.renewLease("renewed"));
+    Assert.assertTrue(current.renewLease("renewed"));
+  }
+
+  @Test
+  public void testLeaseIsNotRenewedOnceCompleted() {
+    final var node = leased("node", 10_000);
+    final var inboundMessage = node.preHandle(message("completed"));
+    inboundMessage.setResponseStatus(200);
+    node.postHandle(inboundMessage);
+    Assert.assertFalse(node.renewLease("completed"));
+    Assert.assertFalse(node.renewLease("never-received"));
+  }
+
+  private RequestReceiverService claimingFirst() {
+    return new RequestReceiverService(requestRepository, RequestReceiverConfig.builder()
+        .claimFirst(true)
+        .build());
+  }
+
+  @Test
+  public void testClaimFirstCreatesANewId() {
+    final var reads = new AtomicInteger();
+    final var counted = new InMemoryRequestRepository(InMemoryRepositoryConfig.builder().build()) {
+      @Override
+      public Optional<RequestEntity> findByMessageId(String messageId) {
+        reads.incrementAndGet();
+        return super.findByMessageId(messageId);
+      }
+    };
+    final var claiming = new RequestReceiverService(counted, RequestReceiverConfig.builder()
+        .claimFirst(true)
+        .build());
+    final var inboundMessage = claiming.preHandle(message("claimed"));
+    Assert.assertEquals(RequestStatus.PROCESSING, inboundMessage.getProcessed());
+    Assert.assertEquals(0, reads.get());
+    Assert.assertEquals(RequestStatus.PROCESSING,
+        counted.findByMessageId("claimed").orElseThrow().getProcessed());
+  }
+
+  @Test
+  public void testClaimFirstAnswersAProcessedId() {
+    final var claiming = claimingFirst();
+    final var inboundMessage = claiming.preHandle(message("claimed-processed"));
+    inboundMessage.setResponseStatus(200);
+    claiming.postHandle(inboundMessage);
+
+    final var duplicate = claiming.preHandle(message("claimed-processed"));
+    Assert.assertEquals(RequestStatus.PROCESSED, duplicate.getProcessed());
+    Assert.assertEquals(200, duplicate.getResponseStatus());
+    Assert.assertEquals(1, requestRepository.findByMessageId("claimed-processed").orElseThrow()
+        .getDuplicateRequestCount());
+  }
+
+  @Test
+  public void testClaimFirstTurnsAwayAnIdInFlight() {
+    final var claiming = claimingFirst();
+    claiming.preHandle(message("claimed-in-flight"));
+    try {
+      claiming.preHandle(message("claimed-in-flight"));
+      Assert.fail("A duplicate of a request in flight is turned away");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED, e.getErrorCode());
+    }
+    Assert.assertEquals(RequestStatus.PROCESSING,
+        requestRepository.findByMessageId("claimed-in-flight").orElseThrow().getProcessed());
+  }
+
+  /*
+    A node of its own whose duplicates poll the store for up to maxWaitMillis, without single
+    flight
+   */
+  private RequestReceiverService waiting(long maxWaitMillis) {
+    return new RequestReceiverService(requestRepository, RequestReceiverConfig.builder()
+        .inFlightWait(InFlightWaitConfig.builder()
+            .enabled(true)
+            .maxWaitMillis(maxWaitMillis)
+            .initialBackoffMillis(5)
+            .maxBackoffMillis(MAX_WAIT_MILLIS)
+            .build())
+        .build());
+  }
+
+  /*
+    Has another node complete the request a while after a duplicate of it starts waiting
+   */
+  private CompletableFuture<Void> completeLater(String requestId) {
+    final var other = new RequestReceiverService(requestRepository);
+    final var leader = other.preHandle(message(requestId));
+    return CompletableFuture.runAsync(() -> {
+      leader.setResponseStatus(200);
+      other.postHandle(leader);
+    }, CompletableFuture.delayedExecutor(2 * MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testCompletionMidWaitAnswersTheDuplicate() {
+    final var completion = completeLater("awaited");
+    final var duplicate = waiting(10_000).preHandle(message("awaited"));
+    completion.join();
+    Assert.assertEquals(RequestStatus.PROCESSED, duplicate.getProcessed());
+    Assert.assertEquals(200, duplicate.getResponseStatus());
+  }
+
+  @Test
+  public void testCompletionMidWaitAnswersTheDuplicateAsync() {
+    final var completion = completeLater("awaited-async");
+    final var duplicate = waiting(10_000).preHandleAsync(message("awaited-async")).join();
+    completion.join();
+    Assert.assertEquals(RequestStatus.PROCESSED, duplicate.getProcessed());
+    Assert.assertEquals(200, duplicate.getResponseStatus());
+  }
+
+  @Test
+  public void testWaitRunningOutTurnsTheDuplicateAway() {
+    new RequestReceiverService(requestRepository).preHandle(message("timed-out"));
+    final var startedAt = System.nanoTime();
+    try {
+      waiting(2 * MAX_WAIT_MILLIS).preHandle(message("timed-out"));
+      Assert.fail("A duplicate of a request still in flight once the wait is over is turned away");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED, e.getErrorCode());
+    }
+    Assert.assertTrue(System.nanoTime() - startedAt
+        >= TimeUnit.MILLISECONDS.toNanos(2 * MAX_WAIT_MILLIS));
+  }
+
+  @Test
+  public void testWaitRunningOutTurnsTheDuplicateAwayAsync() {
+    new RequestReceiverService(requestRepository).preHandle(message("timed-out-async"));
+    try {
+      waiting(2 * MAX_WAIT_MILLIS).preHandleAsync(message("timed-out-async")).join();
+      Assert.fail("A duplicate of a request still in flight once the wait is over is turned away");
+    } catch (CompletionException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED,
+          ((IOSaveException) e.getCause()).getErrorCode());
+    }
+  }
+
+  @Test
+  public void testNoWaitTurnsTheDuplicateAwayRightAway() {
+    new RequestReceiverService(requestRepository).preHandle(message("not-waited"));
+    final var node = waiting(10_000);
+    final var startedAt = System.nanoTime();
+    try {
+      node.preHandle(message("not-waited"), 0);
+      Assert.fail("A duplicate of a request in flight is turned away");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED, e.getErrorCode());
+    }
+    try {
+      node.preHandleAsync(message("not-waited"), 0).join();
+      Assert.fail("A duplicate of a request in flight is turned away");
+    } catch (CompletionException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.MESSAGE_UNPROCESSED,
+          ((IOSaveException) e.getCause()).getErrorCode());
+    }
+    Assert.assertTrue(System.nanoTime() - startedAt < TimeUnit.SECONDS.toNanos(5));
+  }
+
+  /*
+    What a call came to, the entity's state or the error it failed with. An async failure must be
+    the error the sync call throws, wrapped in a CompletionException.
+   */
+  private static String outcome(Supplier<RequestEntity> call) {
+    try {
+      final var entity = call.get();
+      return entity.getProcessed() + "/" + entity.getResponseStatus() + "/"
+          + entity.getDuplicateRequestCount() + "/" + entity.getRetryCount();
+    } catch (CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOSaveException);
+      return ((IOSaveException) e.getCause()).getErrorCode().name();
+    } catch (IOSaveException e) {
+      return e.getErrorCode().name();
+    }
+  }
+
+  private static String stored(RequestRepository repository, String requestId) {
+    return outcome(() -> repository.findByMessageId(requestId).orElseThrow());
+  }
+
+  /*
+    Runs the setup on a store of its own for each of preHandle and preHandleAsync, then has both
+    handle the same message, and checks they answer it and leave the store the same way
+   */
+  private static String preHandleParity(Consumer<RequestReceiverService> setup,
+      RequestEntity message) {
+    final var syncRepository = new InMemoryRequestRepository(
+        InMemoryRepositoryConfig.builder().build());
+    final var syncService = new RequestReceiverService(syncRepository);
+    setup.accept(syncService);
+    final var sync = outcome(() -> syncService.preHandle(new RequestEntity(message)));
+
+    final var asyncRepository = new InMemoryRequestRepository(
+        InMemoryRepositoryConfig.builder().build());
+    final var asyncService = new RequestReceiverService(asyncRepository);
+    setup.accept(asyncService);
+    final var async = outcome(() -> asyncService.preHandleAsync(new RequestEntity(message)).join());
+
+    Assert.assertEquals(sync, async);
+    Assert.assertEquals(stored(syncRepository, message.getRequestId()),
+        stored(asyncRepository, message.getRequestId()));
+    return sync;
+  }
+
+  private static Consumer<RequestReceiverService> handled(String requestId, int responseStatus) {
+    return service -> {
+      final var inboundMessage = service.preHandle(message(requestId));
+      inboundMessage.setResponseStatus(responseStatus);
+      service.postHandle(inboundMessage);
+    };
+  }
+
+  @Test
+  public void testPreHandleAsyncMatchesPreHandle() {
+    Assert.assertEquals("PROCESSING/0/0/0", preHandleParity(service -> {
+    }, message("new")));
+    Assert.assertEquals("PROCESSED/200/1/0",
+        preHandleParity(handled("processed", 200), message("processed")));
+    Assert.assertEquals("DUPLICATE_MESSAGE",
+        preHandleParity(handled("failed", 500), message("failed")));
+    Assert.assertEquals("MESSAGE_UNPROCESSED",
+        preHandleParity(service -> service.preHandle(message("in-flight")),
+            message("in-flight")));
+    Assert.assertEquals("REQUEST_FINGERPRINT_MISMATCH", preHandleParity(
+        service -> service.preHandle(message("fingerprinted").toBuilder()
+            .requestFingerprint("first")
+            .build()),
+        message("fingerprinted").toBuilder()
+            .requestFingerprint("second")
+            .build()));
+  }
+
+  @Test
+  public void testPostHandleAsyncMatchesPostHandle() {
+    for (final var responseStatus : new int[]{200, 500}) {
+      final var syncRepository = new InMemoryRequestRepository(
+          InMemoryRepositoryConfig.builder().build());
+      final var syncService = new RequestReceiverService(syncRepository);
+      final var syncMessage = syncService.preHandle(message("completed"));
+      syncMessage.setResponseStatus(responseStatus);
+      syncService.postHandle(syncMessage);
+
+      final var asyncRepository = new InMemoryRequestRepository(
+          InMemoryRepositoryConfig.builder().build());
+      final var asyncService = new RequestReceiverService(asyncRepository);
+      final var asyncMessage = asyncService.preHandleAsync(message("completed")).join();
+      asyncMessage.setResponseStatus(responseStatus);
+      asyncService.postHandleAsync(asyncMessage).join();
+
+      Assert.assertEquals(syncMessage.getProcessed(), asyncMessage.getProcessed());
+      Assert.assertEquals(stored(syncRepository, "completed"),
+          stored(asyncRepository, "completed"));
+    }
+  }
+
+  @Test
+  public void testPostHandleAsyncFailsAsPostHandleThrows() {
+    final var missing = message("missing");
+    missing.setResponseStatus(200);
+    final var sync = outcome(() -> {
+      service.postHandle(missing);
+      return missing;
+    });
+    final var completion = service.postHandleAsync(missing);
+    Assert.assertTrue(completion.isCompletedExceptionally());
+    final var async = outcome(() -> {
+      completion.join();
+      return missing;
+    });
+    Assert.assertEquals("ENTITY_NOT_FOUND", sync);
+    Assert.assertEquals(sync, async);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.jdbc.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class JdbcRepositoryConfig {
+
+  @NotEmpty
+  private String jdbcUrl;
+  private String username;
+  private String password;
+  @Min(1)
+  @Builder.Default
+  private int maximumPoolSize = 16;
+  /*
+    Connections kept open when idle, as many as maximumPoolSize when 0
+   */
+  @Min(0)
+  private int minimumIdle;
+  @Min(250)
+  @Builder.Default
+  private long connectionTimeoutMillis = 1000;
+  /*
+    Prepared statements each connection keeps parsed, passed on to MySQL and PostgreSQL drivers.
+    Others cache statements their own way, or through dataSourceProperties.
+   */
+  @Min(0)
+  @Builder.Default
+  private int statementCacheSize = 256;
+  /*
+    Passed on to the driver as they are, over what iosave sets
+   */
+  @NotNull
+  @Builder.Default
+  private Map<String, String> dataSourceProperties = new HashMap<>();
+  @NotEmpty
+  @Builder.Default
+  private String tableName = "iosave_requests";
+  /*
+    Creates the table as the repository starts if it doesn't exist, with bodies in columns of
+    textType
+   */
+  private boolean createTable;
+  @NotEmpty
+  @Builder.Default
+  private String textType = "TEXT";
+  /*
+    Seconds a request id is remembered for after its last write, 0 to keep it forever
+   */
+  @Min(0)
+  private int ttl;
+  /*
+    How often rows past their ttl are deleted, once the repository is started
+   */
+  @Min(1)
+  @Builder.Default
+  private int purgeIntervalSeconds = 60;
+  /*
+    Most completions written in a single JDBC batch
+   */
+  @Min(1)
+  @Builder.Default
+  private int batchSize = 100;
+}
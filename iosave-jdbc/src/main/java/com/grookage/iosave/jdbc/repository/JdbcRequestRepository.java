@@ -0,0 +1,365 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.jdbc.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.repository.AbstractRequestRepository;
+import com.grookage.iosave.jdbc.config.JdbcRepositoryConfig;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A {@link com.grookage.iosave.core.repository.RequestRepository} on a relational database, a row
+ * per request id. Ids are claimed with a plain INSERT, the primary key turning duplicates away, and
+ * rows are changed with UPDATEs conditional on the generation column, which every write bumps.
+ * Completions and duplicate counts are single UPDATEs that read nothing, and
+ * {@link #completeAll(List)} writes its completions in JDBC batches of {@code batchSize}, a
+ * transaction each.
+ * <p>
+ * Rows are remembered for {@code ttl} seconds after their last write. Expired rows count as absent
+ * and are deleted every {@code purgeIntervalSeconds} once {@link #start()}ed.
+ */
+@Slf4j
+public class JdbcRequestRepository extends AbstractRequestRepository {
+
+  private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+  private final DataSource dataSource;
+  private final JdbcRepositoryConfig config;
+  private final RequestTable table;
+  private final long ttlMillis;
+  private ScheduledExecutorService purger;
+
+  public JdbcRequestRepository(final DataSource dataSource, final JdbcRepositoryConfig config,
+      final ObjectMapper mapper) {
+    this.dataSource = dataSource;
+    this.config = config;
+    this.table = new RequestTable(config.getTableName(), config.getTextType(), mapper);
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(config.getTtl());
+    if (config.isCreateTable()) {
+      createTable();
+    }
+  }
+
+  private static IOSaveException storeError(SQLException e) {
+    log.error("Can't access the request table", e);
+    return IOSaveException.propagate(IOSaveException.ErrorCode.STORE_ERROR, e);
+  }
+
+  /*
+    SQLSTATE class 23 is an integrity constraint violation, the only one an insert of a whole row
+    can run into is the primary key's
+   */
+  private static boolean isDuplicateKey(SQLException e) {
+    return e instanceof SQLIntegrityConstraintViolationException
+        || (null != e.getSQLState() && e.getSQLState().startsWith("23"));
+  }
+
+  /*
+    Ids too long for the request_id column are turned away before they are written, rather than
+    failing the statement
+   */
+  private static void checkId(RequestEntity requestEntity) {
+    if (!RequestTable.fitsId(requestEntity.getRequestId())) {
+      throw IOSaveException.error(IOSaveException.ErrorCode.BAD_REQUEST, Map.of("cause",
+          String.format("request ids are at most %d characters", RequestTable.MAX_ID_LENGTH)));
+    }
+  }
+
+  private void createTable() {
+    try (var connection = dataSource.getConnection();
+        var statement = connection.createStatement()) {
+      statement.execute(table.create());
+      try {
+        statement.execute(table.createExpiryIndex());
+      } catch (SQLException e) {
+        log.debug("Index on expires_at not created, it likely exists: {}", e.getMessage());
+      }
+    } catch (SQLException e) {
+      throw storeError(e);
+    }
+  }
+
+  public synchronized void start() {
+    if (null != purger || ttlMillis <= 0) {
+      return;
+    }
+    purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final var thread = new Thread(runnable, "iosave-jdbc-purger");
+      thread.setDaemon(true);
+      return thread;
+    });
+    purger.scheduleWithFixedDelay(this::purgeExpired, config.getPurgeIntervalSeconds(),
+        config.getPurgeIntervalSeconds(), TimeUnit.SECONDS);
+  }
+
+  public synchronized void stop() throws InterruptedException {
+    if (null == purger) {
+      return;
+    }
+    purger.shutdown();
+    purger.awaitTermination(config.getPurgeIntervalSeconds(), TimeUnit.SECONDS);
+    purger = null;
+  }
+
+  /**
+   * Deletes the rows past their ttl, returning how many were
+   */
+  public int purgeExpired() {
+    try (var connection = dataSource.getConnection();
+        var statement = connection.prepareStatement(table.purgeExpired())) {
+      statement.setLong(1, System.currentTimeMillis());
+      final var purged = statement.executeUpdate();
+      log.debug("Purged {} expired requests", purged);
+      return purged;
+    } catch (SQLException e) {
+      log.error("Can't purge expired requests", e);
+      return 0;
+    }
+  }
+
+  private Long expiresAt(long now) {
+    return ttlMillis > 0 ? now + ttlMillis : null;
+  }
+
+  private boolean insert(Connection connection, RequestEntity requestEntity, long now)
+      throws SQLException {
+    try (var statement = connection.prepareStatement(table.insert())) {
+      table.bind(statement, requestEntity, expiresAt(now), true);
+      statement.executeUpdate();
+      return true;
+    } catch (SQLException e) {
+      if (isDuplicateKey(e)) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  /*
+    Deletes the row of the id if it has expired, so that the id can be inserted afresh
+   */
+  private boolean deleteExpired(Connection connection, String requestId, long now)
+      throws SQLException {
+    if (ttlMillis <= 0) {
+      return false;
+    }
+    try (var statement = connection.prepareStatement(table.deleteExpired())) {
+      statement.setString(1, requestId);
+      statement.setLong(2, now);
+      return statement.executeUpdate() > 0;
+    }
+  }
+
+  private int update(Connection connection, String sql, RequestEntity requestEntity, long now,
+      Integer generation) throws SQLException {
+    try (var statement = connection.prepareStatement(sql)) {
+      var index = table.bind(statement, requestEntity, expiresAt(now), false);
+      statement.setString(index++, requestEntity.getRequestId());
+      statement.setLong(index++, now);
+      if (null != generation) {
+        statement.setInt(index, generation);
+      }
+      return statement.executeUpdate();
+    }
+  }
+
+  private long touch(RequestEntity requestEntity) {
+    final var now = System.currentTimeMillis();
+    requestEntity.setUpdatedAt(new Date(now));
+    return now;
+  }
+
+  @Override
+  public boolean connected() {
+    try (var connection = dataSource.getConnection()) {
+      return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    } catch (SQLException e) {
+      log.error("Can't connect to the request table", e);
+      return false;
+    }
+  }
+
+  @Override
+  public Optional<RequestEntity> findByMessageId(String messageId) {
+    try (var connection = dataSource.getConnection();
+        var statement = connection.prepareStatement(table.select())) {
+      statement.setString(1, messageId);
+      try (var row = statement.executeQuery()) {
+        if (!row.next() || !table.isLive(row, System.currentTimeMillis())) {
+          return Optional.empty();
+        }
+        return Optional.of(table.toEntity(row));
+      }
+    } catch (SQLException e) {
+      throw storeError(e);
+    }
+  }
+
+  @Override
+  public void strictSave(RequestEntity requestEntity) {
+    checkId(requestEntity);
+    final var now = touch(requestEntity);
+    try (var connection = dataSource.getConnection()) {
+      if (insert(connection, requestEntity, now)
+          || (deleteExpired(connection, requestEntity.getRequestId(), now)
+          && insert(connection, requestEntity, now))) {
+        return;
+      }
+    } catch (SQLException e) {
+      throw storeError(e);
+    }
+    throw IOSaveException.error(IOSaveException.ErrorCode.DUPLICATE_MESSAGE);
+  }
+
+  /*
+    An UPDATE, or an INSERT where there is no row to update. An insert losing to a concurrent
+    one updates what that one inserted.
+   */
+  @Override
+  public void save(RequestEntity requestEntity) {
+    checkId(requestEntity);
+    final var now = touch(requestEntity);
+    try (var connection = dataSource.getConnection()) {
+      if (update(connection, table.update(), requestEntity, now, null) > 0) {
+        return;
+      }
+      deleteExpired(connection, requestEntity.getRequestId(), now);
+      if (insert(connection, requestEntity, now)
+          || update(connection, table.update(), requestEntity, now, null) > 0) {
+        return;
+      }
+    } catch (SQLException e) {
+      throw storeError(e);
+    }
+    throw IOSaveException.error(IOSaveException.ErrorCode.UPDATE_CONFLICT);
+  }
+
+  @Override
+  public boolean saveIfUnchanged(RequestEntity requestEntity) {
+    final var now = touch(requestEntity);
+    try (var connection = dataSource.getConnection()) {
+      return update(connection, table.updateIfGeneration(), requestEntity, now,
+          requestEntity.getGeneration()) > 0;
+    } catch (SQLException e) {
+      throw storeError(e);
+    }
+  }
+
+  @Override
+  public void incrementDuplicateRequestCount(String messageId, int count) {
+    final var now = System.currentTimeMillis();
+    try (var connection = dataSource.getConnection();
+        var statement = connection.prepareStatement(table.incrementDuplicateCount())) {
+      table.bindIncrement(statement, messageId, count, now, expiresAt(now));
+      statement.executeUpdate();
+    } catch (SQLException e) {
+      throw storeError(e);
+    }
+  }
+
+  @Override
+  public void complete(RequestEntity requestEntity) {
+    final var now = System.currentTimeMillis();
+    final int updated;
+    try (var connection = dataSource.getConnection();
+        var statement = connection.prepareStatement(table.complete())) {
+      table.bindCompletion(statement, requestEntity, now, expiresAt(now));
+      updated = statement.executeUpdate();
+    } catch (SQLException e) {
+      throw storeError(e);
+    }
+    if (0 == updated) {
+      throw entityNotFound(requestEntity.getRequestId());
+    }
+  }
+
+  /*
+    A batch failing part way is rolled back and its completions written one by one, drivers
+    differ on whether they go on past a failed statement. Losing the connection writes the
+    completions not yet committed one by one, those committed aren't written again.
+   */
+  @Override
+  public List<RequestEntity> completeAll(List<RequestEntity> requestEntities) {
+    final var failed = new ArrayList<RequestEntity>();
+    final var retried = new ArrayList<RequestEntity>();
+    /* The completions before this one are committed, or in retried */
+    var settled = 0;
+    try (var connection = dataSource.getConnection();
+        var statement = connection.prepareStatement(table.complete())) {
+      connection.setAutoCommit(false);
+      while (settled < requestEntities.size()) {
+        final var batch = requestEntities.subList(settled,
+            Math.min(requestEntities.size(), settled + config.getBatchSize()));
+        try {
+          final var counts = executeBatch(statement, batch);
+          connection.commit();
+          for (var i = 0; i < counts.length; i++) {
+            if (0 == counts[i] || Statement.EXECUTE_FAILED == counts[i]) {
+              log.error("Can't complete the inbound entity with messageId {}, it isn't stored",
+                  batch.get(i).getRequestId());
+              failed.add(batch.get(i));
+            }
+          }
+        } catch (BatchUpdateException e) {
+          log.warn("A batch of {} completions failed, writing them one by one", batch.size(), e);
+          retried.addAll(batch);
+          //Settled before the rollback, a rollback failing mustn't retry the batch twice
+          settled += batch.size();
+          connection.rollback();
+          continue;
+        }
+        settled += batch.size();
+      }
+    } catch (SQLException e) {
+      log.error("Can't write a batch of completions, writing the {} left one by one",
+          requestEntities.size() - settled, e);
+      retried.addAll(requestEntities.subList(settled, requestEntities.size()));
+    }
+    failed.addAll(super.completeAll(retried));
+    return failed;
+  }
+
+  private int[] executeBatch(PreparedStatement statement, List<RequestEntity> batch)
+      throws SQLException {
+    final var now = System.currentTimeMillis();
+    for (final var requestEntity : batch) {
+      table.bindCompletion(statement, requestEntity, now, expiresAt(now));
+      statement.addBatch();
+    }
+    try {
+      return statement.executeBatch();
+    } finally {
+      statement.clearBatch();
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.jdbc.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.utils.ResponseHeadersDeserializer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Date;
+import java.util.Map;
+
+/*
+  The statements a request table is written and read with, a column per field of the entity.
+  Headers are a JSON object, dates epoch millis. expires_at is when the row stops counting, null
+  when rows never expire, and is set afresh on every write.
+ */
+class RequestTable {
+
+  /* Characters of the request_id column */
+  static final int MAX_ID_LENGTH = 255;
+
+  private static final String COLUMNS = "request_id, trace_id, request_body, "
+      + "request_fingerprint, status, retry_count, response_status, response_headers, "
+      + "response_body, response_body_encoding, duplicate_count, lease_owner, "
+      + "lease_expires_at, created_at, processed_at, updated_at, expires_at, generation";
+  private static final String ENTITY_COLUMNS = "trace_id = ?, request_body = ?, "
+      + "request_fingerprint = ?, status = ?, retry_count = ?, response_status = ?, "
+      + "response_headers = ?, response_body = ?, response_body_encoding = ?, "
+      + "duplicate_count = ?, lease_owner = ?, lease_expires_at = ?, created_at = ?, "
+      + "processed_at = ?, updated_at = ?, expires_at = ?";
+  private static final String LIVE = "(expires_at IS NULL OR expires_at > ?)";
+
+  private final String table;
+  private final String textType;
+  private final ObjectMapper mapper;
+
+  RequestTable(String table, String textType, ObjectMapper mapper) {
+    this.table = table;
+    this.textType = textType;
+    this.mapper = mapper;
+  }
+
+  String create() {
+    return "CREATE TABLE IF NOT EXISTS " + table + " ("
+        + "request_id VARCHAR(" + MAX_ID_LENGTH + ") NOT NULL PRIMARY KEY, "
+        + "trace_id VARCHAR(255), "
+        + "request_body " + textType + ", "
+        + "request_fingerprint VARCHAR(64), "
+        + "status VARCHAR(16) NOT NULL, "
+        + "retry_count INT NOT NULL, "
+        + "response_status INT NOT NULL, "
+        + "response_headers " + textType + ", "
+        + "response_body " + textType + ", "
+        + "response_body_encoding VARCHAR(16), "
+        + "duplicate_count INT NOT NULL, "
+        + "lease_owner VARCHAR(255), "
+        + "lease_expires_at BIGINT, "
+        + "created_at BIGINT, "
+        + "processed_at BIGINT, "
+        + "updated_at BIGINT, "
+        + "expires_at BIGINT, "
+        + "generation INT NOT NULL)";
+  }
+
+  String createExpiryIndex() {
+    return "CREATE INDEX " + table + "_expires_at ON " + table + " (expires_at)";
+  }
+
+  String insert() {
+    return "INSERT INTO " + table + " (" + COLUMNS + ") "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1)";
+  }
+
+  String select() {
+    return "SELECT " + COLUMNS + " FROM " + table + " WHERE request_id = ?";
+  }
+
+  String update() {
+    return "UPDATE " + table + " SET " + ENTITY_COLUMNS + ", generation = generation + 1 "
+        + "WHERE request_id = ? AND " + LIVE;
+  }
+
+  String updateIfGeneration() {
+    return update() + " AND generation = ?";
+  }
+
+  String complete() {
+    return "UPDATE " + table + " SET response_status = ?, response_headers = ?, "
+        + "response_body = ?, response_body_encoding = ?, status = ?, processed_at = ?, "
+        + "updated_at = ?, expires_at = ?, generation = generation + 1 "
+        + "WHERE request_id = ? AND " + LIVE;
+  }
+
+  String incrementDuplicateCount() {
+    return "UPDATE " + table + " SET duplicate_count = duplicate_count + ?, updated_at = ?, "
+        + "expires_at = ?, generation = generation + 1 WHERE request_id = ? AND " + LIVE;
+  }
+
+  String deleteExpired() {
+    return "DELETE FROM " + table + " WHERE request_id = ? AND expires_at <= ?";
+  }
+
+  String purgeExpired() {
+    return "DELETE FROM " + table + " WHERE expires_at <= ?";
+  }
+
+  static boolean fitsId(String requestId) {
+    return null == requestId || requestId.codePointCount(0, requestId.length()) <= MAX_ID_LENGTH;
+  }
+
+  private static RequestStatus statusOf(RequestEntity requestEntity) {
+    return null == requestEntity.getProcessed()
+        ? RequestStatus.PROCESSING : requestEntity.getProcessed();
+  }
+
+  private static void setMillis(PreparedStatement statement, int index, Date date)
+      throws SQLException {
+    setMillis(statement, index, null == date ? null : date.getTime());
+  }
+
+  private static void setMillis(PreparedStatement statement, int index, Long millis)
+      throws SQLException {
+    if (null == millis) {
+      statement.setNull(index, Types.BIGINT);
+    } else {
+      statement.setLong(index, millis);
+    }
+  }
+
+  private static Date getDate(ResultSet row, String column) throws SQLException {
+    final var millis = row.getLong(column);
+    return row.wasNull() ? null : new Date(millis);
+  }
+
+  private String headers(Map<String, String> headers) throws SQLException {
+    try {
+      return null == headers ? null : mapper.writeValueAsString(headers);
+    } catch (JsonProcessingException e) {
+      throw new SQLException("Response headers can't be written", e);
+    }
+  }
+
+  /*
+    Binds the entity from the first parameter on, in the order of ENTITY_COLUMNS, the request id
+    first when inserting. Returns the next parameter.
+   */
+  int bind(PreparedStatement statement, RequestEntity requestEntity, Long expiresAt,
+      boolean withId) throws SQLException {
+    var index = 1;
+    if (withId) {
+      statement.setString(index++, requestEntity.getRequestId());
+    }
+    statement.setString(index++, requestEntity.getTraceId());
+    statement.setString(index++, requestEntity.getRequestBody());
+    statement.setString(index++, requestEntity.getRequestFingerprint());
+    statement.setString(index++, statusOf(requestEntity).name());
+    statement.setInt(index++, requestEntity.getRetryCount());
+    statement.setInt(index++, requestEntity.getResponseStatus());
+    statement.setString(index++, headers(requestEntity.getResponseHeaders()));
+    statement.setString(index++, requestEntity.getResponseBody());
+    statement.setString(index++, requestEntity.getResponseBodyEncoding());
+    statement.setInt(index++, requestEntity.getDuplicateRequestCount());
+    statement.setString(index++, requestEntity.getLeaseOwner());
+    setMillis(statement, index++, requestEntity.getLeaseExpiresAt());
+    setMillis(statement, index++, requestEntity.getCreatedAt());
+    setMillis(statement, index++, requestEntity.getProcessedAt());
+    setMillis(statement, index++, requestEntity.getUpdatedAt());
+    setMillis(statement, index++, expiresAt);
+    return index;
+  }
+
+  /*
+    Binds what complete() writes, as RequestEntity#loadResponseFromMessage would, and the
+    request id it is written to
+   */
+  void bindCompletion(PreparedStatement statement, RequestEntity requestEntity, long now,
+      Long expiresAt) throws SQLException {
+    statement.setInt(1, requestEntity.getResponseStatus());
+    statement.setString(2, headers(requestEntity.getResponseHeaders()));
+    statement.setString(3, requestEntity.getResponseBody());
+    statement.setString(4, requestEntity.getResponseBodyEncoding());
+    statement.setString(5, statusOf(requestEntity).name());
+    setMillis(statement, 6, requestEntity.getProcessedAt());
+    statement.setLong(7, now);
+    setMillis(statement, 8, expiresAt);
+    statement.setString(9, requestEntity.getRequestId());
+    statement.setLong(10, now);
+  }
+
+  void bindIncrement(PreparedStatement statement, String requestId, int count, long now,
+      Long expiresAt) throws SQLException {
+    statement.setInt(1, count);
+    statement.setLong(2, now);
+    setMillis(statement, 3, expiresAt);
+    statement.setString(4, requestId);
+    statement.setLong(5, now);
+  }
+
+  /*
+    Reads leave expired rows to the purge, rather than deleting them
+   */
+  boolean isLive(ResultSet row, long now) throws SQLException {
+    final var expiresAt = row.getLong("expires_at");
+    return row.wasNull() || expiresAt > now;
+  }
+
+  RequestEntity toEntity(ResultSet row) throws SQLException {
+    final var headers = row.getString("response_headers");
+    return RequestEntity.builder()
+        .requestId(row.getString("request_id"))
+        .traceId(row.getString("trace_id"))
+        .requestBody(row.getString("request_body"))
+        .requestFingerprint(row.getString("request_fingerprint"))
+        .processed(RequestStatus.valueOf(row.getString("status")))
+        .retryCount(row.getInt("retry_count"))
+        .responseStatus(row.getInt("response_status"))
+        .responseHeaders(null == headers ? null : ResponseHeadersDeserializer.parse(headers))
+        .responseBody(row.getString("response_body"))
+        .responseBodyEncoding(row.getString("response_body_encoding"))
+        .duplicateRequestCount(row.getInt("duplicate_count"))
+        .leaseOwner(row.getString("lease_owner"))
+        .leaseExpiresAt(getDate(row, "lease_expires_at"))
+        .createdAt(getDate(row, "created_at"))
+        .processedAt(getDate(row, "processed_at"))
+        .updatedAt(getDate(row, "updated_at"))
+        .generation(row.getInt("generation"))
+        .build();
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.jdbc.utils;
+
+import com.grookage.iosave.jdbc.config.JdbcRepositoryConfig;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+@UtilityClass
+@Slf4j
+public class DataSourceUtils {
+
+  /*
+    Statement caching is the driver's, and each driver has its own properties for it
+   */
+  private static void cacheStatements(HikariConfig hikariConfig, JdbcRepositoryConfig config) {
+    final var cacheSize = String.valueOf(config.getStatementCacheSize());
+    if (config.getJdbcUrl().startsWith("jdbc:mysql:")
+        || config.getJdbcUrl().startsWith("jdbc:mariadb:")) {
+      hikariConfig.addDataSourceProperty("cachePrepStmts",
+          String.valueOf(config.getStatementCacheSize() > 0));
+      hikariConfig.addDataSourceProperty("prepStmtCacheSize", cacheSize);
+      hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+      hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
+      hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
+    } else if (config.getJdbcUrl().startsWith("jdbc:postgresql:")) {
+      hikariConfig.addDataSourceProperty("preparedStatementCacheQueries", cacheSize);
+    }
+  }
+
+  /**
+   * A pool of connections to the database, opened as it is created. Close it after the repository
+   * using it.
+   */
+  public static HikariDataSource provideDataSource(JdbcRepositoryConfig config) {
+    log.info("Starting the iosave connection pool");
+    final var hikariConfig = new HikariConfig();
+    hikariConfig.setPoolName("iosave");
+    hikariConfig.setJdbcUrl(config.getJdbcUrl());
+    hikariConfig.setUsername(config.getUsername());
+    hikariConfig.setPassword(config.getPassword());
+    hikariConfig.setMaximumPoolSize(config.getMaximumPoolSize());
+    if (config.getMinimumIdle() > 0) {
+      hikariConfig.setMinimumIdle(config.getMinimumIdle());
+    }
+    hikariConfig.setConnectionTimeout(config.getConnectionTimeoutMillis());
+    cacheStatements(hikariConfig, config);
+    config.getDataSourceProperties().forEach(hikariConfig::addDataSourceProperty);
+    return new HikariDataSource(hikariConfig);
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.jdbc.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.services.RequestReceiverService;
+import com.grookage.iosave.jdbc.config.JdbcRepositoryConfig;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcRequestRepositoryTest {
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private JdbcDataSource dataSource;
+
+  private static RequestEntity incoming(String requestId) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .processed(RequestStatus.PROCESSING)
+        .createdAt(new Date())
+        .build();
+  }
+
+  private static RequestEntity completed(String requestId) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .processed(RequestStatus.PROCESSED)
+        .responseStatus(200)
+        .responseBody("{\"id\":\"" + requestId + "\"}")
+        .processedAt(new Date())
+        .build();
+  }
+
+  private static List<String> idsOf(List<RequestEntity> requestEntities) {
+    return requestEntities.stream().map(RequestEntity::getRequestId).collect(Collectors.toList());
+  }
+
+  /*
+    A data source whose connections fail the commit, or rollback, numbered failingCall, having
+    rolled the transaction back
+   */
+  private static DataSource failing(DataSource dataSource, String failingMethod,
+      int failingCall) {
+    final var calls = new AtomicInteger();
+    return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+        new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+          final var connection = (Connection) method.invoke(dataSource, args);
+          return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+              new Class<?>[]{Connection.class}, (connectionProxy, connectionMethod, arguments) -> {
+                if (failingMethod.equals(connectionMethod.getName())
+                    && calls.incrementAndGet() == failingCall) {
+                  connection.rollback();
+                  throw new SQLException("Connection reset");
+                }
+                try {
+                  return connectionMethod.invoke(connection, arguments);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+              });
+        });
+  }
+
+  @Before
+  public void setUp() {
+    dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:iosave-" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+  }
+
+  private JdbcRepositoryConfig config() {
+    return JdbcRepositoryConfig.builder()
+        .jdbcUrl(dataSource.getURL())
+        .createTable(true)
+        .ttl(3600)
+        .batchSize(2)
+        .build();
+  }
+
+  private JdbcRequestRepository repository(DataSource dataSource) {
+    return new JdbcRequestRepository(dataSource, config(), new ObjectMapper());
+  }
+
+  private void expire(String requestId) throws SQLException {
+    try (var connection = dataSource.getConnection();
+        var statement = connection.prepareStatement(
+            "UPDATE iosave_requests SET expires_at = ? WHERE request_id = ?")) {
+      statement.setLong(1, System.currentTimeMillis() - 1);
+      statement.setString(2, requestId);
+      statement.executeUpdate();
+    }
+  }
+
+  private List<RequestEntity> stored(JdbcRequestRepository repository, int count) {
+    final var completions = new ArrayList<RequestEntity>();
+    for (var i = 0; i < count; i++) {
+      repository.strictSave(incoming("request-" + i));
+      completions.add(completed("request-" + i));
+    }
+    return completions;
+  }
+
+  private void assertCompletedOnce(JdbcRequestRepository repository,
+      List<RequestEntity> completions) {
+    for (final var completion : completions) {
+      final var stored = repository.findByMessageId(completion.getRequestId()).orElseThrow();
+      Assert.assertEquals(RequestStatus.PROCESSED, stored.getProcessed());
+      Assert.assertEquals(completion.getResponseBody(), stored.getResponseBody());
+      Assert.assertEquals(2, stored.getGeneration());
+    }
+  }
+
+  @Test
+  public void testClaimTurnsAwayDuplicates() {
+    final var repository = repository(dataSource);
+    repository.strictSave(incoming("claimed"));
+    try {
+      repository.strictSave(incoming("claimed"));
+      Assert.fail("A claimed id can't be claimed again");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.DUPLICATE_MESSAGE, e.getErrorCode());
+    }
+    final var stored = repository.findByMessageId("claimed").orElseThrow();
+    Assert.assertEquals(RequestStatus.PROCESSING, stored.getProcessed());
+    Assert.assertEquals(1, stored.getGeneration());
+  }
+
+  @Test
+  public void testIdsTooLongForTheColumnAreTurnedAway() {
+    final var repository = repository(dataSource);
+    final var longest = "i".repeat(RequestTable.MAX_ID_LENGTH);
+    repository.strictSave(incoming(longest));
+    Assert.assertTrue(repository.findByMessageId(longest).isPresent());
+    final var tooLong = longest + "i";
+    try {
+      repository.strictSave(incoming(tooLong));
+      Assert.fail("An id longer than its column can't be claimed");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.BAD_REQUEST, e.getErrorCode());
+    }
+    try {
+      repository.save(incoming(tooLong));
+      Assert.fail("An id longer than its column can't be saved");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.BAD_REQUEST, e.getErrorCode());
+    }
+    try {
+      new RequestReceiverService(repository).preHandle(incoming(tooLong));
+      Assert.fail("An id longer than its column is turned away, not taken for a duplicate");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.BAD_REQUEST, e.getErrorCode());
+    }
+  }
+
+  @Test
+  public void testSaveIfUnchangedConflictsOnTheGeneration() {
+    final var repository = repository(dataSource);
+    repository.strictSave(incoming("changed"));
+    final var first = repository.findByMessageId("changed").orElseThrow();
+    final var second = repository.findByMessageId("changed").orElseThrow();
+    first.setRetryCount(1);
+    second.setRetryCount(2);
+    Assert.assertTrue(repository.saveIfUnchanged(first));
+    Assert.assertFalse(repository.saveIfUnchanged(second));
+    final var stored = repository.findByMessageId("changed").orElseThrow();
+    Assert.assertEquals(1, stored.getRetryCount());
+    Assert.assertEquals(2, stored.getGeneration());
+  }
+
+  @Test
+  public void testExpiredRowsCountAsAbsent() throws SQLException {
+    final var repository = repository(dataSource);
+    repository.strictSave(incoming("expired"));
+    repository.strictSave(incoming("live"));
+    expire("expired");
+    Assert.assertTrue(repository.findByMessageId("expired").isEmpty());
+    try {
+      repository.complete(completed("expired"));
+      Assert.fail("An expired row can't be completed");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.ENTITY_NOT_FOUND, e.getErrorCode());
+    }
+    repository.strictSave(incoming("expired"));
+    Assert.assertEquals(1, repository.findByMessageId("expired").orElseThrow().getGeneration());
+    expire("expired");
+    Assert.assertEquals(1, repository.purgeExpired());
+    Assert.assertTrue(repository.findByMessageId("live").isPresent());
+  }
+
+  @Test
+  public void testCompleteAllReportsCompletionsNotStored() {
+    final var repository = repository(dataSource);
+    final var completions = stored(repository, 5);
+    final var batch = new ArrayList<>(completions);
+    batch.add(2, completed("missing"));
+    Assert.assertEquals(List.of("missing"), idsOf(repository.completeAll(batch)));
+    assertCompletedOnce(repository, completions);
+  }
+
+  @Test
+  public void testCompleteAllWritesAFailedBatchOneByOne() {
+    final var repository = repository(dataSource);
+    final var completions = stored(repository, 5);
+    final var batch = new ArrayList<>(completions);
+    final var unwritable = completed("request-5");
+    repository.strictSave(incoming("request-5"));
+    unwritable.setResponseBodyEncoding("an-encoding-too-long-for-its-column");
+    batch.add(3, unwritable);
+    Assert.assertEquals(List.of("request-5"), idsOf(repository.completeAll(batch)));
+    assertCompletedOnce(repository, completions);
+    Assert.assertEquals(RequestStatus.PROCESSING,
+        repository.findByMessageId("request-5").orElseThrow().getProcessed());
+  }
+
+  @Test
+  public void testCompleteAllRetriesABatchOnceWhenItsRollbackFails() {
+    final var completions = stored(repository(dataSource), 5);
+    final var repository = repository(failing(dataSource, "rollback", 1));
+    final var batch = new ArrayList<>(completions);
+    final var unwritable = completed("request-5");
+    repository.strictSave(incoming("request-5"));
+    unwritable.setResponseBodyEncoding("an-encoding-too-long-for-its-column");
+    batch.add(3, unwritable);
+    Assert.assertEquals(List.of("request-5"), idsOf(repository.completeAll(batch)));
+    assertCompletedOnce(repository, completions);
+  }
+
+  @Test
+  public void testCompleteAllKeepsCommittedBatchesWhenTheConnectionFails() {
+    final var completions = stored(repository(dataSource), 5);
+    final var repository = repository(failing(dataSource, "commit", 2));
+    Assert.assertTrue(repository.completeAll(completions).isEmpty());
+    assertCompletedOnce(repository, completions);
+  }
+}
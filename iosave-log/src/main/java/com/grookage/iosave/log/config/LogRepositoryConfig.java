@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.log.config;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LogRepositoryConfig {
+
+  /*
+    Where the segments are kept, only one repository may have it open at a time
+   */
+  @NotEmpty
+  private String directory;
+  /*
+    Size segments are created with, a record larger than that gets a segment of its own
+   */
+  @Min(4096)
+  @Builder.Default
+  private int segmentBytes = 64 << 20;
+  /*
+    Seconds a request id is remembered for after its last write, 0 to keep it forever
+   */
+  @Min(0)
+  @Builder.Default
+  private int ttl = 3600;
+  @Min(1)
+  @Builder.Default
+  private int compactionIntervalSeconds = 60;
+  /*
+    Segments whose records are live for less than this share of their bytes are compacted, their
+    live records copied to the current segment and the segment deleted
+   */
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  @Builder.Default
+  private double compactionThreshold = 0.5;
+  /*
+    Forces every write to disk before it returns. Otherwise writes outlive the process but not the
+    machine until their segment is rolled, or the repository stopped.
+   */
+  private boolean syncOnWrite;
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.log.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+  Where the latest record of a request id is, with what of it is needed without reading it
+ */
+@Getter
+@AllArgsConstructor
+class Location {
+
+  private final Segment segment;
+  private final int offset;
+  private final int length;
+  private final int generation;
+  private final long writtenAt;
+}
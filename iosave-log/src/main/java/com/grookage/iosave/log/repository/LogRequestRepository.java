@@ -0,0 +1,410 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.log.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.core.repository.AbstractRequestRepository;
+import com.grookage.iosave.log.config.LogRepositoryConfig;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A {@link com.grookage.iosave.core.repository.RequestRepository} on local disk, for single node
+ * services that need request ids remembered across restarts without running a store. Every write
+ * appends the entity to a memory mapped log of segment files, and an in memory index points each
+ * request id at its latest record, so reads are a map lookup and a copy out of the page cache.
+ * <p>
+ * Request ids are remembered for {@code ttl} seconds after their last write. Segments whose
+ * records have all expired are deleted, and segments holding mostly overwritten or expired records
+ * are compacted, their live records copied to the current segment, every
+ * {@code compactionIntervalSeconds} once {@link #start()}ed.
+ * <p>
+ * The index is rebuilt as the repository is opened, by walking the record headers of every
+ * segment. Only the last segment can have been cut short by a crash, so only its records are
+ * checked against their checksums, and it is written on from its last whole record. Writes outlive
+ * the process crashing as soon as they return, and the machine crashing once forced to disk, with
+ * {@code syncOnWrite}, when their segment is rolled, or on {@link #stop()}.
+ */
+@Slf4j
+public class LogRequestRepository extends AbstractRequestRepository {
+
+  private static final String LOCK_FILE = "iosave.lock";
+
+  private final LogRepositoryConfig config;
+  private final ObjectMapper mapper;
+  private final Path directory;
+  private final long ttlMillis;
+  private final Map<String, Location> index = new ConcurrentHashMap<>();
+  private final Map<Long, Segment> segments = new ConcurrentSkipListMap<>();
+  /* Guards appends, and decisions taken on what is indexed before appending */
+  private final Object writeLock = new Object();
+  private final FileChannel lockChannel;
+  private final FileLock directoryLock;
+  private volatile Segment active;
+  private ScheduledExecutorService compactor;
+
+  public LogRequestRepository(final LogRepositoryConfig config, final ObjectMapper mapper) {
+    this.config = config;
+    this.mapper = mapper;
+    this.directory = Paths.get(config.getDirectory());
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(config.getTtl());
+    try {
+      Files.createDirectories(directory);
+      this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      this.directoryLock = lock(lockChannel);
+      if (null == directoryLock) {
+        lockChannel.close();
+        throw new IOException(directory + " is open in another repository");
+      }
+      recover();
+    } catch (IOException e) {
+      throw storeError(e);
+    }
+  }
+
+  /*
+    Null when the directory is locked, by another process or another repository in this one
+   */
+  private static FileLock lock(FileChannel lockChannel) throws IOException {
+    try {
+      return lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      return null;
+    }
+  }
+
+  private static IOSaveException storeError(Exception e) {
+    log.error("Can't access the request log", e);
+    return IOSaveException.propagate(IOSaveException.ErrorCode.STORE_ERROR, e);
+  }
+
+  private void recover() throws IOException {
+    final List<Path> paths;
+    try (var files = Files.list(directory)) {
+      paths = files.filter(path -> Segment.sequenceOf(path) >= 0)
+          .sorted(Comparator.comparingLong(Segment::sequenceOf))
+          .collect(Collectors.toList());
+    }
+    final var now = System.currentTimeMillis();
+    for (var i = 0; i < paths.size(); i++) {
+      final var segment = Segment.open(paths.get(i));
+      segment.scan(i == paths.size() - 1, (requestId, offset, length, generation, writtenAt) -> {
+        if (expired(writtenAt, now)) {
+          release(index.remove(requestId));
+        } else {
+          index(requestId, new Location(segment, offset, length, generation, writtenAt));
+        }
+      });
+      segments.put(segment.getSequence(), segment);
+      active = segment;
+    }
+    if (null == active) {
+      active = Segment.create(directory, 1, config.getSegmentBytes());
+      segments.put(active.getSequence(), active);
+    }
+    log.info("Opened {} request log segments in {}, {} request ids indexed", segments.size(),
+        directory, index.size());
+  }
+
+  public synchronized void start() {
+    if (null != compactor) {
+      return;
+    }
+    compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final var thread = new Thread(runnable, "iosave-log-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    compactor.scheduleWithFixedDelay(this::compact, config.getCompactionIntervalSeconds(),
+        config.getCompactionIntervalSeconds(), TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stops compacting and forces what was written to disk. The repository stays usable, and can be
+   * started again.
+   */
+  public synchronized void stop() throws InterruptedException {
+    if (null != compactor) {
+      compactor.shutdown();
+      compactor.awaitTermination(config.getCompactionIntervalSeconds(), TimeUnit.SECONDS);
+      compactor = null;
+    }
+    synchronized (writeLock) {
+      active.force();
+    }
+  }
+
+  /**
+   * Stops the repository and releases its directory, after which it can't be used
+   */
+  public void close() throws IOException, InterruptedException {
+    stop();
+    directoryLock.release();
+    lockChannel.close();
+  }
+
+  /**
+   * Number of request ids remembered, some of which may have expired since they were last read
+   */
+  public int size() {
+    return index.size();
+  }
+
+  public int segmentCount() {
+    return segments.size();
+  }
+
+  private boolean expired(long writtenAt, long now) {
+    return ttlMillis > 0 && writtenAt + ttlMillis <= now;
+  }
+
+  private void release(Location location) {
+    if (null != location) {
+      location.getSegment().release(location.getLength());
+    }
+  }
+
+  private void index(String requestId, Location location) {
+    location.getSegment().retain(location.getLength());
+    release(index.put(requestId, location));
+  }
+
+  /*
+    The location of the request id, null if it isn't indexed or has expired, which unindexes it
+   */
+  private Location live(String requestId) {
+    final var location = index.get(requestId);
+    if (null == location) {
+      return null;
+    }
+    if (expired(location.getWrittenAt(), System.currentTimeMillis())) {
+      if (index.remove(requestId, location)) {
+        release(location);
+      }
+      return null;
+    }
+    return location;
+  }
+
+  private RequestEntity read(Location location) {
+    final var record = location.getSegment().read(location.getOffset(), location.getLength());
+    final var entityOffset = Segment.entityOffset(record);
+    try {
+      final var requestEntity = mapper.readValue(record, entityOffset,
+          record.length - entityOffset, RequestEntity.class);
+      requestEntity.setGeneration(location.getGeneration());
+      return requestEntity;
+    } catch (IOException e) {
+      throw storeError(e);
+    }
+  }
+
+  /*
+    Serialized before the write lock is taken, the generation the record is written with is
+    decided under it. Ids too long for a record header are turned away here.
+   */
+  private byte[] serialize(RequestEntity requestEntity) {
+    if (!Segment.fitsId(requestEntity.getRequestId())) {
+      throw IOSaveException.error(IOSaveException.ErrorCode.BAD_REQUEST, Map.of("cause",
+          String.format("request ids are at most %d bytes", Segment.MAX_ID_BYTES)));
+    }
+    requestEntity.setUpdatedAt(new Date(System.currentTimeMillis()));
+    try {
+      return mapper.writeValueAsBytes(requestEntity);
+    } catch (IOException e) {
+      throw storeError(e);
+    }
+  }
+
+  /*
+    Appends under the write lock, rolling to a new segment when the record doesn't fit
+   */
+  private Location append(byte[] record, int generation, long writtenAt) {
+    try {
+      if (!active.fits(record.length)) {
+        //Sealed segments are trusted whole when the log is opened again
+        active.force();
+        final var next = Segment.create(directory, active.getSequence() + 1,
+            Math.max(config.getSegmentBytes(), record.length));
+        segments.put(next.getSequence(), next);
+        active = next;
+      }
+      final var offset = active.append(record, writtenAt);
+      if (config.isSyncOnWrite()) {
+        active.force();
+      }
+      return new Location(active, offset, record.length, generation, writtenAt);
+    } catch (IOException e) {
+      throw storeError(e);
+    }
+  }
+
+  private void write(String requestId, int generation, byte[] entity) {
+    final var writtenAt = System.currentTimeMillis();
+    index(requestId, append(Segment.encode(requestId, generation, writtenAt, entity),
+        generation, writtenAt));
+  }
+
+  @Override
+  public boolean connected() {
+    return directoryLock.isValid();
+  }
+
+  @Override
+  public Optional<RequestEntity> findByMessageId(String messageId) {
+    return Optional.ofNullable(live(messageId)).map(this::read);
+  }
+
+  @Override
+  public void strictSave(RequestEntity requestEntity) {
+    final var entity = serialize(requestEntity);
+    synchronized (writeLock) {
+      if (null != live(requestEntity.getRequestId())) {
+        throw IOSaveException.error(IOSaveException.ErrorCode.DUPLICATE_MESSAGE);
+      }
+      write(requestEntity.getRequestId(), 1, entity);
+    }
+  }
+
+  @Override
+  public Optional<RequestEntity> claim(RequestEntity requestEntity) {
+    final var entity = serialize(requestEntity);
+    final Location existing;
+    synchronized (writeLock) {
+      existing = live(requestEntity.getRequestId());
+      if (null == existing) {
+        write(requestEntity.getRequestId(), 1, entity);
+      }
+    }
+    return Optional.ofNullable(existing).map(this::read);
+  }
+
+  @Override
+  public void save(RequestEntity requestEntity) {
+    final var entity = serialize(requestEntity);
+    synchronized (writeLock) {
+      final var stored = live(requestEntity.getRequestId());
+      write(requestEntity.getRequestId(), null == stored ? 1 : stored.getGeneration() + 1,
+          entity);
+    }
+  }
+
+  @Override
+  public boolean saveIfUnchanged(RequestEntity requestEntity) {
+    final var entity = serialize(requestEntity);
+    synchronized (writeLock) {
+      final var stored = live(requestEntity.getRequestId());
+      if (null == stored || stored.getGeneration() != requestEntity.getGeneration()) {
+        return false;
+      }
+      write(requestEntity.getRequestId(), stored.getGeneration() + 1, entity);
+      return true;
+    }
+  }
+
+  /**
+   * Deletes the segments whose records have all expired, and compacts the ones below
+   * {@code compactionThreshold} live. Runs every {@code compactionIntervalSeconds} once started.
+   */
+  public void compact() {
+    try {
+      final var now = System.currentTimeMillis();
+      final var candidates = new ArrayList<Segment>();
+      for (final var segment : segments.values()) {
+        if (segment == active) {
+          continue;
+        }
+        if (expired(segment.getNewestWrittenAt(), now)
+            || segment.liveRatio() < config.getCompactionThreshold()) {
+          candidates.add(segment);
+        }
+      }
+      if (candidates.isEmpty()) {
+        return;
+      }
+      final var live = new HashMap<Segment, List<Map.Entry<String, Location>>>();
+      candidates.forEach(segment -> live.put(segment, new ArrayList<>()));
+      index.entrySet().forEach(entry -> {
+        final var entries = live.get(entry.getValue().getSegment());
+        if (null != entries) {
+          entries.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+      });
+      for (final var segment : candidates) {
+        compact(segment, live.get(segment));
+      }
+    } catch (Exception e) {
+      log.error("Can't compact the request log", e);
+    }
+  }
+
+  /*
+    Copies the segment's live records as they are, checksum and all, to the current segment, and
+    deletes it once the copies are on disk. New records are never written to a sealed segment, so
+    nothing points into it once its records are copied.
+   */
+  private void compact(Segment segment, List<Map.Entry<String, Location>> entries)
+      throws IOException {
+    var copied = 0;
+    for (final var entry : entries) {
+      final var location = entry.getValue();
+      synchronized (writeLock) {
+        if (index.get(entry.getKey()) != location) {
+          continue;
+        }
+        if (expired(location.getWrittenAt(), System.currentTimeMillis())) {
+          if (index.remove(entry.getKey(), location)) {
+            release(location);
+          }
+          continue;
+        }
+        final var record = segment.read(location.getOffset(), location.getLength());
+        index(entry.getKey(), append(record, location.getGeneration(), location.getWrittenAt()));
+        copied++;
+      }
+    }
+    synchronized (writeLock) {
+      active.force();
+      segments.remove(segment.getSequence());
+    }
+    Files.deleteIfExists(segment.getPath());
+    log.info("Compacted request log segment {}, {} of {} records copied", segment.getPath(),
+        copied, entries.size());
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.log.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+  A file of the log, mapped whole. A record is its length, a CRC32 of what follows the CRC, the
+  time it was written, the entity's generation, the request id's length, the request id and the
+  entity as JSON. Files are zero filled past their last record, a zero length ends the segment.
+  Appends are made under the repository's write lock, reads from anywhere.
+ */
+@Slf4j
+class Segment {
+
+  static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 2;
+  /* The id's length is a signed short */
+  static final int MAX_ID_BYTES = Short.MAX_VALUE;
+
+  private static final int ZERO_RUN = 4096;
+  private static final Pattern NAME = Pattern.compile("segment-(\\d{20})\\.log");
+
+  @Getter
+  private final long sequence;
+  @Getter
+  private final Path path;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  /* Bytes of records still indexed */
+  private final AtomicLong liveBytes = new AtomicLong();
+  @Getter
+  private volatile int writePosition;
+  @Getter
+  private volatile long newestWrittenAt;
+
+  private Segment(long sequence, Path path, MappedByteBuffer buffer) {
+    this.sequence = sequence;
+    this.path = path;
+    this.buffer = buffer;
+    this.capacity = buffer.capacity();
+  }
+
+  static Path pathOf(Path directory, long sequence) {
+    return directory.resolve(String.format("segment-%020d.log", sequence));
+  }
+
+  /*
+    The sequence of a segment file, -1 for any other file
+   */
+  static long sequenceOf(Path path) {
+    final var matcher = NAME.matcher(path.getFileName().toString());
+    return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+  }
+
+  static Segment create(Path directory, long sequence, int capacity) throws IOException {
+    return map(sequence, pathOf(directory, sequence), capacity);
+  }
+
+  static Segment open(Path path) throws IOException {
+    return map(sequenceOf(path), path, (int) Files.size(path));
+  }
+
+  /*
+    The mapping outlives the channel, and the file, so records stay readable until the segment is
+    collected
+   */
+  private static Segment map(long sequence, Path path, int capacity) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      return new Segment(sequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0,
+          capacity));
+    }
+  }
+
+  static boolean fitsId(String requestId) {
+    return requestId.length() <= MAX_ID_BYTES / 3
+        || requestId.getBytes(StandardCharsets.UTF_8).length <= MAX_ID_BYTES;
+  }
+
+  static byte[] encode(String requestId, int generation, long writtenAt, byte[] entity) {
+    final var id = requestId.getBytes(StandardCharsets.UTF_8);
+    if (id.length > MAX_ID_BYTES) {
+      throw new IllegalArgumentException("Request ids are at most " + MAX_ID_BYTES + " bytes");
+    }
+    final var record = ByteBuffer.allocate(HEADER_BYTES + id.length + entity.length);
+    record.putInt(record.capacity())
+        .putInt(0)
+        .putLong(writtenAt)
+        .putInt(generation)
+        .putShort((short) id.length)
+        .put(id)
+        .put(entity);
+    final var crc = new CRC32();
+    crc.update(record.array(), 8, record.capacity() - 8);
+    record.putInt(4, (int) crc.getValue());
+    return record.array();
+  }
+
+  /*
+    Where the entity starts in a record
+   */
+  static int entityOffset(byte[] record) {
+    return HEADER_BYTES + ByteBuffer.wrap(record).getShort(HEADER_BYTES - 2);
+  }
+
+  boolean fits(int length) {
+    return writePosition + length <= capacity;
+  }
+
+  int append(byte[] record, long writtenAt) {
+    final var offset = writePosition;
+    buffer.duplicate().position(offset).put(record);
+    writePosition += record.length;
+    newestWrittenAt = Math.max(newestWrittenAt, writtenAt);
+    return offset;
+  }
+
+  byte[] read(int offset, int length) {
+    final var record = new byte[length];
+    buffer.duplicate().position(offset).get(record);
+    return record;
+  }
+
+  void force() {
+    buffer.force();
+  }
+
+  void retain(int length) {
+    liveBytes.addAndGet(length);
+  }
+
+  void release(int length) {
+    liveBytes.addAndGet(-length);
+  }
+
+  /*
+    Share of the bytes written that belong to records still indexed
+   */
+  double liveRatio() {
+    return 0 == writePosition ? 1.0 : (double) liveBytes.get() / writePosition;
+  }
+
+  /*
+    Walks the records, from the start, to where they end. Records of the tail may have been cut
+    short by a crash, so they are checked against their CRC, and what is left of a record cut
+    short is zeroed to be written over. Sealed segments were forced to disk whole when rolled, their
+    headers are only checked to be within the segment.
+   */
+  void scan(boolean tail, RecordVisitor visitor) {
+    final var records = buffer.duplicate();
+    var position = 0;
+    while (position + HEADER_BYTES <= capacity) {
+      final var length = records.getInt(position);
+      if (0 == length) {
+        break;
+      }
+      final var idLength = records.getShort(position + HEADER_BYTES - 2);
+      if (length < HEADER_BYTES + idLength || idLength < 0 || position + length > capacity
+          || (tail && !intact(records, position, length))) {
+        log.warn("Segment {} is cut short at {}, dropping what follows", path, position);
+        break;
+      }
+      final var id = new byte[idLength];
+      records.duplicate().position(position + HEADER_BYTES).get(id);
+      final var writtenAt = records.getLong(position + 8);
+      visitor.visit(new String(id, StandardCharsets.UTF_8), position, length,
+          records.getInt(position + 16), writtenAt);
+      newestWrittenAt = Math.max(newestWrittenAt, writtenAt);
+      position += length;
+    }
+    writePosition = position;
+    if (tail) {
+      zeroFrom(records, position);
+    }
+  }
+
+  /*
+    Records are written one after the other, so the first page of zeros is past anything written.
+    JSON never holds a zero byte, a record can't hold a page of them.
+   */
+  private void zeroFrom(ByteBuffer records, int position) {
+    var zeros = 0;
+    for (var next = position; next < capacity && zeros < ZERO_RUN; next++) {
+      if (0 == records.get(next)) {
+        zeros++;
+      } else {
+        records.put(next, (byte) 0);
+        zeros = 0;
+      }
+    }
+  }
+
+  private static boolean intact(ByteBuffer records, int position, int length) {
+    final var crc = new CRC32();
+    crc.update(records.duplicate().position(position + 8).limit(position + length));
+    return records.getInt(position + 4) == (int) crc.getValue();
+  }
+
+  interface RecordVisitor {
+
+    void visit(String requestId, int offset, int length, int generation, long writtenAt);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.log.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grookage.iosave.core.entities.RequestEntity;
+import com.grookage.iosave.core.entities.RequestStatus;
+import com.grookage.iosave.core.exception.IOSaveException;
+import com.grookage.iosave.log.config.LogRepositoryConfig;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogRequestRepositoryTest {
+
+  private static final int IDS = 8;
+  private static final int ROUNDS = 20;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final List<LogRequestRepository> opened = new ArrayList<>();
+
+  @After
+  public void tearDown() throws Exception {
+    for (final var repository : opened) {
+      repository.close();
+    }
+  }
+
+  private LogRequestRepository open() {
+    final var repository = new LogRequestRepository(LogRepositoryConfig.builder()
+        .directory(folder.getRoot().getPath())
+        .segmentBytes(4096)
+        .build(), mapper);
+    opened.add(repository);
+    return repository;
+  }
+
+  private void close(LogRequestRepository repository) throws Exception {
+    opened.remove(repository);
+    repository.close();
+  }
+
+  private static RequestEntity entity(String requestId, int retryCount) {
+    return RequestEntity.builder()
+        .requestId(requestId)
+        .processed(RequestStatus.PROCESSING)
+        .retryCount(retryCount)
+        .requestBody("{\"padding\":\"" + "x".repeat(200) + "\"}")
+        .build();
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (var files = Files.list(folder.getRoot().toPath())) {
+      return files.filter(path -> Segment.sequenceOf(path) >= 0)
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void testIdsTooLongAreTurnedAway() {
+    final var repository = open();
+    try {
+      repository.strictSave(entity("é".repeat(Segment.MAX_ID_BYTES / 2 + 1), 0));
+      Assert.fail("An id whose length doesn't fit the record header must be turned away");
+    } catch (IOSaveException e) {
+      Assert.assertEquals(IOSaveException.ErrorCode.BAD_REQUEST, e.getErrorCode());
+    }
+    Assert.assertEquals(0, repository.size());
+  }
+
+  @Test
+  public void testRecoveryStopsAtATornTail() throws Exception {
+    final var repository = open();
+    for (final var requestId : List.of("first", "second", "third")) {
+      repository.strictSave(entity(requestId, 0));
+    }
+    close(repository);
+
+    final var tail = Segment.open(segmentFiles().get(0));
+    final var offsets = new ArrayList<Integer>();
+    tail.scan(false, (requestId, offset, length, generation, writtenAt) -> offsets.add(offset));
+    Assert.assertEquals(3, offsets.size());
+    try (var channel = FileChannel.open(tail.getPath(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[]{'x', 'x'}), tail.getWritePosition() - 2);
+    }
+
+    final var recovered = open();
+    Assert.assertTrue(recovered.findByMessageId("second").isPresent());
+    Assert.assertTrue(recovered.findByMessageId("third").isEmpty());
+    recovered.strictSave(entity("third", 5));
+    close(recovered);
+
+    final var reopened = open();
+    Assert.assertEquals(3, reopened.size());
+    Assert.assertEquals(5, reopened.findByMessageId("third").orElseThrow().getRetryCount());
+  }
+
+  @Test
+  public void testCompactionKeepsOnlyLiveRecords() throws Exception {
+    final var repository = open();
+    for (var round = 0; round < ROUNDS; round++) {
+      for (var id = 0; id < IDS; id++) {
+        repository.save(entity("request-" + id, round));
+      }
+    }
+    final var before = segmentFiles();
+    Assert.assertTrue(before.size() > 2);
+
+    repository.compact();
+    final var after = segmentFiles();
+    Assert.assertTrue(after.size() < before.size());
+    Assert.assertEquals(after.size(), repository.segmentCount());
+    for (var id = 0; id < IDS; id++) {
+      final var stored = repository.findByMessageId("request-" + id).orElseThrow();
+      Assert.assertEquals(ROUNDS - 1, stored.getRetryCount());
+      Assert.assertEquals(ROUNDS, stored.getGeneration());
+    }
+    close(repository);
+
+    final var reopened = open();
+    Assert.assertEquals(IDS, reopened.size());
+    for (var id = 0; id < IDS; id++) {
+      final var stored = reopened.findByMessageId("request-" + id).orElseThrow();
+      Assert.assertEquals(ROUNDS - 1, stored.getRetryCount());
+      Assert.assertEquals(ROUNDS, stored.getGeneration());
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2022 Koushik R <rkoushik.14@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grookage.iosave.log.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static final class Visited {
+
+    private final String requestId;
+    private final int offset;
+    private final int length;
+    private final int generation;
+    private final long writtenAt;
+
+    private Visited(String requestId, int offset, int length, int generation, long writtenAt) {
+      this.requestId = requestId;
+      this.offset = offset;
+      this.length = length;
+      this.generation = generation;
+      this.writtenAt = writtenAt;
+    }
+  }
+
+  private static List<Visited> scan(Segment segment, boolean tail) {
+    final var visited = new ArrayList<Visited>();
+    segment.scan(tail, (requestId, offset, length, generation, writtenAt) ->
+        visited.add(new Visited(requestId, offset, length, generation, writtenAt)));
+    return visited;
+  }
+
+  private static byte[] entity(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] entityOf(Segment segment, Visited visited) {
+    final var record = segment.read(visited.offset, visited.length);
+    return Arrays.copyOfRange(record, Segment.entityOffset(record), record.length);
+  }
+
+  private void overwrite(Segment segment, int position, byte[] bytes) throws IOException {
+    try (var channel = FileChannel.open(segment.getPath(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(bytes), position);
+    }
+  }
+
+  @Test
+  public void testRecordRoundTrip() throws IOException {
+    final var segment = Segment.create(folder.getRoot().toPath(), 1, 4096);
+    final var entity = entity("{\"requestId\":\"commande-été\"}");
+    final var record = Segment.encode("commande-été", 7, 1_234L, entity);
+    Assert.assertEquals(0, segment.append(record, 1_234L));
+    final var visited = scan(Segment.open(segment.getPath()), true);
+    Assert.assertEquals(1, visited.size());
+    Assert.assertEquals("commande-été", visited.get(0).requestId);
+    Assert.assertEquals(record.length, visited.get(0).length);
+    Assert.assertEquals(7, visited.get(0).generation);
+    Assert.assertEquals(1_234L, visited.get(0).writtenAt);
+    Assert.assertArrayEquals(entity, entityOf(segment, visited.get(0)));
+  }
+
+  @Test
+  public void testIdsUpToTheLimitRoundTrip() throws IOException {
+    final var longest = "a".repeat(Segment.MAX_ID_BYTES);
+    final var segment = Segment.create(folder.getRoot().toPath(), 1, 1 << 16);
+    segment.append(Segment.encode(longest, 1, 1L, entity("{}")), 1L);
+    Assert.assertEquals(longest, scan(segment, true).get(0).requestId);
+    Assert.assertTrue(Segment.fitsId(longest));
+    Assert.assertTrue(Segment.fitsId("é".repeat(Segment.MAX_ID_BYTES / 2)));
+    Assert.assertFalse(Segment.fitsId("é".repeat(Segment.MAX_ID_BYTES / 2 + 1)));
+    Assert.assertFalse(Segment.fitsId(longest + "a"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIdsPastTheLimitAreRejected() {
+    Segment.encode("a".repeat(Segment.MAX_ID_BYTES + 1), 1, 1L, entity("{}"));
+  }
+
+  @Test
+  public void testTornTailIsDroppedAndZeroed() throws IOException {
+    final var segment = Segment.create(folder.getRoot().toPath(), 1, 4096);
+    for (final var requestId : List.of("first", "second", "third")) {
+      segment.append(Segment.encode(requestId, 1, 1L, entity("{\"id\":\"" + requestId + "\"}")),
+          1L);
+    }
+    final var written = scan(segment, true);
+    final var torn = written.get(2);
+    overwrite(segment, torn.offset + torn.length / 2, new byte[torn.length - torn.length / 2]);
+
+    final var reopened = Segment.open(segment.getPath());
+    final var visited = scan(reopened, true);
+    Assert.assertEquals(2, visited.size());
+    Assert.assertEquals("second", visited.get(1).requestId);
+    Assert.assertEquals(torn.offset, reopened.getWritePosition());
+    Assert.assertArrayEquals(new byte[torn.length], reopened.read(torn.offset, torn.length));
+  }
+
+  @Test
+  public void testSealedSegmentsAreTrustedWhole() throws IOException {
+    final var segment = Segment.create(folder.getRoot().toPath(), 1, 4096);
+    segment.append(Segment.encode("only", 1, 1L, entity("{\"id\":\"only\"}")), 1L);
+    final var record = scan(segment, true).get(0);
+    overwrite(segment, record.offset + record.length - 1, new byte[]{'x'});
+    Assert.assertEquals(1, scan(Segment.open(segment.getPath()), false).size());
+    Assert.assertEquals(0, scan(Segment.open(segment.getPath()), true).size());
+  }
+}